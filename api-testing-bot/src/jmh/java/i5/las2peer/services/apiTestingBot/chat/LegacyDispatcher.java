@@ -0,0 +1,181 @@
+package i5.las2peer.services.apiTestingBot.chat;
+
+import i5.las2peer.services.apiTestingBot.codex.CompletionClient;
+import i5.las2peer.services.apiTestingBot.context.TestModelingContext;
+import i5.las2peer.services.apiTestingBot.context.TestModelingState;
+
+import static i5.las2peer.services.apiTestingBot.context.TestModelingState.*;
+
+/**
+ * Copy of the if-cascade that RESTResources.modelTest used before the StateDispatcher was introduced.
+ * Only kept to compare both dispatchers in {@link StateDispatchBenchmark}.
+ */
+public class LegacyDispatcher {
+
+    public static void dispatch(MessageHandler messageHandler, TestModelingContext context, String intent,
+                                String message, String channel, CompletionClient completionClient,
+                                StringBuilder responseMessageSB) {
+        // get the initial state of the context (at the beginning of this execution)
+        TestModelingState initialState = context.getState();
+
+        boolean handleNextState = false;
+
+        do {
+            if (initialState == INIT && intent.equals(Intent.MODEL_TEST)) {
+                handleNextState = messageHandler.handleInit(responseMessageSB, context);
+            }
+
+            if(handleNextState && context.getState() == API_TEST_FAMILIARITY_QUESTION) {
+                handleNextState = messageHandler.handleAPITestFamiliarityQuestion(responseMessageSB);
+            }
+
+            if(initialState == API_TEST_FAMILIARITY_QUESTION) {
+                handleNextState = messageHandler.handleAPITestFamiliarityQuestionAnswer(responseMessageSB, context, intent);
+            }
+
+            if(handleNextState && context.getState() == ENTER_TEST_CASE_DESCRIPTION) {
+                handleNextState = messageHandler.handleTestCaseDescriptionQuestion(responseMessageSB);
+            }
+
+            if(initialState == ENTER_TEST_CASE_DESCRIPTION) {
+                handleNextState = messageHandler.handleTestCaseDescription(responseMessageSB, context, message, channel, completionClient);
+            }
+
+            if (handleNextState && context.getState() == RC_SELECT_PROJECT) {
+                handleNextState = ((RCMessageHandler) messageHandler).handleProjectSelectionQuestion(responseMessageSB, context, channel);
+            }
+
+            if (initialState == RC_SELECT_PROJECT) {
+                handleNextState = ((RCMessageHandler) messageHandler).handleProjectSelection(responseMessageSB, context, message);
+            }
+
+            if (handleNextState && context.getState() == RC_SELECT_MICROSERVICE) {
+                handleNextState = ((RCMessageHandler) messageHandler).handleMicroserviceSelectionQuestion(responseMessageSB, context);
+            }
+
+            if (initialState == RC_SELECT_MICROSERVICE) {
+                handleNextState = ((RCMessageHandler) messageHandler).handleMicroserviceSelection(responseMessageSB, context, message);
+            }
+
+            if (handleNextState && context.getState() == NAME_TEST_CASE) {
+                handleNextState = messageHandler.handleTestCaseNameQuestion(responseMessageSB);
+            }
+
+            if (initialState == NAME_TEST_CASE) {
+                handleNextState = messageHandler.handleTestCaseName(responseMessageSB, context, message);
+            }
+
+            if (handleNextState && context.getState() == RC_SELECT_METHOD) {
+                handleNextState = ((RCMessageHandler) messageHandler).handleMethodSelectionQuestion(responseMessageSB, context);
+            }
+
+            if (initialState == RC_SELECT_METHOD) {
+                handleNextState = ((RCMessageHandler) messageHandler).handleMethodSelection(responseMessageSB, context, message);
+            }
+
+            if (handleNextState && context.getState() == RC_ENTER_PATH_PARAMS) {
+                handleNextState = ((RCMessageHandler) messageHandler).handlePathParamsQuestion(responseMessageSB, context);
+            }
+
+            if ((handleNextState && context.getState() == RC_ENTER_PATH_PARAMS) || initialState == RC_ENTER_PATH_PARAMS) {
+                handleNextState = ((RCMessageHandler) messageHandler).handlePathParams(responseMessageSB, context, message);
+            }
+
+            if(handleNextState && context.getState() == GH_METHOD_QUESTION) {
+                handleNextState = ((GHMessageHandler) messageHandler).handleMethodQuestion(responseMessageSB, context);
+            }
+
+            if(initialState == GH_ENTER_METHOD) {
+                handleNextState = ((GHMessageHandler) messageHandler).handleMethod(responseMessageSB, context, intent);
+            }
+
+            if(handleNextState && context.getState() == GH_PATH_QUESTION) {
+                handleNextState = ((GHMessageHandler) messageHandler).handlePathQuestion(responseMessageSB, context);
+            }
+
+            if(initialState == GH_ENTER_PATH) {
+                handleNextState = ((GHMessageHandler) messageHandler).handlePath(responseMessageSB, context, message);
+            }
+
+            if ((handleNextState && context.getState() == BODY_QUESTION)) {
+                handleNextState = messageHandler.handleBodyQuestion(responseMessageSB);
+            }
+
+            if (!handleNextState && initialState == BODY_QUESTION) {
+                handleNextState = messageHandler.handleBodyQuestionAnswer(responseMessageSB, context, intent);
+            }
+
+            if (initialState == ENTER_BODY) {
+                handleNextState = messageHandler.handleBody(responseMessageSB, context, message);
+            }
+
+            if (handleNextState && context.getState() == ASSERTIONS_QUESTION) {
+                handleNextState = messageHandler.handleAssertionsQuestion(responseMessageSB);
+            }
+
+            if (initialState == ASSERTIONS_QUESTION) {
+                handleNextState = messageHandler.handleAssertionsQuestionAnswer(responseMessageSB, context, intent);
+            }
+
+            if (handleNextState && context.getState() == ASSERTION_TYPE_QUESTION) {
+                handleNextState = messageHandler.handleAssertionTypeQuestion(responseMessageSB);
+            }
+
+            if (initialState == ASSERTION_TYPE_QUESTION) {
+                handleNextState = messageHandler.handleAssertionTypeQuestionAnswer(responseMessageSB, context, message);
+            }
+
+            if (handleNextState && context.getState() == ENTER_STATUS_CODE) {
+                handleNextState = messageHandler.handleStatusCodeQuestion(responseMessageSB);
+            }
+
+            if (initialState == ENTER_STATUS_CODE) {
+                handleNextState = messageHandler.handleStatusCodeInput(responseMessageSB, context, message);
+            }
+
+            if (handleNextState && context.getState() == ASSERTIONS_OVERVIEW) {
+                handleNextState = messageHandler.handleAssertionsOverview(responseMessageSB, context);
+            }
+
+            if (handleNextState && context.getState() == ADD_ANOTHER_ASSERTION_QUESTION) {
+                handleNextState = messageHandler.handleAddAssertionQuestion(responseMessageSB);
+            }
+
+            if (initialState == ADD_ANOTHER_ASSERTION_QUESTION) {
+                handleNextState = messageHandler.handleAddAssertionQuestionAnswer(responseMessageSB, context, intent);
+            }
+
+            if(handleNextState && context.getState() == BODY_ASSERTION_TYPE_QUESTION) {
+                handleNextState = messageHandler.handleBodyAssertionTypeQuestion(responseMessageSB);
+            }
+
+            if(initialState == BODY_ASSERTION_TYPE_QUESTION && !intent.equals(Intent.MODEL_TEST)) {
+                handleNextState = messageHandler.handleBodyAssertionTypeInput(responseMessageSB, context, message);
+            }
+
+            if(intent.equals(Intent.MODEL_TEST) && initialState == BODY_ASSERTION_TYPE_QUESTION) {
+                handleNextState = messageHandler.handleBodyAssertionTypeQuestion(responseMessageSB);
+            }
+
+            if(handleNextState && context.getState() == ENTER_BODY_ASSERTION_PART) {
+                handleNextState = messageHandler.handleBodyAssertionPartQuestion(responseMessageSB, context);
+            }
+
+            if(initialState == ENTER_BODY_ASSERTION_PART) {
+                handleNextState = messageHandler.handleBodyAssertionPartInput(responseMessageSB, context, message, intent);
+            }
+
+            if(handleNextState && context.getState() == END_OF_BODY_ASSERTION_QUESTION) {
+                handleNextState = messageHandler.handleEndOfBodyAssertionQuestion(responseMessageSB, context);
+            }
+
+            if(initialState == END_OF_BODY_ASSERTION_QUESTION) {
+                handleNextState = messageHandler.handleEndOfBodyAssertionQuestionAnswer(responseMessageSB, context, intent);
+            }
+
+            // set initial state to final (otherwise problems occur in the next loop iterations)
+            initialState = FINAL;
+
+        } while(handleNextState);
+    }
+}
@@ -0,0 +1,86 @@
+package i5.las2peer.services.apiTestingBot.chat;
+
+import i5.las2peer.services.apiTestingBot.codex.InProcessCompletionClient;
+import i5.las2peer.services.apiTestingBot.context.TestModelingContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dispatch cost per chat message of a complete GitHub test modeling conversation,
+ * once with the legacy if-cascade and once with the StateDispatcher transition table.
+ * Every invocation dispatches the next message of the conversation; a new conversation is started after the last one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StateDispatchBenchmark {
+
+    private static final String CHANNEL = "owner/repo#1";
+
+    /**
+     * Conversation (intent and message text) in which a test with a status code and a body assertion is modeled.
+     */
+    private static final String[][] CONVERSATION = {
+            {Intent.MODEL_TEST, "model a test"},
+            {Intent.NO, "no"},
+            {"", "Get user"},
+            {Intent.GET, "GET"},
+            {"", "/users/{id}"},
+            {Intent.NO, "no"},
+            {Intent.YES, "yes"},
+            {"", "1"},
+            {"", "200"},
+            {Intent.YES, "yes"},
+            {"", "2"},
+            {"", "2"},
+            {"", "id"},
+            {Intent.NO, "no"},
+            {Intent.NO, "no"}
+    };
+
+    private MessageHandler messageHandler;
+    private ChatMessage[] messages;
+
+    private TestModelingContext context;
+    private int next;
+
+    @Setup
+    public void setup() {
+        messageHandler = new GHMessageHandler(new InProcessCompletionClient(request -> ""));
+        messages = new ChatMessage[CONVERSATION.length];
+        for (int i = 0; i < CONVERSATION.length; i++) {
+            messages[i] = new ChatMessage(CHANNEL, CONVERSATION[i][0], CONVERSATION[i][1]);
+        }
+    }
+
+    @Benchmark
+    public StringBuilder legacyDispatcher() {
+        ChatMessage message = nextMessage();
+        StringBuilder responseMessageSB = new StringBuilder();
+        LegacyDispatcher.dispatch(messageHandler, context, message.getIntent(), message.getText(), CHANNEL,
+                messageHandler.completionClient, responseMessageSB);
+        return responseMessageSB;
+    }
+
+    @Benchmark
+    public StringBuilder stateDispatcher() {
+        ChatMessage message = nextMessage();
+        StringBuilder responseMessageSB = new StringBuilder();
+        messageHandler.getDispatcher().dispatch(responseMessageSB, context, message);
+        return responseMessageSB;
+    }
+
+    /**
+     * Returns the next message of the conversation (and starts a new conversation after the last message).
+     */
+    private ChatMessage nextMessage() {
+        if (next == 0) context = new TestModelingContext();
+        ChatMessage message = messages[next];
+        next = (next + 1) % messages.length;
+        return message;
+    }
+}
@@ -0,0 +1,40 @@
+package i5.las2peer.services.apiTestingBot.context;
+
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.parser.OpenAPIV3Parser;
+import org.json.simple.JSONObject;
+
+import java.util.List;
+
+/**
+ * Copy of the document-related fields of TestModelingContext before the shared document registries were introduced,
+ * i.e., every context holds its own project JSON trees and its own parsed OpenAPI document.
+ * Only kept to compare both representations in {@link SessionFootprintBenchmark}.
+ */
+public class LegacyTestModelingContext {
+
+    private List<JSONObject> projectsLinkedToChannel;
+    private JSONObject project;
+    private JSONObject microserviceComponent;
+    private OpenAPI openAPI;
+
+    public void setProjectsLinkedToChannel(List<JSONObject> projectsLinkedToChannel) {
+        this.projectsLinkedToChannel = projectsLinkedToChannel;
+    }
+
+    public void setProject(JSONObject project) {
+        this.project = project;
+    }
+
+    public void setMicroserviceComponent(JSONObject microserviceComponent) {
+        this.microserviceComponent = microserviceComponent;
+    }
+
+    public void setOpenAPI(String openAPIDocStr) {
+        this.openAPI = new OpenAPIV3Parser().readContents(openAPIDocStr).getOpenAPI();
+    }
+
+    public OpenAPI getOpenAPI() {
+        return openAPI;
+    }
+}
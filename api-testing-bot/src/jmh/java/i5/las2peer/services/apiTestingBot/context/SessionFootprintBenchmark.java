@@ -0,0 +1,145 @@
+package i5.las2peer.services.apiTestingBot.context;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the heap footprint of 1,000 concurrent Rocket.Chat modeling sessions for the same microservice, once with
+ * the legacy context (own project JSON trees and own parsed OpenAPI document per session) and once with the
+ * TestModelingContext that resolves these documents from the shared registries.
+ * The retained heap per iteration is reported as the secondary result "retainedBytes".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SessionFootprintBenchmark {
+
+    private static final int SESSIONS = 1000;
+    private static final int PATHS = 50;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long retainedBytes;
+    }
+
+    /**
+     * OpenAPI documentation of the microservice (as returned by the CAE).
+     */
+    private String openAPIDoc;
+
+    /**
+     * Projects linked to the channel (as returned by the project service).
+     */
+    private String projectsDoc;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        openAPIDoc = createOpenAPIDoc();
+        projectsDoc = createProjectsDoc();
+    }
+
+    @Benchmark
+    public Object legacySessions(Footprint footprint) {
+        long before = usedHeap();
+        List<LegacyTestModelingContext> sessions = new ArrayList<>(SESSIONS);
+        for (int i = 0; i < SESSIONS; i++) {
+            // every session fetched (and parsed) the projects and the OpenAPI doc on its own
+            List<JSONObject> projects = parseProjects();
+            LegacyTestModelingContext context = new LegacyTestModelingContext();
+            context.setProjectsLinkedToChannel(projects);
+            context.setProject(projects.get(0));
+            context.setMicroserviceComponent(getComponent(projects.get(0)));
+            context.setOpenAPI(openAPIDoc);
+            sessions.add(context);
+        }
+        footprint.retainedBytes = usedHeap() - before;
+        return sessions;
+    }
+
+    @Benchmark
+    public Object sharedSessions(Footprint footprint) {
+        long before = usedHeap();
+        List<TestModelingContext> sessions = new ArrayList<>(SESSIONS);
+        for (int i = 0; i < SESSIONS; i++) {
+            List<JSONObject> projects = parseProjects();
+            TestModelingContext context = new TestModelingContext();
+            context.setProjectsLinkedToChannel(projects);
+            context.setProject(projects.get(0));
+            context.setMicroserviceComponent(getComponent(projects.get(0)));
+            context.setOpenAPI(openAPIDoc);
+            sessions.add(context);
+        }
+        footprint.retainedBytes = usedHeap() - before;
+        sessions.forEach(TestModelingContext::releaseSharedDocuments);
+        return sessions;
+    }
+
+    private List<JSONObject> parseProjects() {
+        JSONObject projectsObj = (JSONObject) JSONValue.parse(projectsDoc);
+        return (List<JSONObject>) projectsObj.get("projects");
+    }
+
+    private static JSONObject getComponent(JSONObject project) {
+        JSONArray components = (JSONArray) ((JSONObject) project.get("metadata")).get("components");
+        return (JSONObject) components.get(0);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String createOpenAPIDoc() {
+        StringBuilder paths = new StringBuilder();
+        for (int i = 0; i < PATHS; i++) {
+            if (i > 0) paths.append(",");
+            paths.append("\"/resource").append(i).append("/{id}\": {")
+                    .append("\"get\": {\"operationId\": \"get").append(i).append("\",")
+                    .append("\"parameters\": [{\"name\": \"id\", \"in\": \"path\", \"required\": true, \"schema\": {\"type\": \"integer\"}}],")
+                    .append("\"responses\": {\"200\": {\"description\": \"OK\", \"content\": {\"application/json\": {\"schema\": {\"$ref\": \"#/components/schemas/Resource").append(i).append("\"}}}},")
+                    .append("\"404\": {\"description\": \"Not found\"}}},")
+                    .append("\"put\": {\"operationId\": \"put").append(i).append("\",")
+                    .append("\"parameters\": [{\"name\": \"id\", \"in\": \"path\", \"required\": true, \"schema\": {\"type\": \"integer\"}}],")
+                    .append("\"requestBody\": {\"content\": {\"application/json\": {\"schema\": {\"$ref\": \"#/components/schemas/Resource").append(i).append("\"}}}},")
+                    .append("\"responses\": {\"200\": {\"description\": \"OK\"}}}}");
+        }
+        StringBuilder schemas = new StringBuilder();
+        for (int i = 0; i < PATHS; i++) {
+            if (i > 0) schemas.append(",");
+            schemas.append("\"Resource").append(i).append("\": {\"type\": \"object\", \"properties\": {")
+                    .append("\"id\": {\"type\": \"integer\"}, \"name\": {\"type\": \"string\"},")
+                    .append("\"description\": {\"type\": \"string\"}, \"tags\": {\"type\": \"array\", \"items\": {\"type\": \"string\"}}}}");
+        }
+        return "{\"openapi\": \"3.0.1\", \"info\": {\"title\": \"Service\", \"version\": \"1.0\"}, \"paths\": {" + paths
+                + "}, \"components\": {\"schemas\": {" + schemas + "}}}";
+    }
+
+    private static String createProjectsDoc() {
+        StringBuilder projects = new StringBuilder();
+        for (int p = 0; p < 2; p++) {
+            if (p > 0) projects.append(",");
+            projects.append("{\"id\": ").append(p + 1).append(", \"name\": \"Project ").append(p + 1).append("\",")
+                    .append("\"chatInfo\": {\"type\": \"RocketChat\", \"channelId\": \"channel\"},")
+                    .append("\"metadata\": {\"components\": [");
+            for (int c = 0; c < 10; c++) {
+                if (c > 0) projects.append(",");
+                projects.append("{\"type\": \"microservice\", \"name\": \"Service ").append(c).append("\",")
+                        .append("\"versionedModelId\": ").append(p * 100 + c).append(",")
+                        .append("\"description\": \"Microservice ").append(c).append(" of project ").append(p + 1).append("\"}");
+            }
+            projects.append("]}}");
+        }
+        return "{\"projects\": [" + projects + "]}";
+    }
+}
@@ -0,0 +1,77 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import org.openapitools.openapidiff.core.OpenApiCompare;
+import org.openapitools.openapidiff.core.model.ChangedOpenApi;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time for diffing two large synthetic OpenAPI documents in which a single operation has been changed,
+ * once with openapi-diff on the complete documents and once with the fingerprint-based OperationDiffEngine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenAPIDiffBenchmark {
+
+    @Param({"500", "2000"})
+    private int operations;
+
+    private String openAPIDocOld;
+    private String openAPIDocUpdated;
+
+    @Setup
+    public void setup() {
+        openAPIDocOld = createOpenAPIDoc(operations, false);
+        openAPIDocUpdated = createOpenAPIDoc(operations, true);
+    }
+
+    @Benchmark
+    public ChangedOpenApi fullDocumentDiff() {
+        return OpenApiCompare.fromContents(openAPIDocOld, openAPIDocUpdated);
+    }
+
+    @Benchmark
+    public ChangedOpenApi operationDiffEngine() {
+        return OperationDiffEngine.diff(openAPIDocOld, openAPIDocUpdated);
+    }
+
+    /**
+     * Creates an OpenAPI document with the given number of operations (GET and PUT per path). Every path has its own
+     * schema that references a shared schema.
+     *
+     * @param operations Number of operations
+     * @param changed    Whether a response code of the first operation should be changed.
+     * @return OpenAPI document (JSON)
+     */
+    static String createOpenAPIDoc(int operations, boolean changed) {
+        StringBuilder paths = new StringBuilder();
+        StringBuilder schemas = new StringBuilder();
+        schemas.append("\"Shared\":{\"type\":\"object\",\"properties\":{\"id\":{\"type\":\"integer\"},"
+                + "\"name\":{\"type\":\"string\"}}}");
+        for (int i = 0; i < operations / 2; i++) {
+            String schemaRef = "{\"$ref\":\"#/components/schemas/Item" + i + "\"}";
+            String content = "{\"application/json\":{\"schema\":" + schemaRef + "}}";
+            if (i > 0) paths.append(",");
+            paths.append("\"/items").append(i).append("/{id}\":{")
+                    .append("\"parameters\":[{\"name\":\"id\",\"in\":\"path\",\"required\":true,")
+                    .append("\"schema\":{\"type\":\"integer\"}}],")
+                    .append("\"get\":{\"operationId\":\"getItem").append(i).append("\",\"responses\":{")
+                    .append("\"").append(changed && i == 0 ? "201" : "200")
+                    .append("\":{\"description\":\"OK\",\"content\":").append(content).append("},")
+                    .append("\"404\":{\"description\":\"Not found\"}}},")
+                    .append("\"put\":{\"operationId\":\"putItem").append(i).append("\",")
+                    .append("\"requestBody\":{\"content\":").append(content).append("},")
+                    .append("\"responses\":{\"200\":{\"description\":\"OK\"}}}}");
+            schemas.append(",\"Item").append(i).append("\":{\"type\":\"object\",\"properties\":{")
+                    .append("\"shared\":{\"$ref\":\"#/components/schemas/Shared\"},")
+                    .append("\"value").append(i).append("\":{\"type\":\"string\"}}}");
+        }
+        return "{\"openapi\":\"3.0.1\",\"info\":{\"title\":\"Synthetic\",\"version\":\"1.0\"},"
+                + "\"paths\":{" + paths + "},\"components\":{\"schemas\":{" + schemas + "}}}";
+    }
+}
@@ -0,0 +1,63 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import i5.las2peer.services.apiTestingBot.context.SharedDocumentRegistry;
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.core.util.Yaml;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time for fingerprinting multi-megabyte OpenAPI documents (JSON and YAML): the raw content hash, the
+ * canonical hash via a sorted Jackson object model, and the streaming OpenAPIFingerprint.
+ * Run with "-prof gc" to compare the allocations per document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenAPIFingerprintBenchmark {
+
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    /**
+     * Number of operations of the document (2000 operations are about 1 MB of JSON).
+     */
+    @Param({"2000", "10000"})
+    private int operations;
+
+    private String json;
+    private String yaml;
+
+    @Setup
+    public void setup() throws Exception {
+        json = Json.pretty(Json.mapper().readTree(OpenAPIDiffBenchmark.createOpenAPIDoc(operations, false)));
+        yaml = Yaml.pretty(Json.mapper().readTree(json));
+    }
+
+    @Benchmark
+    public String rawContentHash() {
+        return SharedDocumentRegistry.contentHash(json);
+    }
+
+    @Benchmark
+    public String objectModelJson() throws Exception {
+        Object content = Json.mapper().treeToValue(Json.mapper().readTree(json), Object.class);
+        return SharedDocumentRegistry.contentHash(CANONICAL_MAPPER.writeValueAsString(content));
+    }
+
+    @Benchmark
+    public String streamingJson() {
+        return OpenAPIFingerprint.fingerprint(json);
+    }
+
+    @Benchmark
+    public String streamingYaml() {
+        return OpenAPIFingerprint.fingerprint(yaml);
+    }
+}
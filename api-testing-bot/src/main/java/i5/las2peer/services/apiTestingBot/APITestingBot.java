@@ -5,20 +5,47 @@ import i5.las2peer.api.ManualDeployment;
 import i5.las2peer.api.logging.MonitoringEvent;
 import i5.las2peer.restMapper.RESTService;
 import i5.las2peer.restMapper.annotations.ServicePath;
-import i5.las2peer.services.apiTestingBot.context.TestModelingContext;
+import i5.las2peer.services.apiTestingBot.chat.GHMessageHandler;
+import i5.las2peer.services.apiTestingBot.chat.MessageHandler;
+import i5.las2peer.services.apiTestingBot.chat.RCMessageHandler;
+import i5.las2peer.services.apiTestingBot.codex.CachingCompletionClient;
+import i5.las2peer.services.apiTestingBot.codex.CodexAPI;
+import i5.las2peer.services.apiTestingBot.codex.CodexTestGen;
+import i5.las2peer.services.apiTestingBot.codex.CompletionClient;
+import i5.las2peer.services.apiTestingBot.codex.OpenAICompletionClient;
+import i5.las2peer.services.apiTestingBot.codex.RateLimitedCompletionClient;
+import i5.las2peer.services.apiTestingBot.context.MessengerType;
+import i5.las2peer.services.apiTestingBot.context.SessionJournal;
+import i5.las2peer.services.apiTestingBot.context.TestModelingContextStore;
+import i5.las2peer.services.apiTestingBot.util.ArtifactCache;
+import i5.las2peer.services.apiTestingBot.util.ArtifactExtractor;
+import i5.las2peer.services.apiTestingBot.util.ChannelMailboxes;
+import i5.las2peer.services.apiTestingBot.util.GeneratedTestCaseStore;
+import i5.las2peer.services.apiTestingBot.util.IOTaskExecutor;
+import i5.las2peer.services.apiTestingBot.util.PRTestGenHelper;
+import i5.las2peer.services.apiTestingBot.util.SBFForwarder;
+import i5.las2peer.services.apiTestingBot.util.TestGenResultCache;
+import i5.las2peer.services.apiTestingBot.util.WebhookIngestionQueue;
 import i5.las2peer.services.apiTestingBot.util.OpenAPIUtils;
 import io.swagger.annotations.Api;
 import org.json.simple.JSONObject;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Api
 @ServicePath("/apitestingbot")
 @ManualDeployment
 public class APITestingBot extends RESTService {
 
-    public static HashMap<String, TestModelingContext> channelModelingContexts = new HashMap<>();
+    /**
+     * Test modeling contexts of the channels in which a test case is currently modeled.
+     */
+    public static final TestModelingContextStore channelModelingContexts = new TestModelingContextStore();
 
     private String botManagerURL;
     private String caeBackendURL;
@@ -35,8 +62,286 @@ public class APITestingBot extends RESTService {
 
     private String codexAPIToken;
 
+    /**
+     * URL of the (OpenAI-compatible) completions endpoint that is used to generate test code.
+     * If empty, the OpenAI API is used.
+     */
+    private String completionEndpoint = "";
+
+    /**
+     * Name of the code completion model.
+     */
+    private String completionModel = CodexAPI.DEFAULT_MODEL_NAME;
+
+    /**
+     * Connect timeout (in milliseconds) for the completion API.
+     */
+    private int completionConnectTimeoutMillis = OpenAICompletionClient.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+    /**
+     * Timeout (in milliseconds) for receiving the response of the completion API.
+     */
+    private int completionRequestTimeoutMillis = OpenAICompletionClient.DEFAULT_REQUEST_TIMEOUT_MILLIS;
+
+    /**
+     * Maximum number of connections to the completion API.
+     */
+    private int completionMaxConnections = OpenAICompletionClient.DEFAULT_MAX_CONNECTIONS;
+
+    /**
+     * Maximum number of retries of a failed request to the completion API.
+     */
+    private int completionMaxRetries = OpenAICompletionClient.DEFAULT_MAX_RETRIES;
+
+    /**
+     * Maximum number of completion requests whose completions are cached in memory.
+     */
+    private int completionCacheMaxEntries = CachingCompletionClient.DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Directory in which the completions are cached. If empty, they are only cached in memory.
+     */
+    private String completionCacheDirectory = "";
+
+    /**
+     * Maximum number of completion requests whose completions are cached on disk.
+     */
+    private int completionCacheMaxDiskEntries = CachingCompletionClient.DEFAULT_MAX_DISK_ENTRIES;
+
+    /**
+     * Time (in hours) after which cached completions expire.
+     */
+    private int completionCacheTtlHours = CachingCompletionClient.DEFAULT_TTL_HOURS;
+
+    /**
+     * Whether the completion cache should be bypassed (every request is sent to the completion API).
+     */
+    private boolean completionCacheBypass = false;
+
+    /**
+     * Number of candidate continuations that are requested for the assertions of a test case generated from a
+     * description (0 to request one assertion at a time).
+     */
+    private int completionAssertionCandidates = CodexTestGen.DEFAULT_ASSERTION_CANDIDATES;
+
+    /**
+     * Maximum number of tokens per candidate continuation for the assertions.
+     */
+    private int completionAssertionMaxTokens = CodexTestGen.DEFAULT_ASSERTION_MAX_TOKENS;
+
+    /**
+     * Whether completions should be streamed, so that the generation can be stopped as soon as the generated code is
+     * complete (or irrelevant).
+     */
+    private boolean completionStreaming = true;
+
+    /**
+     * Maximum number of requests per minute to the completion API (0 for no limit).
+     */
+    private int completionRequestsPerMinute = RateLimitedCompletionClient.DEFAULT_REQUESTS_PER_MINUTE;
+
+    /**
+     * Maximum number of tokens per minute (prompts and completions) of the requests to the completion API (0 for no
+     * limit).
+     */
+    private int completionTokensPerMinute = RateLimitedCompletionClient.DEFAULT_TOKENS_PER_MINUTE;
+
+    /**
+     * Maximum time (in seconds) that a completion request waits for its turn (0 to wait indefinitely).
+     */
+    private int completionMaxQueueWaitSeconds = RateLimitedCompletionClient.DEFAULT_MAX_WAIT_SECONDS;
+
+    /**
+     * Maximum number of test modeling contexts that are kept in memory.
+     */
+    private int sessionStoreMaxEntries = TestModelingContextStore.DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Time (in minutes) after which an abandoned test modeling context is removed.
+     */
+    private int sessionIdleTimeoutMinutes = TestModelingContextStore.DEFAULT_IDLE_TIMEOUT_MINUTES;
+
+    /**
+     * Directory in which in-flight modeling sessions and generated test cases are persisted.
+     * If empty, nothing is persisted.
+     */
+    private String sessionJournalDirectory = "";
+
+    /**
+     * Number of journal records after which the journal is compacted into a snapshot.
+     */
+    private int sessionJournalCompactionThreshold = SessionJournal.DEFAULT_COMPACTION_THRESHOLD;
+
+    /**
+     * Maximum number of messages per channel that are handled or wait to be handled.
+     */
+    private int channelMailboxQueueDepth = ChannelMailboxes.DEFAULT_QUEUE_DEPTH;
+
+    /**
+     * Maximum number of GitHub webhook events that wait to be handled.
+     */
+    private int webhookQueueCapacity = WebhookIngestionQueue.DEFAULT_CAPACITY;
+
+    /**
+     * Number of GitHub webhook events that are handled in parallel.
+     */
+    private int webhookWorkerConcurrency = WebhookIngestionQueue.DEFAULT_CONCURRENCY;
+
+    /**
+     * Time (in seconds) that the service waits for queued webhook events to be handled when it is stopped.
+     */
+    private int webhookShutdownTimeoutSeconds = 30;
+
+    /**
+     * Maximum number of connections that are used to forward webhook events to the SBF.
+     */
+    private int sbfForwarderMaxConnections = SBFForwarder.DEFAULT_MAX_CONNECTIONS;
+
+    /**
+     * Timeout (in seconds) for forwarding a webhook event to the SBF.
+     */
+    private int sbfForwarderTimeoutSeconds = SBFForwarder.DEFAULT_TIMEOUT_SECONDS;
+
+    /**
+     * Maximum number of attempts to forward a webhook event to the SBF.
+     */
+    private int sbfForwarderMaxAttempts = SBFForwarder.DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Directory that webhook events are written to if they cannot be forwarded to the SBF.
+     * Events that the SBF rejects (4xx responses) are written to its subdirectory "rejected" and not forwarded again.
+     * If empty, these events are dropped.
+     */
+    private String sbfDeadLetterDirectory = "";
+
+    /**
+     * Directory in which the OpenAPI docs of workflow run artifacts are cached.
+     * If empty, the artifacts are downloaded for every pull request event.
+     */
+    private String artifactCacheDirectory = "";
+
+    /**
+     * Maximum total size (in MB) of the OpenAPI docs in the artifact cache.
+     */
+    private int artifactCacheMaxSizeMB = (int) (ArtifactCache.DEFAULT_MAX_SIZE_BYTES / (1024 * 1024));
+
+    /**
+     * Maximum size (in MB) of a zipped workflow run artifact that contains an OpenAPI doc.
+     */
+    private int artifactMaxCompressedSizeMB = (int) (ArtifactExtractor.DEFAULT_MAX_COMPRESSED_BYTES / (1024 * 1024));
+
+    /**
+     * Maximum size (in MB) of an OpenAPI doc that is extracted from a workflow run artifact.
+     */
+    private int artifactMaxUncompressedSizeMB =
+            (int) (ArtifactExtractor.DEFAULT_MAX_UNCOMPRESSED_BYTES / (1024 * 1024));
+
+    /**
+     * Number of threads that load the OpenAPI docs of pull requests from GitHub (shared by all events).
+     */
+    private int artifactDownloadThreads = IOTaskExecutor.DEFAULT_THREADS;
+
+    /**
+     * Time (in seconds) that loading the OpenAPI docs of the base and head of a pull request may take.
+     */
+    private int artifactDownloadTimeoutSeconds = IOTaskExecutor.DEFAULT_TIMEOUT_SECONDS;
+
+    /**
+     * Maximum number of test generation results (per pair of OpenAPI docs) that are cached in memory.
+     */
+    private int testGenCacheMaxEntries = TestGenResultCache.DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Directory in which the test generation results are cached additionally.
+     * If empty, the results are only cached in memory.
+     */
+    private String testGenCacheDirectory = "";
+
+    /**
+     * Maximum number of test generation results that are cached on disk.
+     */
+    private int testGenCacheMaxDiskEntries = TestGenResultCache.DEFAULT_MAX_DISK_ENTRIES;
+
+    /**
+     * Maximum number of pull requests per repository for which the generated test cases are kept.
+     */
+    private int generatedTestCasesMaxPullRequestsPerRepo = GeneratedTestCaseStore.DEFAULT_MAX_PULL_REQUESTS_PER_REPO;
+
+    /**
+     * Maximum number of generated test cases that are kept per pull request.
+     */
+    private int generatedTestCasesHistorySize = GeneratedTestCaseStore.DEFAULT_HISTORY_SIZE;
+
+    /**
+     * Maximum number of added or changed operations of a pull request that test cases are generated for.
+     */
+    private int testGenMaxOperations = PRTestGenHelper.DEFAULT_TEST_GEN_MAX_OPERATIONS;
+
+    /**
+     * Maximum number of concurrent test generation calls per repository.
+     */
+    private int testGenConcurrencyPerRepo = PRTestGenHelper.DEFAULT_TEST_GEN_CONCURRENCY_PER_REPO;
+
+    /**
+     * Time (in seconds) that the test generation for all operations of a pull request event may take.
+     */
+    private int testGenTimeoutSeconds = PRTestGenHelper.DEFAULT_TEST_GEN_TIMEOUT_SECONDS;
+
+    /**
+     * Makes sure that messages of the same channel are handled one after another.
+     */
+    private final ChannelMailboxes channelMailboxes = new ChannelMailboxes();
+
+    /**
+     * Message handlers (and their state transition tables) for the supported messengers.
+     */
+    private final EnumMap<MessengerType, MessageHandler> messageHandlers = new EnumMap<>(MessengerType.class);
+
+    /**
+     * Queue for the webhook events of the GitHub app, which are handled asynchronously.
+     */
+    private final WebhookIngestionQueue webhookIngestionQueue =
+            new WebhookIngestionQueue(event -> RESTResources.handleWebhookEvent(this, event));
+
+    /**
+     * Forwards the webhook events of the GitHub app to the SBF.
+     */
+    private final SBFForwarder sbfForwarder;
+
+    /**
+     * Client of the code completion model that generates test code from test case descriptions.
+     */
+    private final CompletionClient completionClient;
+
     public APITestingBot() {
         setFieldValues();
+        channelModelingContexts.setLimits(sessionStoreMaxEntries, sessionIdleTimeoutMinutes);
+        channelMailboxes.setQueueDepth(channelMailboxQueueDepth);
+        webhookIngestionQueue.setLimits(webhookQueueCapacity, webhookWorkerConcurrency);
+        PRTestGenHelper.getGeneratedTestCases().setLimits(generatedTestCasesMaxPullRequestsPerRepo,
+                generatedTestCasesHistorySize);
+        enableSessionPersistence();
+        enableArtifactCache();
+        PRTestGenHelper.setArtifactSizeLimits(artifactMaxCompressedSizeMB * 1024L * 1024L,
+                artifactMaxUncompressedSizeMB * 1024L * 1024L);
+        PRTestGenHelper.setArtifactDownloadLimits(artifactDownloadThreads, artifactDownloadTimeoutSeconds);
+        PRTestGenHelper.setTestGenLimits(testGenMaxOperations, testGenConcurrencyPerRepo, testGenTimeoutSeconds);
+        Path testGenCachePath = testGenCacheDirectory == null || testGenCacheDirectory.isEmpty() ? null
+                : Path.of(testGenCacheDirectory);
+        PRTestGenHelper.setTestGenResultCache(new TestGenResultCache(testGenCacheMaxEntries, testGenCachePath,
+                testGenCacheMaxDiskEntries));
+        sbfForwarder = new SBFForwarder(sbfForwarderMaxConnections, sbfForwarderTimeoutSeconds,
+                sbfForwarderMaxAttempts, sbfDeadLetterDirectory);
+
+        completionClient = createCompletionClient();
+
+        RCMessageHandler rocketChatMessageHandler = new RCMessageHandler(caeBackendURL, completionClient);
+        GHMessageHandler gitHubMessageHandler = new GHMessageHandler(completionClient);
+        rocketChatMessageHandler.setAssertionGeneration(completionAssertionCandidates, completionAssertionMaxTokens);
+        gitHubMessageHandler.setAssertionGeneration(completionAssertionCandidates, completionAssertionMaxTokens);
+        messageHandlers.put(MessengerType.ROCKET_CHAT, rocketChatMessageHandler);
+        messageHandlers.put(MessengerType.GITHUB_ISSUES, gitHubMessageHandler);
+        messageHandlers.put(MessengerType.GITHUB_PR, gitHubMessageHandler);
     }
 
     @Override
@@ -44,6 +349,19 @@ public class APITestingBot extends RESTService {
         getResourceConfig().register(RESTResources.class);
     }
 
+    @Override
+    public void onStop() {
+        // wait for queued webhook events, the remaining ones stay in the journal
+        if (!webhookIngestionQueue.shutdown(TimeUnit.SECONDS.toMillis(webhookShutdownTimeoutSeconds))) {
+            System.out.println(webhookIngestionQueue.getQueueSize() + " webhook events have not been handled.");
+        }
+        channelModelingContexts.flush();
+        sbfForwarder.shutdown();
+        completionClient.shutdown();
+        PRTestGenHelper.getIOTaskExecutor().shutdown();
+        super.onStop();
+    }
+
     @Override
     public Map<String, String> getCustomMessageDescriptions() {
         Map<String, String> descriptions = new HashMap<>();
@@ -52,6 +370,59 @@ public class APITestingBot extends RESTService {
         return descriptions;
     }
 
+    /**
+     * Restores the modeling sessions, generated test cases and pending webhook events from the journals in the session
+     * journal directory and persists all following modifications there.
+     */
+    private void enableSessionPersistence() {
+        if (sessionJournalDirectory == null || sessionJournalDirectory.isEmpty()) return;
+        try {
+            Path directory = Path.of(sessionJournalDirectory);
+            channelModelingContexts.enablePersistence(new SessionJournal(directory, "modeling-contexts",
+                    sessionJournalCompactionThreshold), new SessionJournal(directory, "modeling-documents",
+                    sessionJournalCompactionThreshold));
+            PRTestGenHelper.getGeneratedTestCases().enablePersistence(new SessionJournal(directory,
+                    "generated-test-cases", sessionJournalCompactionThreshold));
+            webhookIngestionQueue.enablePersistence(new SessionJournal(directory, "webhook-events",
+                    sessionJournalCompactionThreshold));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Caches the OpenAPI docs of workflow run artifacts in the artifact cache directory.
+     */
+    private void enableArtifactCache() {
+        if (artifactCacheDirectory == null || artifactCacheDirectory.isEmpty()) return;
+        try {
+            PRTestGenHelper.enableArtifactCache(new ArtifactCache(Path.of(artifactCacheDirectory),
+                    artifactCacheMaxSizeMB * 1024L * 1024L));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the client of the completion API, whose completions are cached. Requests that are not answered from
+     * the cache are scheduled according to the rate limits of the completion API.
+     */
+    private CompletionClient createCompletionClient() {
+        OpenAICompletionClient client = new OpenAICompletionClient(completionEndpoint, completionModel, codexAPIToken,
+                completionConnectTimeoutMillis, completionRequestTimeoutMillis, completionMaxConnections,
+                completionMaxRetries);
+        client.setStreaming(completionStreaming);
+        RateLimitedCompletionClient rateLimitedClient = new RateLimitedCompletionClient(client,
+                completionRequestsPerMinute, completionTokensPerMinute, completionMaxQueueWaitSeconds);
+        CachingCompletionClient cachingClient = new CachingCompletionClient(rateLimitedClient,
+                completionModel + "@" + completionEndpoint, completionCacheMaxEntries,
+                completionCacheDirectory == null || completionCacheDirectory.isEmpty() ? null
+                        : Path.of(completionCacheDirectory),
+                completionCacheMaxDiskEntries, completionCacheTtlHours);
+        cachingClient.setBypass(completionCacheBypass);
+        return cachingClient;
+    }
+
     /**
      * Sends a chat message describing the changes between the two given OpenAPI documents.
      * @param openAPIDocOld Old OpenAPI document.
@@ -62,10 +433,10 @@ public class APITestingBot extends RESTService {
      */
     public void sendAPIDocChangesMessage(String openAPIDocOld, String openAPIDocUpdated, String sbfBotName,
                                          String messenger, String channel) {
-        // only send a message if document has changed
-        if (OpenAPIUtils.docUnchanged(openAPIDocOld, openAPIDocUpdated)) return;
+        // only send a message if document has changed (documents are only compared once)
+        String message = OpenAPIUtils.getChangesMessage(openAPIDocOld, openAPIDocUpdated, messenger);
+        if (message == null) return;
 
-        String message = OpenAPIUtils.getDiffDescriptionMessage(openAPIDocOld, openAPIDocUpdated, messenger);
         message += "\n" + "You can use the @CAE bot to model an API test case in chat. Just let @CAE know if you want to model a test.";
 
         // create monitoring message that triggers a webhook call to the SBF
@@ -109,6 +480,28 @@ public class APITestingBot extends RESTService {
         return webhookPayload;
     }
 
+    /**
+     * Returns the message handler for the given messenger.
+     *
+     * @param messengerType Messenger type
+     * @return Message handler for the given messenger, or null if the messenger is not supported.
+     */
+    public MessageHandler getMessageHandler(MessengerType messengerType) {
+        return messageHandlers.get(messengerType);
+    }
+
+    public ChannelMailboxes getChannelMailboxes() {
+        return channelMailboxes;
+    }
+
+    public WebhookIngestionQueue getWebhookIngestionQueue() {
+        return webhookIngestionQueue;
+    }
+
+    public SBFForwarder getSBFForwarder() {
+        return sbfForwarder;
+    }
+
     public String getCaeBackendURL() {
         return caeBackendURL;
     }
@@ -128,4 +521,8 @@ public class APITestingBot extends RESTService {
     public String getCodexAPIToken() {
         return codexAPIToken;
     }
+
+    public CompletionClient getCompletionClient() {
+        return completionClient;
+    }
 }
@@ -2,17 +2,17 @@ package i5.las2peer.services.apiTestingBot;
 
 import i5.las2peer.api.Context;
 import i5.las2peer.apiTestModel.*;
-import i5.las2peer.services.apiTestingBot.chat.GHMessageHandler;
-import i5.las2peer.services.apiTestingBot.chat.Intent;
+import i5.las2peer.services.apiTestingBot.chat.ChatMessage;
 import i5.las2peer.services.apiTestingBot.chat.MessageHandler;
-import i5.las2peer.services.apiTestingBot.chat.RCMessageHandler;
+import i5.las2peer.services.apiTestingBot.chat.Messages;
 import i5.las2peer.services.apiTestingBot.context.MessengerType;
 import i5.las2peer.services.apiTestingBot.context.TestModelingContext;
 import i5.las2peer.services.apiTestingBot.context.TestModelingState;
+import i5.las2peer.services.apiTestingBot.util.GeneratedTestCaseStore;
 import i5.las2peer.services.apiTestingBot.util.IssueTestModelingHelper;
 import i5.las2peer.services.apiTestingBot.util.PRTestGenHelper;
+import i5.las2peer.services.apiTestingBot.util.WebhookIngestionQueue.WebhookEvent;
 import io.swagger.annotations.Api;
-import kong.unirest.Unirest;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 
@@ -21,6 +21,9 @@ import javax.ws.rs.core.Response;
 
 import java.io.Serializable;
 import java.net.HttpURLConnection;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static i5.las2peer.services.apiTestingBot.context.MessengerType.*;
 import static i5.las2peer.services.apiTestingBot.context.TestModelingState.*;
@@ -29,6 +32,19 @@ import static i5.las2peer.services.apiTestingBot.context.TestModelingState.*;
 @Path("/")
 public class RESTResources {
 
+    /**
+     * Number of attempts to model an issue if the mailbox of its channel is full, and the delay between them.
+     */
+    private static final int ISSUE_MODELING_ATTEMPTS = 3;
+    private static final long ISSUE_MODELING_RETRY_DELAY_MILLIS = 1000;
+
+    /**
+     * Command for generating the code of a test case that has been generated for a pull request, optionally with the
+     * number of the test case (e.g., "@testingbot code #2").
+     */
+    private static final Pattern TEST_CODE_COMMAND = Pattern.compile("@testingbot code(?:\\s+#?(\\d{1,9}))?",
+            Pattern.CASE_INSENSITIVE);
+
     @GET
     @Path("/")
     public Response get() {
@@ -45,191 +61,45 @@ public class RESTResources {
         MessengerType messengerType = MessengerType.fromString(messenger);
         String channel = (String) bodyJSON.get("channel");
 
-        // get current modeling context for this channel
-        TestModelingContext context;
-        if(!APITestingBot.channelModelingContexts.containsKey(channel)) APITestingBot.channelModelingContexts.put(channel, new TestModelingContext());
-        context = APITestingBot.channelModelingContexts.get(channel);
-
-        // get the initial state of the context (at the beginning of this execution)
-        TestModelingState initialState = context.getState();
-
-        boolean handleNextState = false;
-
-        StringBuilder responseMessageSB = new StringBuilder();
         APITestingBot service = (APITestingBot) Context.get().getService();
-        String codexAPIToken = service.getCodexAPIToken();
-
-        // setup message handler
-        MessageHandler messageHandler;
-        if(messengerType == ROCKET_CHAT) messageHandler = new RCMessageHandler(service.getCaeBackendURL());
-        else if(messengerType == GITHUB_ISSUES || messengerType == GITHUB_PR) messageHandler = new GHMessageHandler();
-        else return Response.status(Response.Status.BAD_REQUEST).entity("Unsupported messenger type.").build();
-
-        do {
-            if (initialState == INIT && intent.equals(Intent.MODEL_TEST)) {
-                handleNextState = messageHandler.handleInit(responseMessageSB, context);
-            }
-
-            if(handleNextState && context.getState() == API_TEST_FAMILIARITY_QUESTION) {
-                handleNextState = messageHandler.handleAPITestFamiliarityQuestion(responseMessageSB);
-            }
-
-            if(initialState == API_TEST_FAMILIARITY_QUESTION) {
-                handleNextState = messageHandler.handleAPITestFamiliarityQuestionAnswer(responseMessageSB, context, intent);
-            }
-
-            if(handleNextState && context.getState() == ENTER_TEST_CASE_DESCRIPTION) {
-                handleNextState = messageHandler.handleTestCaseDescriptionQuestion(responseMessageSB);
-            }
-
-            if(initialState == ENTER_TEST_CASE_DESCRIPTION) {
-                handleNextState = messageHandler.handleTestCaseDescription(responseMessageSB, context, message, codexAPIToken);
-            }
-
-            if (handleNextState && context.getState() == RC_SELECT_PROJECT) {
-                handleNextState = ((RCMessageHandler) messageHandler).handleProjectSelectionQuestion(responseMessageSB, context, channel);
-            }
-
-            if (initialState == RC_SELECT_PROJECT) {
-                handleNextState = ((RCMessageHandler) messageHandler).handleProjectSelection(responseMessageSB, context, message);
-            }
-
-            if (handleNextState && context.getState() == RC_SELECT_MICROSERVICE) {
-                handleNextState = ((RCMessageHandler) messageHandler).handleMicroserviceSelectionQuestion(responseMessageSB, context);
-            }
-
-            if (initialState == RC_SELECT_MICROSERVICE) {
-                handleNextState = ((RCMessageHandler) messageHandler).handleMicroserviceSelection(responseMessageSB, context, message);
-            }
-
-            if (handleNextState && context.getState() == NAME_TEST_CASE) {
-                handleNextState = messageHandler.handleTestCaseNameQuestion(responseMessageSB);
-            }
-
-            if (initialState == NAME_TEST_CASE) {
-                handleNextState = messageHandler.handleTestCaseName(responseMessageSB, context, message);
-            }
-
-            if (handleNextState && context.getState() == RC_SELECT_METHOD) {
-                handleNextState = ((RCMessageHandler) messageHandler).handleMethodSelectionQuestion(responseMessageSB, context);
-            }
-
-            if (initialState == RC_SELECT_METHOD) {
-                handleNextState = ((RCMessageHandler) messageHandler).handleMethodSelection(responseMessageSB, context, message);
-            }
-
-            if (handleNextState && context.getState() == RC_ENTER_PATH_PARAMS) {
-                handleNextState = ((RCMessageHandler) messageHandler).handlePathParamsQuestion(responseMessageSB, context);
-            }
-
-            if ((handleNextState && context.getState() == RC_ENTER_PATH_PARAMS) || initialState == RC_ENTER_PATH_PARAMS) {
-                handleNextState = ((RCMessageHandler) messageHandler).handlePathParams(responseMessageSB, context, message);
-            }
-
-            if(handleNextState && context.getState() == GH_METHOD_QUESTION) {
-                handleNextState = ((GHMessageHandler) messageHandler).handleMethodQuestion(responseMessageSB, context);
-            }
-
-            if(initialState == GH_ENTER_METHOD) {
-                handleNextState = ((GHMessageHandler) messageHandler).handleMethod(responseMessageSB, context, intent);
-            }
-
-            if(handleNextState && context.getState() == GH_PATH_QUESTION) {
-                handleNextState = ((GHMessageHandler) messageHandler).handlePathQuestion(responseMessageSB, context);
-            }
-
-            if(initialState == GH_ENTER_PATH) {
-                handleNextState = ((GHMessageHandler) messageHandler).handlePath(responseMessageSB, context, message);
-            }
-
-            if ((handleNextState && context.getState() == BODY_QUESTION)) {
-                handleNextState = messageHandler.handleBodyQuestion(responseMessageSB);
-            }
-
-            if (!handleNextState && initialState == BODY_QUESTION) {
-                handleNextState = messageHandler.handleBodyQuestionAnswer(responseMessageSB, context, intent);
-            }
-
-            if (initialState == ENTER_BODY) {
-                handleNextState = messageHandler.handleBody(responseMessageSB, context, message);
-            }
-
-            if (handleNextState && context.getState() == ASSERTIONS_QUESTION) {
-                handleNextState = messageHandler.handleAssertionsQuestion(responseMessageSB);
-            }
-
-            if (initialState == ASSERTIONS_QUESTION) {
-                handleNextState = messageHandler.handleAssertionsQuestionAnswer(responseMessageSB, context, intent);
-            }
-
-            if (handleNextState && context.getState() == ASSERTION_TYPE_QUESTION) {
-                handleNextState = messageHandler.handleAssertionTypeQuestion(responseMessageSB);
-            }
-
-            if (initialState == ASSERTION_TYPE_QUESTION) {
-                handleNextState = messageHandler.handleAssertionTypeQuestionAnswer(responseMessageSB, context, message);
-            }
-
-            if (handleNextState && context.getState() == ENTER_STATUS_CODE) {
-                handleNextState = messageHandler.handleStatusCodeQuestion(responseMessageSB);
-            }
-
-            if (initialState == ENTER_STATUS_CODE) {
-                handleNextState = messageHandler.handleStatusCodeInput(responseMessageSB, context, message);
-            }
-
-            if (handleNextState && context.getState() == ASSERTIONS_OVERVIEW) {
-                handleNextState = messageHandler.handleAssertionsOverview(responseMessageSB, context);
-            }
-
-            if (handleNextState && context.getState() == ADD_ANOTHER_ASSERTION_QUESTION) {
-                handleNextState = messageHandler.handleAddAssertionQuestion(responseMessageSB);
-            }
-
-            if (initialState == ADD_ANOTHER_ASSERTION_QUESTION) {
-                handleNextState = messageHandler.handleAddAssertionQuestionAnswer(responseMessageSB, context, intent);
-            }
-
-            if(handleNextState && context.getState() == BODY_ASSERTION_TYPE_QUESTION) {
-                handleNextState = messageHandler.handleBodyAssertionTypeQuestion(responseMessageSB);
-            }
-
-            if(initialState == BODY_ASSERTION_TYPE_QUESTION && !intent.equals(Intent.MODEL_TEST)) {
-                handleNextState = messageHandler.handleBodyAssertionTypeInput(responseMessageSB, context, message);
-            }
-
-            if(intent.equals(Intent.MODEL_TEST) && initialState == BODY_ASSERTION_TYPE_QUESTION) {
-                handleNextState = messageHandler.handleBodyAssertionTypeQuestion(responseMessageSB);
-            }
-
-            if(handleNextState && context.getState() == ENTER_BODY_ASSERTION_PART) {
-                handleNextState = messageHandler.handleBodyAssertionPartQuestion(responseMessageSB, context);
-            }
-
-            if(initialState == ENTER_BODY_ASSERTION_PART) {
-                handleNextState = messageHandler.handleBodyAssertionPartInput(responseMessageSB, context, message, intent);
-            }
-
-            if(handleNextState && context.getState() == END_OF_BODY_ASSERTION_QUESTION) {
-                handleNextState = messageHandler.handleEndOfBodyAssertionQuestion(responseMessageSB, context);
-            }
+        MessageHandler messageHandler = service.getMessageHandler(messengerType);
+        if(messageHandler == null) return Response.status(Response.Status.BAD_REQUEST).entity("Unsupported messenger type.").build();
+
+        // messages of the same channel are handled one after another (they modify the same modeling context)
+        // and the context is not evicted while a message is handled
+        return service.getChannelMailboxes().execute(channel,
+                () -> APITestingBot.channelModelingContexts.runPinned(channel,
+                        () -> handleChatMessage(messageHandler, messengerType, new ChatMessage(channel, intent, message))),
+                () -> createChatResponse(Messages.BUSY, false));
+    }
 
-            if(initialState == END_OF_BODY_ASSERTION_QUESTION) {
-                handleNextState = messageHandler.handleEndOfBodyAssertionQuestionAnswer(responseMessageSB, context, intent);
-            }
+    /**
+     * Lets the message handler react to the given message and updates the modeling context of the message's channel.
+     *
+     * @param messageHandler Message handler of the messenger
+     * @param messengerType Messenger type
+     * @param chatMessage Message sent by the user.
+     * @return Response containing the bot's answer.
+     */
+    private Response handleChatMessage(MessageHandler messageHandler, MessengerType messengerType, ChatMessage chatMessage) {
+        String channel = chatMessage.getChannel();
 
-            // set initial state to final (otherwise problems occur in the next loop iterations)
-            initialState = FINAL;
+        // get current modeling context for this channel
+        TestModelingContext context = APITestingBot.channelModelingContexts.getOrCreate(channel);
 
-        } while(handleNextState);
+        // let the handlers of the current state react to the message
+        StringBuilder responseMessageSB = new StringBuilder();
+        if(!messageHandler.getDispatcher().dispatch(responseMessageSB, context, chatMessage)) {
+            System.out.println("Message cannot be handled in state " + context.getState().name());
+        }
 
-        System.out.println("New state is: " + APITestingBot.channelModelingContexts.get(channel).getState().name());
+        System.out.println("New state is: " + context.getState().name());
 
 
         if(context.getState() == FINAL) {
-            if(messengerType == ROCKET_CHAT && context.getMicroserviceComponent() != null) {
+            if(messengerType == ROCKET_CHAT && context.getComponentVersionedModelId() != -1) {
                 // store test case (as a suggestion)
-                int versionedModelId = ((Long) context.getMicroserviceComponent().get("versionedModelId")).intValue();
+                int versionedModelId = context.getComponentVersionedModelId();
                 try {
                     Context.get().invoke("i5.las2peer.services.modelPersistenceService.ModelPersistenceService",
                             "addTestSuggestion", new Serializable[]{versionedModelId, context.toTestModel(),
@@ -256,21 +126,35 @@ public class RESTResources {
             }
 
             APITestingBot.channelModelingContexts.remove(channel);
+        } else {
+            // persist the modified context
+            APITestingBot.channelModelingContexts.update(channel);
         }
 
         String responseMessage = responseMessageSB.toString();
 
         if(responseMessage.isEmpty()) responseMessage = "Error!";
 
+        return createChatResponse(responseMessage, context.getState() == FINAL);
+    }
+
+    /**
+     * Creates the response to a chat message that is sent back to the SBF.
+     *
+     * @param responseMessage Message that the bot should send.
+     * @param closeContext Whether the conversation is finished.
+     * @return Response containing the bot's answer.
+     */
+    private static Response createChatResponse(String responseMessage, boolean closeContext) {
         JSONObject res = new JSONObject();
         res.put("text", responseMessage);
-        res.put("closeContext", context.getState() == FINAL);
+        res.put("closeContext", closeContext);
 
         return Response.status(200).entity(res.toJSONString()).build();
     }
 
     /**
-     * Gets called by SBF if user comments "@testingbot code".
+     * Gets called by SBF if user comments "@testingbot code" (optionally followed by the number of the test case).
      *
      * @param body
      * @return Response message containing the generated code.
@@ -286,10 +170,16 @@ public class RESTResources {
         MessengerType messengerType = MessengerType.fromString(messenger);
         String channel = (String) bodyJSON.get("channel");
 
-        if(message.equalsIgnoreCase("@testingbot code") && messengerType == GITHUB_PR &&
-                PRTestGenHelper.generatedTestCases.containsKey(channel)) {
-            TestCase generatedTestCase = PRTestGenHelper.generatedTestCases.get(channel);
+        // "@testingbot code" refers to the latest test case, "@testingbot code #2" to the second one
+        Matcher command = TEST_CODE_COMMAND.matcher(message.trim());
+        TestCase generatedTestCase = null;
+        if(command.matches() && messengerType == GITHUB_PR) {
+            GeneratedTestCaseStore generatedTestCases = PRTestGenHelper.getGeneratedTestCases();
+            generatedTestCase = command.group(1) == null ? generatedTestCases.getLatest(channel)
+                    : generatedTestCases.get(channel, Integer.parseInt(command.group(1)));
+        }
 
+        if(generatedTestCase != null) {
             // generate code for the test case
             try {
                 String code = (String) Context.get().invoke("i5.las2peer.services.codeGenerationService.CodeGenerationService",
@@ -314,55 +204,115 @@ public class RESTResources {
 
     /**
      * Endpoint that receives the webhook events from the GitHub app.
-     * The events are redirected to the SBF (e.g., to react to issue or PR comments).
-     * If the event is a pull request workflow run event, it is also checked if the API testing bot can generate
-     * a test case for an operation that has been added or changed within the pull request.
+     * The events are only queued and handled asynchronously (see {@link #handleWebhookEvent}), so that the delivery
+     * can be acknowledged immediately. Redeliveries of an event that has already been received are ignored.
      *
      * @param body Event payload
      * @param eventName Name of GitHub event
+     * @param deliveryId Id of the delivery
      * @param gitHubAppId Id of GitHub app
-     * @return 200
+     * @return 202 if the event has been queued, 200 if it is a redelivery, 503 if the queue is full.
      */
     @POST
     @Path("/github/webhook/{gitHubAppId}")
     public Response receiveWebhookEvent(String body, @HeaderParam("X-GitHub-Event") String eventName,
+                                        @HeaderParam("X-GitHub-Delivery") String deliveryId,
                                         @PathParam("gitHubAppId") int gitHubAppId) {
         APITestingBot service = (APITestingBot) Context.get().getService();
         if(service.getGitHubAppId() != gitHubAppId) return Response.status(HttpURLConnection.HTTP_INTERNAL_ERROR).build();
 
+        // events without delivery id cannot be deduplicated
+        if(deliveryId == null || deliveryId.isEmpty()) deliveryId = UUID.randomUUID().toString();
+
+        WebhookEvent event = new WebhookEvent(deliveryId, eventName, body, gitHubAppId);
+        switch (service.getWebhookIngestionQueue().submit(event, Context.get().getExecutor())) {
+            case ACCEPTED:
+                return Response.status(HttpURLConnection.HTTP_ACCEPTED).build();
+            case DUPLICATE:
+                return Response.status(HttpURLConnection.HTTP_OK).build();
+            default:
+                return Response.status(HttpURLConnection.HTTP_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Handles a webhook event of the GitHub app (called by the workers of the webhook ingestion queue).
+     * The event is redirected to the SBF (e.g., to react to issue or PR comments).
+     * If the event is a pull request workflow run event, it is also checked if the API testing bot can generate
+     * a test case for an operation that has been added or changed within the pull request.
+     *
+     * @param service API testing bot service
+     * @param event Webhook event
+     */
+    static void handleWebhookEvent(APITestingBot service, WebhookEvent event) {
+        String body = event.getBody();
+        String eventName = event.getEventName();
+        int gitHubAppId = event.getGitHubAppId();
+
         JSONObject jsonBody = (JSONObject) JSONValue.parse(body);
 
         if(IssueTestModelingHelper.isRelevantIssueEvent(eventName, jsonBody)) {
-            boolean includeBodyAssertions = IssueTestModelingHelper.handleIssueEvent(jsonBody);
-
-            TestModelingContext context = APITestingBot.channelModelingContexts.get(IssueTestModelingHelper.getChannelName(jsonBody));
-            if(includeBodyAssertions) {
-                context.setState(TestModelingState.BODY_ASSERTION_TYPE_QUESTION);
+            String channel = IssueTestModelingHelper.getChannelName(jsonBody);
+            boolean modeled = false;
+            for(int attempt = 1; !modeled && attempt <= ISSUE_MODELING_ATTEMPTS; attempt++) {
+                if(attempt > 1 && !sleep(ISSUE_MODELING_RETRY_DELAY_MILLIS)) break;
+                modeled = service.getChannelMailboxes().execute(channel, () -> APITestingBot.channelModelingContexts.runPinned(channel, () -> {
+                    boolean includeBodyAssertions = IssueTestModelingHelper.handleIssueEvent(jsonBody);
+
+                    TestModelingContext context = APITestingBot.channelModelingContexts.get(channel);
+                    if(includeBodyAssertions) {
+                        context.setState(TestModelingState.BODY_ASSERTION_TYPE_QUESTION);
+                    } else {
+                        context.setState(TestModelingState.FINAL);
+                    }
+                    APITestingBot.channelModelingContexts.update(channel);
+                    return true;
+                }), () -> false);
+            }
+
+            if(modeled) {
+                // manipulate body (for SBF)
+                JSONObject issue = (JSONObject) jsonBody.get("issue");
+                issue.put("body", "model test");
+                body = jsonBody.toJSONString();
             } else {
-                context.setState(TestModelingState.FINAL);
+                // without a modeling context, the SBF must not start a test modeling conversation
+                System.out.println("Mailbox of " + channel + " is full, issue is not modeled.");
             }
-            
-            // manipulate body (for SBF)
-            JSONObject issue = (JSONObject) jsonBody.get("issue");
-            issue.put("body", "model test");
-            body = jsonBody.toJSONString();
         }
 
         // redirect event to SBF
-        this.redirectWebhookEventToSBF(gitHubAppId, eventName, body);
+        redirectWebhookEventToSBF(service, gitHubAppId, eventName, body);
+
+        // generated test cases are not needed anymore when a pull request is closed or merged
+        if(eventName.equals("pull_request") && "closed".equals(jsonBody.get("action"))) {
+            String repoFullName = (String) ((JSONObject) jsonBody.get("repository")).get("full_name");
+            PRTestGenHelper.getGeneratedTestCases().remove(repoFullName + "#" + jsonBody.get("number"));
+        }
 
         if(PRTestGenHelper.isRelevantWorkflowEvent(eventName, jsonBody)) {
             PRTestGenHelper.handleWorkflowEvent(jsonBody, service.getBotManagerURL(), service.getGitHubAppId(),
                     service.getGitHubAppPrivateKey());
         }
-
-        return Response.status(HttpURLConnection.HTTP_OK).build();
     }
 
-    private void redirectWebhookEventToSBF(int gitHubAppId, String eventName, String body) {
-        APITestingBot service = (APITestingBot) Context.get().getService();
+    private static void redirectWebhookEventToSBF(APITestingBot service, int gitHubAppId, String eventName, String body) {
         String sbfWebhookUrl = service.getBotManagerURL() + "/github/webhook/" + gitHubAppId;
-        Unirest.post(sbfWebhookUrl).body(body).header("X-GitHub-Event", eventName).asEmpty();
+        // sent asynchronously (with retries), so that a slow SBF does not delay the handling of the event
+        service.getSBFForwarder().forward(sbfWebhookUrl, eventName, body);
+    }
+
+    /**
+     * @return Whether the thread slept for the given time (false if it was interrupted).
+     */
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
 }
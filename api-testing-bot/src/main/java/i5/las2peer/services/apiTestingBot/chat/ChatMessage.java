@@ -0,0 +1,40 @@
+package i5.las2peer.services.apiTestingBot.chat;
+
+/**
+ * Message of a user that the SBF forwarded to the bot, together with the intent recognized by Rasa.
+ */
+public class ChatMessage {
+
+    /**
+     * Channel (Rocket.Chat channel, GitHub issue or pull request) in which the message was sent.
+     */
+    private final String channel;
+
+    /**
+     * Intent of the message.
+     */
+    private final String intent;
+
+    /**
+     * Text of the message.
+     */
+    private final String text;
+
+    public ChatMessage(String channel, String intent, String text) {
+        this.channel = channel;
+        this.intent = intent;
+        this.text = text;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getIntent() {
+        return intent;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
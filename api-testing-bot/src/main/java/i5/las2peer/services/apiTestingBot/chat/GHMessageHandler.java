@@ -4,6 +4,7 @@ import i5.las2peer.apiTestModel.BodyAssertion;
 import i5.las2peer.apiTestModel.RequestAssertion;
 import i5.las2peer.apiTestModel.StatusCodeAssertion;
 import i5.las2peer.apiTestModel.TestRequest;
+import i5.las2peer.services.apiTestingBot.codex.CompletionClient;
 import i5.las2peer.services.apiTestingBot.context.TestModelingContext;
 
 import static i5.las2peer.services.apiTestingBot.chat.MessageHandlerUtil.handleYesNoQuestion;
@@ -15,6 +16,21 @@ import static i5.las2peer.services.apiTestingBot.context.TestModelingState.*;
  */
 public class GHMessageHandler extends MessageHandler {
 
+    public GHMessageHandler(CompletionClient completionClient) {
+        super(completionClient);
+    }
+
+    @Override
+    protected void registerStateHandlers(StateDispatcher dispatcher) {
+        super.registerStateHandlers(dispatcher);
+
+        dispatcher.registerAsk(GH_METHOD_QUESTION, (sb, context, message) -> handleMethodQuestion(sb, context));
+        dispatcher.registerAnswer(GH_ENTER_METHOD, (sb, context, message) -> handleMethod(sb, context, message.getIntent()));
+
+        dispatcher.registerAsk(GH_PATH_QUESTION, (sb, context, message) -> handlePathQuestion(sb, context));
+        dispatcher.registerAnswer(GH_ENTER_PATH, (sb, context, message) -> handlePath(sb, context, message.getText()));
+    }
+
     @Override
     public boolean handleAPITestFamiliarityQuestionAnswer(StringBuilder responseMessageSB, TestModelingContext context, String intent) {
         return handleYesNoQuestion(responseMessageSB, intent, () -> {
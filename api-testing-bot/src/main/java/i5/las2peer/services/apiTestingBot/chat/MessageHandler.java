@@ -4,6 +4,8 @@ import i5.las2peer.apiTestModel.*;
 import i5.las2peer.services.apiTestingBot.codex.CodeToTestModel;
 import i5.las2peer.services.apiTestingBot.codex.CodexAPI;
 import i5.las2peer.services.apiTestingBot.codex.CodexTestGen;
+import i5.las2peer.services.apiTestingBot.codex.CompletionClient;
+import i5.las2peer.services.apiTestingBot.codex.CompletionRequest;
 import i5.las2peer.services.apiTestingBot.context.BodyAssertionType;
 import i5.las2peer.services.apiTestingBot.context.TestModelingContext;
 import org.json.simple.JSONObject;
@@ -20,6 +22,108 @@ import static i5.las2peer.services.apiTestingBot.context.TestModelingState.*;
 
 public abstract class MessageHandler {
 
+    /**
+     * Client of the code completion model that generates test cases from descriptions.
+     */
+    protected final CompletionClient completionClient;
+
+    /**
+     * Number of candidate continuations that are requested for the assertions of a generated test case
+     * (0 to request one assertion at a time).
+     */
+    private volatile int assertionCandidates = CodexTestGen.DEFAULT_ASSERTION_CANDIDATES;
+
+    /**
+     * Maximum number of tokens per candidate continuation.
+     */
+    private volatile int assertionMaxTokens = CodexTestGen.DEFAULT_ASSERTION_MAX_TOKENS;
+
+    /**
+     * Transition table containing the state handlers of this message handler.
+     */
+    private final StateDispatcher dispatcher = new StateDispatcher();
+
+    public MessageHandler(CompletionClient completionClient) {
+        this.completionClient = completionClient;
+        registerStateHandlers(dispatcher);
+    }
+
+    public StateDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * @param assertionCandidates Number of candidate continuations that are requested for the assertions of a
+     *                            generated test case (0 to request one assertion at a time).
+     * @param assertionMaxTokens  Maximum number of tokens per candidate continuation.
+     */
+    public void setAssertionGeneration(int assertionCandidates, int assertionMaxTokens) {
+        this.assertionCandidates = assertionCandidates;
+        this.assertionMaxTokens = assertionMaxTokens;
+    }
+
+    /**
+     * Registers the state handlers that are used independently of the messenger.
+     * Subclasses register their messenger-specific state handlers in addition.
+     *
+     * @param dispatcher Transition table that the state handlers are added to.
+     */
+    protected void registerStateHandlers(StateDispatcher dispatcher) {
+        dispatcher.registerAnswer(INIT, (sb, context, message) ->
+                message.getIntent().equals(Intent.MODEL_TEST) && handleInit(sb, context));
+
+        dispatcher.registerAsk(API_TEST_FAMILIARITY_QUESTION, (sb, context, message) -> handleAPITestFamiliarityQuestion(sb));
+        dispatcher.registerAnswer(API_TEST_FAMILIARITY_QUESTION, (sb, context, message) ->
+                handleAPITestFamiliarityQuestionAnswer(sb, context, message.getIntent()));
+
+        dispatcher.registerAsk(ENTER_TEST_CASE_DESCRIPTION, (sb, context, message) -> handleTestCaseDescriptionQuestion(sb));
+        dispatcher.registerAnswer(ENTER_TEST_CASE_DESCRIPTION, (sb, context, message) ->
+                handleTestCaseDescription(sb, context, message.getText(), message.getChannel(), completionClient));
+
+        dispatcher.registerAsk(NAME_TEST_CASE, (sb, context, message) -> handleTestCaseNameQuestion(sb));
+        dispatcher.registerAnswer(NAME_TEST_CASE, (sb, context, message) -> handleTestCaseName(sb, context, message.getText()));
+
+        dispatcher.registerAsk(BODY_QUESTION, (sb, context, message) -> handleBodyQuestion(sb));
+        dispatcher.registerAnswer(BODY_QUESTION, (sb, context, message) ->
+                handleBodyQuestionAnswer(sb, context, message.getIntent()));
+
+        dispatcher.registerAnswer(ENTER_BODY, (sb, context, message) -> handleBody(sb, context, message.getText()));
+
+        dispatcher.registerAsk(ASSERTIONS_QUESTION, (sb, context, message) -> handleAssertionsQuestion(sb));
+        dispatcher.registerAnswer(ASSERTIONS_QUESTION, (sb, context, message) ->
+                handleAssertionsQuestionAnswer(sb, context, message.getIntent()));
+
+        dispatcher.registerAsk(ASSERTION_TYPE_QUESTION, (sb, context, message) -> handleAssertionTypeQuestion(sb));
+        dispatcher.registerAnswer(ASSERTION_TYPE_QUESTION, (sb, context, message) ->
+                handleAssertionTypeQuestionAnswer(sb, context, message.getText()));
+
+        dispatcher.registerAsk(ENTER_STATUS_CODE, (sb, context, message) -> handleStatusCodeQuestion(sb));
+        dispatcher.registerAnswer(ENTER_STATUS_CODE, (sb, context, message) ->
+                handleStatusCodeInput(sb, context, message.getText()));
+
+        dispatcher.registerAsk(ASSERTIONS_OVERVIEW, (sb, context, message) -> handleAssertionsOverview(sb, context));
+
+        dispatcher.registerAsk(ADD_ANOTHER_ASSERTION_QUESTION, (sb, context, message) -> handleAddAssertionQuestion(sb));
+        dispatcher.registerAnswer(ADD_ANOTHER_ASSERTION_QUESTION, (sb, context, message) ->
+                handleAddAssertionQuestionAnswer(sb, context, message.getIntent()));
+
+        dispatcher.registerAsk(BODY_ASSERTION_TYPE_QUESTION, (sb, context, message) -> handleBodyAssertionTypeQuestion(sb));
+        dispatcher.registerAnswer(BODY_ASSERTION_TYPE_QUESTION, (sb, context, message) -> {
+            // in GitHub issues, the conversation starts in this state (with the "model test" intent)
+            if (message.getIntent().equals(Intent.MODEL_TEST)) return handleBodyAssertionTypeQuestion(sb);
+            return handleBodyAssertionTypeInput(sb, context, message.getText());
+        });
+
+        dispatcher.registerAsk(ENTER_BODY_ASSERTION_PART, (sb, context, message) -> handleBodyAssertionPartQuestion(sb, context));
+        dispatcher.registerAnswer(ENTER_BODY_ASSERTION_PART, (sb, context, message) ->
+                handleBodyAssertionPartInput(sb, context, message.getText(), message.getIntent()));
+
+        dispatcher.registerAsk(END_OF_BODY_ASSERTION_QUESTION, (sb, context, message) ->
+                handleEndOfBodyAssertionQuestion(sb, context));
+        dispatcher.registerAnswer(END_OF_BODY_ASSERTION_QUESTION, (sb, context, message) ->
+                handleEndOfBodyAssertionQuestionAnswer(sb, context, message.getIntent()));
+    }
+
     /**
      * Reacts to the initial message of the user that starts a test modeling conversation.
      *
@@ -47,11 +151,25 @@ public abstract class MessageHandler {
         return false;
     }
 
+    /**
+     * Generates a test case from the description entered by the user.
+     *
+     * @param responseMessageSB StringBuilder
+     * @param context           Current test modeling context
+     * @param message           Test case description
+     * @param channel           Channel in which the description was sent (its completion requests take turns with
+     *                          the ones of other channels).
+     * @param completionClient  Client of the code completion model.
+     * @return Whether the next state should be handled too.
+     */
     public boolean handleTestCaseDescription(StringBuilder responseMessageSB, TestModelingContext context, String message,
-                                             String codexAPIToken) {
+                                             String channel, CompletionClient completionClient) {
         TestRequest generatedRequest = null;
         try {
-            generatedRequest = new CodexTestGen(codexAPIToken).descriptionToTestModel(message);
+            CodexTestGen testGen = new CodexTestGen(completionClient, assertionCandidates, assertionMaxTokens);
+            // the user waits for the generated test case
+            testGen.setSession(channel, CompletionRequest.Priority.INTERACTIVE);
+            generatedRequest = testGen.descriptionToTestModel(message);
         } catch (CodexAPI.CodexAPIException | IOException e) {
             e.printStackTrace();
             return false;
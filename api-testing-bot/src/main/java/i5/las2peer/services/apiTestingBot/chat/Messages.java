@@ -40,6 +40,7 @@ public class Messages {
     public static String ERROR_COULD_NOT_UNDERSTAND = "I could not understand that. Please try again.";
     public static String ERROR_COULD_NOT_UNDERSTAND_TYPE = "I could not understand that. Please enter a valid type.";
     public static String ERROR_BODY_NO_VALID_JSON = "Entered body is no valid JSON! Please try again.";
+    public static String BUSY = "I am still working on your previous messages. Please wait a moment and try again.";
     public static String ERROR_TEST_CASE_GENERATION = "Unfortunately I was not able to generate a test case based on your description. Please try again.";
 
     public static String TEST_ADD_TO_PROJECT(String projectName) {
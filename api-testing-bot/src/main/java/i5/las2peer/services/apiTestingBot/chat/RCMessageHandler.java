@@ -4,6 +4,7 @@ import i5.las2peer.apiTestModel.BodyAssertion;
 import i5.las2peer.apiTestModel.RequestAssertion;
 import i5.las2peer.apiTestModel.StatusCodeAssertion;
 import i5.las2peer.apiTestModel.TestRequest;
+import i5.las2peer.services.apiTestingBot.codex.CompletionClient;
 import i5.las2peer.services.apiTestingBot.context.TestModelingContext;
 import i5.las2peer.services.apiTestingBot.util.ProjectServiceHelper;
 import io.swagger.v3.oas.models.Operation;
@@ -31,10 +32,38 @@ public class RCMessageHandler extends MessageHandler {
 
     private String caeBackendURL;
 
-    public RCMessageHandler(String caeBackendURL) {
+    public RCMessageHandler(String caeBackendURL, CompletionClient completionClient) {
+        super(completionClient);
         this.caeBackendURL = caeBackendURL;
     }
 
+    @Override
+    protected void registerStateHandlers(StateDispatcher dispatcher) {
+        super.registerStateHandlers(dispatcher);
+
+        dispatcher.registerAsk(RC_SELECT_PROJECT, (sb, context, message) ->
+                handleProjectSelectionQuestion(sb, context, message.getChannel()));
+        dispatcher.registerAnswer(RC_SELECT_PROJECT, (sb, context, message) ->
+                handleProjectSelection(sb, context, message.getText()));
+
+        dispatcher.registerAsk(RC_SELECT_MICROSERVICE, (sb, context, message) -> handleMicroserviceSelectionQuestion(sb, context));
+        dispatcher.registerAnswer(RC_SELECT_MICROSERVICE, (sb, context, message) ->
+                handleMicroserviceSelection(sb, context, message.getText()));
+
+        dispatcher.registerAsk(RC_SELECT_METHOD, (sb, context, message) -> handleMethodSelectionQuestion(sb, context));
+        dispatcher.registerAnswer(RC_SELECT_METHOD, (sb, context, message) -> handleMethodSelection(sb, context, message.getText()));
+
+        dispatcher.registerAsk(RC_ENTER_PATH_PARAMS, (sb, context, message) -> {
+            // if the method has path parameters, the user directly gets asked for the value of the first one
+            boolean handleNextState = handlePathParamsQuestion(sb, context);
+            if (handleNextState && context.getState() == RC_ENTER_PATH_PARAMS) {
+                return handlePathParams(sb, context, message.getText());
+            }
+            return handleNextState;
+        });
+        dispatcher.registerAnswer(RC_ENTER_PATH_PARAMS, (sb, context, message) -> handlePathParams(sb, context, message.getText()));
+    }
+
     @Override
     public boolean handleAPITestFamiliarityQuestionAnswer(StringBuilder responseMessageSB, TestModelingContext context, String intent) {
         return handleYesNoQuestion(responseMessageSB, intent, () -> {
@@ -0,0 +1,74 @@
+package i5.las2peer.services.apiTestingBot.chat;
+
+import i5.las2peer.services.apiTestingBot.context.TestModelingContext;
+import i5.las2peer.services.apiTestingBot.context.TestModelingState;
+
+import java.util.EnumMap;
+
+/**
+ * Transition table of the test modeling conversation.
+ *
+ * Every state can have two handlers:
+ * - The "ask" handler is called when the conversation enters the state (e.g., to ask the user a question).
+ * - The "answer" handler is called when a user message arrives while the conversation is in this state.
+ *
+ * When a message arrives, the answer handler of the current state is called. As long as the called handlers return
+ * true, the ask handler of the new current state is called afterwards. A message that arrives in a state without an
+ * answer handler is rejected before any handler is called.
+ */
+public class StateDispatcher {
+
+    private final EnumMap<TestModelingState, StateHandler> askHandlers = new EnumMap<>(TestModelingState.class);
+    private final EnumMap<TestModelingState, StateHandler> answerHandlers = new EnumMap<>(TestModelingState.class);
+
+    /**
+     * Registers the handler that is called when the conversation enters the given state.
+     *
+     * @param state   Test modeling state
+     * @param handler Handler
+     */
+    public void registerAsk(TestModelingState state, StateHandler handler) {
+        askHandlers.put(state, handler);
+    }
+
+    /**
+     * Registers the handler that is called when a user message arrives while the conversation is in the given state.
+     *
+     * @param state   Test modeling state
+     * @param handler Handler
+     */
+    public void registerAnswer(TestModelingState state, StateHandler handler) {
+        answerHandlers.put(state, handler);
+    }
+
+    /**
+     * Checks whether a user message can be handled in the given state.
+     *
+     * @param state Test modeling state
+     * @return Whether a user message can be handled in the given state.
+     */
+    public boolean accepts(TestModelingState state) {
+        return answerHandlers.containsKey(state);
+    }
+
+    /**
+     * Handles the given user message and advances the state of the given context.
+     *
+     * @param responseMessageSB StringBuilder
+     * @param context           Current test modeling context
+     * @param message           Message sent by the user.
+     * @return False if the message was rejected, because it cannot be handled in the current state. True otherwise.
+     */
+    public boolean dispatch(StringBuilder responseMessageSB, TestModelingContext context, ChatMessage message) {
+        StateHandler answerHandler = answerHandlers.get(context.getState());
+        if (answerHandler == null) return false;
+
+        boolean handleNextState = answerHandler.handle(responseMessageSB, context, message);
+        while (handleNextState) {
+            StateHandler askHandler = askHandlers.get(context.getState());
+            if (askHandler == null) break;
+            handleNextState = askHandler.handle(responseMessageSB, context, message);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,18 @@
+package i5.las2peer.services.apiTestingBot.chat;
+
+import i5.las2peer.services.apiTestingBot.context.TestModelingContext;
+
+/**
+ * Handles one phase (asking a question or handling the answer to it) of a test modeling state.
+ */
+@FunctionalInterface
+public interface StateHandler {
+
+    /**
+     * @param responseMessageSB StringBuilder
+     * @param context           Current test modeling context
+     * @param message           Message sent by the user.
+     * @return Whether the next state should be handled too.
+     */
+    boolean handle(StringBuilder responseMessageSB, TestModelingContext context, ChatMessage message);
+}
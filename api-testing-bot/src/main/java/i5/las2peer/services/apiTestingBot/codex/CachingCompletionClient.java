@@ -0,0 +1,261 @@
+package i5.las2peer.services.apiTestingBot.codex;
+
+import i5.las2peer.services.apiTestingBot.util.DiskLruStore;
+import i5.las2peer.services.apiTestingBot.util.Hashing;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Completion client that caches the completions of another client.
+ *
+ * The completions are cached by a hash of the complete request (model, prompt, suffix, stop, temperature, max_tokens
+ * and n). Since the base prompt is the same for every test case and the temperature is low, the same requests are
+ * sent again and again (e.g., if users enter the same test case description).
+ *
+ * There are two tiers: a bounded in-memory LRU map and an optional directory on local disk (one file per request,
+ * the least recently used files are removed if there are too many). Entries expire after a time-to-live. Requests that bypass the
+ * cache (see {@link CompletionRequest#bypassCache()}) or all requests if the cache is bypassed globally are sent to
+ * the underlying client, their completions replace the cached ones.
+ *
+ * Streamed completions are cached separately, with the text that was generated until the listener stopped the
+ * generation. On a hit, the cached text is passed to the listener at once.
+ */
+public class CachingCompletionClient implements CompletionClient {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final int DEFAULT_MAX_DISK_ENTRIES = 10000;
+    public static final int DEFAULT_TTL_HOURS = 24 * 7;
+
+    private final CompletionClient client;
+
+    /**
+     * Identifies the model of the underlying client, so that completions of different models are not mixed up.
+     */
+    private final String model;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private volatile boolean bypass;
+
+    /**
+     * Disk tier (null if the completions are only cached in memory).
+     */
+    private final DiskLruStore disk;
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    /**
+     * @param client         Client that generates the completions on a cache miss.
+     * @param model          Name of the model (and endpoint) of the client.
+     * @param maxEntries     Maximum number of requests in memory.
+     * @param directory      Directory of the disk tier (null to disable it).
+     * @param maxDiskEntries Maximum number of requests on disk.
+     * @param ttlHours       Time (in hours) after which cached completions expire.
+     */
+    public CachingCompletionClient(CompletionClient client, String model, int maxEntries, Path directory,
+                                   int maxDiskEntries, int ttlHours) {
+        this.client = client;
+        this.model = model;
+        this.maxEntries = maxEntries > 0 ? maxEntries : DEFAULT_MAX_ENTRIES;
+        this.ttlMillis = TimeUnit.HOURS.toMillis(ttlHours > 0 ? ttlHours : DEFAULT_TTL_HOURS);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CachingCompletionClient.this.maxEntries;
+            }
+        };
+        this.disk = DiskLruStore.open(directory, maxDiskEntries > 0 ? maxDiskEntries : DEFAULT_MAX_DISK_ENTRIES,
+                ttlMillis);
+    }
+
+    @Override
+    public List<String> complete(CompletionRequest request) throws CodexAPI.CodexAPIException {
+        String key = key(request, false);
+        if (bypass || request.isCacheBypassed()) {
+            bypassed.incrementAndGet();
+        } else {
+            List<String> completions = getCached(key);
+            if (completions != null) return completions;
+            misses.incrementAndGet();
+        }
+
+        List<String> completions = client.complete(request);
+        put(key, new Entry(System.currentTimeMillis(), completions));
+        return completions;
+    }
+
+    @Override
+    public String stream(CompletionRequest request, CompletionStreamListener listener)
+            throws CodexAPI.CodexAPIException {
+        String key = key(request, true);
+        if (bypass || request.isCacheBypassed()) {
+            bypassed.incrementAndGet();
+        } else {
+            List<String> completions = getCached(key);
+            if (completions != null) {
+                listener.onText(completions.get(0));
+                return completions.get(0);
+            }
+            misses.incrementAndGet();
+        }
+
+        String text = client.stream(request, listener);
+        put(key, new Entry(System.currentTimeMillis(), List.of(text)));
+        return text;
+    }
+
+    @Override
+    public void shutdown() {
+        client.shutdown();
+    }
+
+    /**
+     * @param bypass Whether all requests should bypass the cache (e.g., to compare the cached completions with new ones).
+     */
+    public void setBypass(boolean bypass) {
+        this.bypass = bypass;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getBypassCount() {
+        return bypassed.get();
+    }
+
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    /**
+     * Returns the share of the requests (that did not bypass the cache) that were answered from memory or disk.
+     *
+     * @return Hit rate between 0 and 1.
+     */
+    public double getHitRate() {
+        long hitCount = hits.get() + diskHits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private String key(CompletionRequest request, boolean stream) {
+        MessageDigest digest = Hashing.sha256();
+        for (String part : new String[]{model, request.getPrompt(), request.getSuffix(), request.getStop(),
+                String.valueOf(request.getTemperature()), String.valueOf(request.getMaxTokens()),
+                String.valueOf(request.getN()), String.valueOf(stream)}) {
+            // null and the parts' boundaries are part of the key
+            if (part != null) digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) (part == null ? 1 : 0));
+        }
+        return Hashing.toHex(digest.digest());
+    }
+
+    private List<String> getCached(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            if (isExpired(entry)) {
+                remove(key);
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.completions;
+        }
+
+        String json = disk == null ? null : disk.read(key);
+        if (json == null) return null;
+        entry = Entry.fromJSON(json);
+        if (entry == null || isExpired(entry)) {
+            remove(key);
+            return null;
+        }
+        diskHits.incrementAndGet();
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+        return entry.completions;
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.createdAt > ttlMillis;
+    }
+
+    private void remove(String key) {
+        expired.incrementAndGet();
+        synchronized (this) {
+            entries.remove(key);
+        }
+        if (disk != null) disk.remove(key);
+    }
+
+    private void put(String key, Entry entry) {
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+        if (disk != null) disk.write(key, entry.toJSON());
+    }
+
+    /**
+     * Cached completions of a request.
+     */
+    private static class Entry {
+        private final long createdAt;
+        private final List<String> completions;
+
+        private Entry(long createdAt, List<String> completions) {
+            this.createdAt = createdAt;
+            this.completions = List.copyOf(completions);
+        }
+
+        private String toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("createdAt", createdAt);
+            JSONArray completionsJSON = new JSONArray();
+            completionsJSON.addAll(completions);
+            json.put("completions", completionsJSON);
+            return json.toJSONString();
+        }
+
+        /**
+         * @return Entry, or null if the given JSON is not a valid entry.
+         */
+        private static Entry fromJSON(String json) {
+            Object parsed = JSONValue.parse(json);
+            if (!(parsed instanceof JSONObject)) return null;
+            Object createdAt = ((JSONObject) parsed).get("createdAt");
+            Object completions = ((JSONObject) parsed).get("completions");
+            if (!(createdAt instanceof Long) || !(completions instanceof JSONArray)) return null;
+            List<String> list = new ArrayList<>();
+            for (Object completion : (JSONArray) completions) list.add((String) completion);
+            return new Entry((Long) createdAt, list);
+        }
+    }
+}
@@ -10,24 +10,87 @@ import i5.las2peer.apiTestModel.BodyAssertion;
 import i5.las2peer.apiTestModel.BodyAssertionOperator;
 import i5.las2peer.apiTestModel.RequestAssertion;
 import i5.las2peer.apiTestModel.TestRequest;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class CodexTestGen {
 
     public static final String BASE_PROMPT_CLASS_NAME = "Test";
     public static final String BASE_PROMPT_METHOD_NAME = "test";
 
-    private String codexAPIToken;
+    /**
+     * Default number of candidate continuations that are requested for the assertions.
+     */
+    public static final int DEFAULT_ASSERTION_CANDIDATES = 3;
+
+    /**
+     * Default maximum number of tokens per candidate continuation (a candidate contains several assertions).
+     */
+    public static final int DEFAULT_ASSERTION_MAX_TOKENS = 300;
+
+    /**
+     * Maximum number of body assertions per test case.
+     */
+    private static final int MAX_BODY_ASSERTIONS = 5;
+
+    /**
+     * Field name of a (generated) hasField operator, as soon as its string literal is complete.
+     */
+    private static final Pattern HAS_FIELD = Pattern.compile("hasField\\(\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    /**
+     * HTTP status code that a (generated) status code assertion compares to.
+     */
+    private static final Pattern STATUS_CODE = Pattern.compile("\\b([1-5]\\d\\d)\\b");
+
+    private final CompletionClient completionClient;
+    private final int assertionCandidates;
+    private final int assertionMaxTokens;
+
+    /**
+     * Session (e.g., chat channel) and priority of the completion requests.
+     */
+    private String session;
+    private CompletionRequest.Priority priority = CompletionRequest.Priority.BACKGROUND;
+
+    /**
+     * Test generation that generates the assertions in a single completion request with multiple candidates, i.e.,
+     * three completion requests per test case.
+     *
+     * @param completionClient Client of the code completion model that generates the test code.
+     */
+    public CodexTestGen(CompletionClient completionClient) {
+        this(completionClient, DEFAULT_ASSERTION_CANDIDATES, DEFAULT_ASSERTION_MAX_TOKENS);
+    }
+
+    /**
+     * @param completionClient Client of the code completion model that generates the test code.
+     * @param assertionCandidates Number of candidate continuations that are requested for the assertions (0 to
+     *                            generate one assertion per completion request, i.e., up to eight requests).
+     * @param assertionMaxTokens Maximum number of tokens per candidate continuation.
+     */
+    public CodexTestGen(CompletionClient completionClient, int assertionCandidates, int assertionMaxTokens) {
+        this.completionClient = completionClient;
+        this.assertionCandidates = Math.max(0, assertionCandidates);
+        this.assertionMaxTokens = assertionMaxTokens > 0 ? assertionMaxTokens : DEFAULT_ASSERTION_MAX_TOKENS;
+    }
 
-    public CodexTestGen(String codexAPIToken) {
-        this.codexAPIToken = codexAPIToken;
+    /**
+     * Sets the session and priority of the completion requests, which are used to schedule the requests if the
+     * completion API is rate limited (see {@link RateLimitedCompletionClient}).
+     *
+     * @param session Session (e.g., chat channel) in which the test case is generated.
+     * @param priority Priority of the completion requests.
+     */
+    public void setSession(String session, CompletionRequest.Priority priority) {
+        this.session = session;
+        this.priority = priority;
     }
 
     public TestRequest descriptionToTestModel(String testCaseDescription) throws CodexAPI.CodexAPIException, IOException, CodeToTestModel.CodeToTestModelException {
@@ -47,17 +110,32 @@ public class CodexTestGen {
         code = code.replace("[insert2]", "[insert]");
         code = insert(code, ";");
 
+        if(assertionCandidates > 0) return addAssertionsBatched(code, testCaseDescription);
+        return addAssertionsSequentially(code, testCaseDescription);
+    }
+
+    /**
+     * Generates the status code assertion and the body assertions with one completion per assertion.
+     *
+     * @param code Test code (with complete request)
+     * @param testCaseDescription Test case description given by the user
+     * @return Given code, extended by the generated assertions.
+     */
+    private String addAssertionsSequentially(String code, String testCaseDescription) throws CodexAPI.CodexAPIException {
         // insert status code assertion
         code = addInsertTag(code);
         code = code.replace("[insert]", "assertThat(statusCode, [insert];");
         code = insert(code, ";");
 
         // insert other assertions
-        int iterations = 5;
-        for(int i = 0; i < iterations; i++) {
+        for(int i = 0; i < MAX_BODY_ASSERTIONS; i++) {
             String updatedContent = addInsertTag(new String(code));
             updatedContent = updatedContent.replace("[insert]", "assertThat(response, [insert];");
-            updatedContent = insert(updatedContent, ";");
+            updatedContent = insert(updatedContent, ";", testCaseDescription);
+            if(updatedContent == null) {
+                // the generated assertion contains an irrelevant hasField operator, stop code generation here
+                break;
+            }
 
             // get body assertions from current request model
             List<BodyAssertion> bodyAssertions = new ArrayList<>();
@@ -86,17 +164,124 @@ public class CodexTestGen {
         return code;
     }
 
+    /**
+     * Generates the status code assertion and the body assertions with a single request that asks for multiple
+     * candidate continuations of the test method (each containing several assertions). The assertions of all
+     * candidates are filtered locally (invalid, irrelevant and duplicate assertions are skipped).
+     *
+     * @param code Test code (with complete request)
+     * @param testCaseDescription Test case description given by the user
+     * @return Given code, extended by the generated assertions.
+     */
+    private String addAssertionsBatched(String code, String testCaseDescription) throws CodexAPI.CodexAPIException {
+        String assertionsCode = addInsertTag(code).replace("[insert]", "assertThat(statusCode, [insert]");
+        String prompt = assertionsCode.split("\\[insert]")[0];
+        String suffix = assertionsCode.split("\\[insert]")[1];
+        CompletionRequest request = new CompletionRequest(prompt, suffix, "}", CompletionRequest.DEFAULT_TEMPERATURE,
+                assertionMaxTokens, assertionCandidates).forSession(session, priority);
+        List<String> candidates = completionClient.complete(request);
+
+        // status code assertion (without another completion, the test is generated without one if none is found)
+        String statusCodeAssertion = findStatusCodeAssertion(candidates);
+        if(statusCodeAssertion != null) code = addInsertTag(code).replace("[insert]", statusCodeAssertion);
+
+        // body assertions of all candidates (in the order of the candidates)
+        JavaParser parser = new JavaParser();
+        List<BodyAssertion> bodyAssertions = new ArrayList<>();
+        for(String candidate : candidates) {
+            List<String> statements = splitStatements(candidate);
+            for(String statement : statements.subList(Math.min(1, statements.size()), statements.size())) {
+                if(bodyAssertions.size() >= MAX_BODY_ASSERTIONS) return code;
+                statement = statement + ";";
+                if(!statement.startsWith("assertThat(response,") || !isValidStatement(parser, statement)) continue;
+
+                String updatedContent = addInsertTag(code).replace("[insert]", statement);
+                List<BodyAssertion> updatedBodyAssertions;
+                try {
+                    updatedBodyAssertions = getBodyAssertionsFromCode(updatedContent);
+                } catch (CodeToTestModel.CodeToTestModelException e) {
+                    continue;
+                }
+                if(updatedBodyAssertions.size() <= bodyAssertions.size()) continue;
+
+                BodyAssertion latest = updatedBodyAssertions.get(updatedBodyAssertions.size()-1);
+                if(containsIrrelevantHasFieldAssertion(latest, testCaseDescription)) continue;
+                if(isDuplicate(latest, bodyAssertions)) continue;
+
+                code = updatedContent;
+                bodyAssertions = updatedBodyAssertions;
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Searches the candidates of a batched completion for a status code assertion. The following statements are used
+     * (in this order): the first statement of a candidate (that continues "assertThat(statusCode, "), another complete
+     * status code assertion of a candidate, or the status code that the first statement of a candidate compares to.
+     *
+     * @param candidates Candidate continuations of "assertThat(statusCode, "
+     * @return Status code assertion, or null if no candidate contains a status code.
+     */
+    static String findStatusCodeAssertion(List<String> candidates) {
+        JavaParser parser = new JavaParser();
+        for(String candidate : candidates) {
+            List<String> statements = splitStatements(candidate);
+            if(statements.isEmpty()) continue;
+            String statement = "assertThat(statusCode, " + statements.get(0) + ";";
+            if(isValidStatement(parser, statement)) return statement;
+        }
+        for(String candidate : candidates) {
+            for(String statement : splitStatements(candidate)) {
+                statement = statement + ";";
+                if(statement.startsWith("assertThat(statusCode,") && isValidStatement(parser, statement)) return statement;
+            }
+        }
+        for(String candidate : candidates) {
+            List<String> statements = splitStatements(candidate);
+            Matcher matcher = STATUS_CODE.matcher(statements.isEmpty() ? candidate : statements.get(0));
+            if(matcher.find()) return "assertThat(statusCode, is(" + matcher.group(1) + "));";
+        }
+        return null;
+    }
+
+    /**
+     * Splits generated code into its statements (without semicolons). Semicolons within string literals are ignored.
+     * An incomplete statement at the end of the code is dropped.
+     *
+     * @param code Generated code
+     * @return Trimmed statements.
+     */
+    static List<String> splitStatements(String code) {
+        List<String> statements = new ArrayList<>();
+        boolean inString = false;
+        int start = 0;
+        for(int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if(c == '\\' && inString) {
+                i++;
+            } else if(c == '"') {
+                inString = !inString;
+            } else if(c == ';' && !inString) {
+                String statement = code.substring(start, i).trim();
+                if(!statement.isEmpty()) statements.add(statement);
+                start = i + 1;
+            }
+        }
+        return statements;
+    }
+
+    private static boolean isValidStatement(JavaParser parser, String statement) {
+        return parser.parseStatement(statement).isSuccessful();
+    }
+
     private static boolean containsIrrelevantHasFieldAssertion(BodyAssertion bodyAssertion, String testCaseDescription) {
         BodyAssertionOperator operator = bodyAssertion.getOperator();
         while(operator != null) {
             if(operator.getOperatorId() == 1) {
                 // this is a "has field" operator
                 // check if the field name was mentioned in the test case description given by the user
-                String fieldName = operator.getInputValue();
-                if(!(testCaseDescription.contains(" " + fieldName + " ")
-                        || testCaseDescription.contains(" " + fieldName)
-                        || testCaseDescription.contains("\"" + fieldName)
-                        || testCaseDescription.contains("'" + fieldName))) {
+                if(!isMentioned(operator.getInputValue(), testCaseDescription)) {
                     // might be irrelevant
                     return true;
                 }
@@ -106,6 +291,13 @@ public class CodexTestGen {
         return false;
     }
 
+    private static boolean isMentioned(String fieldName, String testCaseDescription) {
+        return testCaseDescription.contains(" " + fieldName + " ")
+                || testCaseDescription.contains(" " + fieldName)
+                || testCaseDescription.contains("\"" + fieldName)
+                || testCaseDescription.contains("'" + fieldName);
+    }
+
     private static boolean isDuplicate(BodyAssertion latest, List<BodyAssertion> previousAssertions) {
         for(BodyAssertion a : previousAssertions) {
             if(latest.getOperator().toString().equals(a.getOperator().toString())) return true;
@@ -151,29 +343,47 @@ public class CodexTestGen {
             }
         }
         code = unit.toString();
-        code = code.replace("// [insert]", "[insert]\n");
+        // the printer may omit the space after the comment marker
+        code = code.replaceFirst("//\\s*\\[insert]", "[insert]\n");
         return code;
     }
 
     /**
-     * Uses OpenAI's Codex model to complete the given code (at the [insert] tag).
+     * Uses the code completion model to complete the given code (at the [insert] tag).
      *
      * @param code Code containing [insert] at the place where new code should be generated and inserted.
      * @param stop Character at which the code generation should stop.
-     * @return Given code, where [insert] got replaced with code generated by the Codex model.
+     * @return Given code, where [insert] got replaced with code generated by the model.
      * @throws CodexAPI.CodexAPIException If the API request was not successful.
      */
     private String insert(String code, String stop) throws CodexAPI.CodexAPIException {
+        return insert(code, stop, null);
+    }
+
+    /**
+     * Uses the code completion model to complete the given code (at the [insert] tag). The completion is streamed and
+     * stopped as soon as the generated code completes the statement at the [insert] tag, or (if a test case
+     * description is given) as soon as it contains a hasField operator for a field that is not mentioned in the test
+     * case description.
+     *
+     * @param code Code containing [insert] at the place where new code should be generated and inserted.
+     * @param stop Character at which the code generation should stop.
+     * @param testCaseDescription Test case description given by the user (null to keep all hasField operators).
+     * @return Given code, where [insert] got replaced with code generated by the model, or null if the generated code
+     * contains an irrelevant hasField operator.
+     * @throws CodexAPI.CodexAPIException If the API request was not successful.
+     */
+    private String insert(String code, String stop, String testCaseDescription) throws CodexAPI.CodexAPIException {
         // split code into two parts - before and after [insert]
         String prompt = code.split("\\[insert]")[0];
         String suffix = code.split("\\[insert]")[1];
 
-        // call OpenAI API
-        JSONArray choices = new CodexAPI(codexAPIToken).insert(prompt, suffix, stop);
-
-        // get first choice
-        JSONObject choice = (JSONObject) choices.get(0);
-        String text = (String) choice.get("text");
+        // stream the completion until the statement is complete (or irrelevant)
+        InsertListener listener = new InsertListener(prompt, testCaseDescription);
+        String text = completionClient.stream(new CompletionRequest(prompt, suffix, stop)
+                .forSession(session, priority), listener);
+        if(listener.irrelevant) return null;
+        if(listener.statement != null) text = listener.statement;
 
         // replace [insert] with generated code
         code = code.replace("[insert]", text);
@@ -181,4 +391,52 @@ public class CodexTestGen {
         return code;
     }
 
+    /**
+     * Checks the generated code while it is streamed.
+     */
+    private static class InsertListener implements CompletionStreamListener {
+        /**
+         * Beginning of the statement that is completed by the generated code (last line of the prompt).
+         */
+        private final String statementStart;
+        private final String testCaseDescription;
+
+        /**
+         * Parser for the generated code (reused for every token that might complete the statement).
+         */
+        private final JavaParser parser = new JavaParser();
+
+        /**
+         * Generated code that completes the statement (null if not complete yet).
+         */
+        private String statement;
+        private boolean irrelevant;
+
+        private InsertListener(String prompt, String testCaseDescription) {
+            this.statementStart = prompt.substring(prompt.lastIndexOf('\n') + 1).trim();
+            this.testCaseDescription = testCaseDescription;
+        }
+
+        @Override
+        public boolean onText(String text) {
+            if(testCaseDescription != null) {
+                Matcher matcher = HAS_FIELD.matcher(text);
+                while(matcher.find()) {
+                    if(!isMentioned(matcher.group(1), testCaseDescription)) {
+                        irrelevant = true;
+                        return false;
+                    }
+                }
+            }
+
+            // all generated statements end with a method call, only then the statement can be complete
+            String code = text.stripTrailing();
+            if(code.endsWith(")") && isValidStatement(parser, statementStart + code + ";")) {
+                statement = code;
+                return false;
+            }
+            return true;
+        }
+    }
+
 }
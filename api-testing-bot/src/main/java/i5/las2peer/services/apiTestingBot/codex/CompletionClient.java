@@ -0,0 +1,40 @@
+package i5.las2peer.services.apiTestingBot.codex;
+
+import java.util.List;
+
+/**
+ * Client for a code completion model (e.g., the OpenAI completions API or a locally hosted model server).
+ */
+public interface CompletionClient {
+
+    /**
+     * Generates code that can be inserted between the prompt and the suffix of the given request.
+     *
+     * @param request Completion request
+     * @return Generated completions (at least one).
+     * @throws CodexAPI.CodexAPIException If no completion could be generated.
+     */
+    List<String> complete(CompletionRequest request) throws CodexAPI.CodexAPIException;
+
+    /**
+     * Generates one completion for the given request and passes its text to the given listener while it is generated.
+     * The listener can stop the generation early. Clients that do not support streaming pass the complete text at once.
+     *
+     * @param request  Completion request
+     * @param listener Listener that receives the text generated so far.
+     * @return Text that has been generated (until the generation was stopped).
+     * @throws CodexAPI.CodexAPIException If no completion could be generated.
+     */
+    default String stream(CompletionRequest request, CompletionStreamListener listener)
+            throws CodexAPI.CodexAPIException {
+        String text = complete(request).get(0);
+        listener.onText(text);
+        return text;
+    }
+
+    /**
+     * Releases the resources of the client (e.g., its connections).
+     */
+    default void shutdown() {
+    }
+}
@@ -0,0 +1,125 @@
+package i5.las2peer.services.apiTestingBot.codex;
+
+/**
+ * Request for inserting code between a prompt and a suffix.
+ */
+public class CompletionRequest {
+
+    public static final double DEFAULT_TEMPERATURE = 0.2;
+    public static final int DEFAULT_MAX_TOKENS = 100;
+
+    /**
+     * Priority of a request when completion requests are scheduled (see {@link RateLimitedCompletionClient}).
+     */
+    public enum Priority {
+        /**
+         * Request of a user that waits for the result (e.g., in a chat).
+         */
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    private final String prompt;
+    private final String suffix;
+    private final String stop;
+    private final double temperature;
+    private final int maxTokens;
+    private final int n;
+    private final boolean cacheBypassed;
+    private final String session;
+    private final Priority priority;
+
+    /**
+     * Request for a single completion with the default temperature and token limit.
+     *
+     * @param prompt Code before the insertion point
+     * @param suffix Code after the insertion point
+     * @param stop   Sequence at which the generation should stop.
+     */
+    public CompletionRequest(String prompt, String suffix, String stop) {
+        this(prompt, suffix, stop, DEFAULT_TEMPERATURE, DEFAULT_MAX_TOKENS, 1);
+    }
+
+    /**
+     * @param prompt      Code before the insertion point
+     * @param suffix      Code after the insertion point
+     * @param stop        Sequence at which the generation should stop.
+     * @param temperature Sampling temperature
+     * @param maxTokens   Maximum number of tokens per completion
+     * @param n           Number of completions
+     */
+    public CompletionRequest(String prompt, String suffix, String stop, double temperature, int maxTokens, int n) {
+        this(prompt, suffix, stop, temperature, maxTokens, n, false, null, Priority.BACKGROUND);
+    }
+
+    private CompletionRequest(String prompt, String suffix, String stop, double temperature, int maxTokens, int n,
+                              boolean cacheBypassed, String session, Priority priority) {
+        this.prompt = prompt;
+        this.suffix = suffix;
+        this.stop = stop;
+        this.temperature = temperature;
+        this.maxTokens = maxTokens;
+        this.n = n;
+        this.cacheBypassed = cacheBypassed;
+        this.session = session;
+        this.priority = priority;
+    }
+
+    /**
+     * Returns a copy of this request that is not answered from a cache (see {@link CachingCompletionClient}).
+     *
+     * @return Request that bypasses the cache.
+     */
+    public CompletionRequest bypassCache() {
+        return new CompletionRequest(prompt, suffix, stop, temperature, maxTokens, n, true, session, priority);
+    }
+
+    /**
+     * Returns a copy of this request that belongs to the given session (e.g., a chat channel) and has the given
+     * priority. Requests without session and priority are scheduled as background requests of a shared session.
+     *
+     * @param session  Session that sends the request.
+     * @param priority Priority of the request.
+     * @return Request of the given session.
+     */
+    public CompletionRequest forSession(String session, Priority priority) {
+        return new CompletionRequest(prompt, suffix, stop, temperature, maxTokens, n, cacheBypassed, session,
+                priority);
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public String getStop() {
+        return stop;
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    public boolean isCacheBypassed() {
+        return cacheBypassed;
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+}
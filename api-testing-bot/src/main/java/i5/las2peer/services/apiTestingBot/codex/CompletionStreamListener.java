@@ -0,0 +1,15 @@
+package i5.las2peer.services.apiTestingBot.codex;
+
+/**
+ * Receives the text of a completion while it is generated.
+ */
+public interface CompletionStreamListener {
+
+    /**
+     * Called whenever new text has been generated.
+     *
+     * @param text Text that has been generated so far.
+     * @return Whether the generation should be continued (false to stop it, e.g., if the text is already complete).
+     */
+    boolean onText(String text);
+}
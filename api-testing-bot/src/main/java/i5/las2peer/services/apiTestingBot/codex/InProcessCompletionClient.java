@@ -0,0 +1,40 @@
+package i5.las2peer.services.apiTestingBot.codex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Completion client that generates the completions in-process (e.g., canned answers in tests or benchmarks), so that
+ * the test generation can be used without a model server.
+ */
+public class InProcessCompletionClient implements CompletionClient {
+
+    private final Function<CompletionRequest, String> model;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * @param model Returns the completion for a request (null if it cannot be completed).
+     */
+    public InProcessCompletionClient(Function<CompletionRequest, String> model) {
+        this.model = model;
+    }
+
+    @Override
+    public List<String> complete(CompletionRequest request) throws CodexAPI.CodexAPIException {
+        requests.incrementAndGet();
+        List<String> completions = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, request.getN()); i++) {
+            String completion = model.apply(request);
+            if (completion == null) throw new CodexAPI.CodexAPIException("No completion for the given request.");
+            completions.add(completion);
+        }
+        return completions;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+}
@@ -0,0 +1,328 @@
+package i5.las2peer.services.apiTestingBot.codex;
+
+import i5.las2peer.services.apiTestingBot.util.RetryPolicy;
+import kong.unirest.Config;
+import kong.unirest.ContentType;
+import kong.unirest.HttpRequestWithBody;
+import kong.unirest.HttpResponse;
+import kong.unirest.RawResponse;
+import kong.unirest.RequestBodyEntity;
+import kong.unirest.UnirestException;
+import kong.unirest.UnirestInstance;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Completion client for APIs that are compatible with the OpenAI completions API (POST [ENDPOINT] with model, prompt,
+ * suffix, ...). Besides the OpenAI API itself, this can be a locally hosted model server.
+ *
+ * The client uses an own HTTP client with a connection pool (keep-alive connections) and timeouts. Failed requests
+ * (connection errors, timeouts, 5xx, 408 and 429 responses) are retried with exponential backoff and jitter.
+ *
+ * Streamed completions are requested as server-sent events. If the listener stops the generation, the connection is
+ * closed, so that the server stops generating tokens that would be thrown away.
+ */
+public class OpenAICompletionClient implements CompletionClient {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_REQUEST_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_MAX_CONNECTIONS = 10;
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+    private static final RetryPolicy RETRY_POLICY = new RetryPolicy(500, TimeUnit.SECONDS.toMillis(10));
+
+    private final String endpoint;
+    private final String model;
+    private final String apiToken;
+    private final int maxRetries;
+    private volatile boolean streaming = true;
+
+    private final UnirestInstance unirest;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private final AtomicLong streamedRequests = new AtomicLong();
+    private final AtomicLong cancelledStreams = new AtomicLong();
+
+    /**
+     * @param endpoint             URL of the completions endpoint (null or empty for the OpenAI API).
+     * @param model                Name of the model (null or empty for the default model).
+     * @param apiToken             Token that is sent as bearer token (null or empty if the API does not need one).
+     * @param connectTimeoutMillis Connect timeout (in milliseconds).
+     * @param requestTimeoutMillis Socket timeout (in milliseconds).
+     * @param maxConnections       Maximum number of (keep-alive) connections to the API.
+     * @param maxRetries           Maximum number of retries per request.
+     */
+    public OpenAICompletionClient(String endpoint, String model, String apiToken, int connectTimeoutMillis,
+                                  int requestTimeoutMillis, int maxConnections, int maxRetries) {
+        this.endpoint = endpoint == null || endpoint.isEmpty() ? CodexAPI.DEFAULT_COMPLETIONS_ENDPOINT : endpoint;
+        this.model = model == null || model.isEmpty() ? CodexAPI.DEFAULT_MODEL_NAME : model;
+        this.apiToken = apiToken;
+        this.maxRetries = maxRetries >= 0 ? maxRetries : DEFAULT_MAX_RETRIES;
+        if (connectTimeoutMillis <= 0) connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        if (requestTimeoutMillis <= 0) requestTimeoutMillis = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+        if (maxConnections <= 0) maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+        this.unirest = new UnirestInstance(new Config()
+                .connectTimeout(connectTimeoutMillis)
+                .socketTimeout(requestTimeoutMillis)
+                // all requests go to the same endpoint, so the whole pool can be used for one route
+                .concurrency(maxConnections, maxConnections)
+                .connectionTTL(5, TimeUnit.MINUTES)
+                .automaticRetries(false));
+    }
+
+    @Override
+    public List<String> complete(CompletionRequest request) throws CodexAPI.CodexAPIException {
+        String body = createBody(request).toJSONString();
+        long startTime = System.currentTimeMillis();
+        requests.incrementAndGet();
+
+        for (int attempt = 1; ; attempt++) {
+            String error;
+            boolean retryable;
+            try {
+                HttpResponse<String> res = post(body);
+                if (res.isSuccess()) {
+                    List<String> completions = parseCompletions(res.getBody());
+                    totalLatencyMillis.addAndGet(System.currentTimeMillis() - startTime);
+                    return completions;
+                }
+                error = "Status code: " + res.getStatus() + ", message: " + res.getBody();
+                retryable = RetryPolicy.isRetryable(res.getStatus());
+            } catch (UnirestException e) {
+                error = e.getMessage();
+                retryable = true;
+            }
+
+            if (!retryable || attempt > maxRetries) {
+                failures.incrementAndGet();
+                throw new CodexAPI.CodexAPIException("An error occurred while using the completion API. " + error);
+            }
+            retries.incrementAndGet();
+            try {
+                Thread.sleep(RETRY_POLICY.backoffMillis(attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.incrementAndGet();
+                throw new CodexAPI.CodexAPIException("Interrupted while waiting for the completion API.");
+            }
+        }
+    }
+
+    @Override
+    public String stream(CompletionRequest request, CompletionStreamListener listener)
+            throws CodexAPI.CodexAPIException {
+        if (!streaming) return CompletionClient.super.stream(request, listener);
+
+        JSONObject body = createBody(request);
+        // only one completion is streamed
+        body.put("n", 1);
+        body.put("stream", true);
+        String bodyString = body.toJSONString();
+        long startTime = System.currentTimeMillis();
+        requests.incrementAndGet();
+        streamedRequests.incrementAndGet();
+
+        for (int attempt = 1; ; attempt++) {
+            StreamResult result = new StreamResult();
+            String error;
+            boolean retryable;
+            try {
+                HttpResponse<StreamResult> res = post(bodyString, raw -> readStream(raw, listener, result));
+                if (res.isSuccess() && result.error == null) {
+                    if (result.cancelled) cancelledStreams.incrementAndGet();
+                    totalLatencyMillis.addAndGet(System.currentTimeMillis() - startTime);
+                    return result.text.toString();
+                }
+                error = result.error != null ? result.error
+                        : "Status code: " + res.getStatus() + ", message: " + result.errorBody;
+                retryable = result.text.length() == 0 && RetryPolicy.isRetryable(res.getStatus());
+            } catch (UnirestException e) {
+                error = e.getMessage();
+                retryable = result.text.length() == 0;
+            }
+
+            // streams are only retried if the listener did not receive any text yet
+            if (!retryable || attempt > maxRetries) {
+                failures.incrementAndGet();
+                throw new CodexAPI.CodexAPIException("An error occurred while using the completion API. " + error);
+            }
+            retries.incrementAndGet();
+            try {
+                Thread.sleep(RETRY_POLICY.backoffMillis(attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.incrementAndGet();
+                throw new CodexAPI.CodexAPIException("Interrupted while waiting for the completion API.");
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        unirest.shutDown(false);
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public long getStreamedRequestCount() {
+        return streamedRequests.get();
+    }
+
+    /**
+     * Returns the number of streamed completions that have been stopped early by their listener.
+     *
+     * @return Number of cancelled streams.
+     */
+    public long getCancelledStreamCount() {
+        return cancelledStreams.get();
+    }
+
+    /**
+     * @param streaming Whether completions for stream listeners should be streamed (otherwise, the listener receives
+     *                  the complete text at once).
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Returns the average time (in milliseconds) of a successful request (including retries).
+     *
+     * @return Average request latency.
+     */
+    public double getAverageLatencyMillis() {
+        long successful = requests.get() - failures.get();
+        return successful <= 0 ? 0 : (double) totalLatencyMillis.get() / successful;
+    }
+
+    private HttpResponse<String> post(String body) {
+        return createPost(body).asString();
+    }
+
+    private <T> HttpResponse<T> post(String body, Function<RawResponse, T> function) {
+        return createPost(body).accept("text/event-stream").asObject(function);
+    }
+
+    private RequestBodyEntity createPost(String body) {
+        HttpRequestWithBody post = unirest.post(endpoint);
+        if (apiToken != null && !apiToken.isEmpty()) post = post.header("Authorization", "Bearer " + apiToken);
+        return post.contentType(ContentType.APPLICATION_JSON.toString())
+                .body(body);
+    }
+
+    /**
+     * Reads the server-sent events of a streamed completion and passes the text to the listener.
+     */
+    private static StreamResult readStream(RawResponse raw, CompletionStreamListener listener, StreamResult result) {
+        if (raw.getStatus() < 200 || raw.getStatus() >= 300) {
+            result.errorBody = raw.getContentAsString();
+            return result;
+        }
+        InputStream content = raw.getContent();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("data:")) continue;
+                String data = line.substring("data:".length()).trim();
+                if (data.equals("[DONE]")) break;
+
+                Object event = JSONValue.parse(data);
+                Object choices = event instanceof JSONObject ? ((JSONObject) event).get("choices") : null;
+                if (!(choices instanceof JSONArray)) {
+                    result.error = "The completion API sent an unexpected event: " + data;
+                    break;
+                }
+                boolean updated = false;
+                for (Object choice : (JSONArray) choices) {
+                    Object text = ((JSONObject) choice).get("text");
+                    if (text == null || ((String) text).isEmpty()) continue;
+                    result.text.append((String) text);
+                    updated = true;
+                }
+                if (updated && !listener.onText(result.text.toString())) {
+                    result.cancelled = true;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            result.error = e.getMessage();
+        } finally {
+            // closing a chunked response reads its remaining content, so a stopped stream is left open: the
+            // connection of a request whose content has not been read completely is aborted when the request is
+            // released after this function returns
+            if (!result.cancelled) close(content);
+        }
+        return result;
+    }
+
+    private static void close(InputStream content) {
+        try {
+            content.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private JSONObject createBody(CompletionRequest request) {
+        JSONObject body = new JSONObject();
+        body.put("model", model);
+        body.put("prompt", request.getPrompt());
+        body.put("suffix", request.getSuffix());
+        body.put("temperature", request.getTemperature());
+        body.put("max_tokens", request.getMaxTokens());
+        body.put("n", request.getN());
+        body.put("stop", request.getStop());
+        return body;
+    }
+
+    private static List<String> parseCompletions(String responseBody) throws CodexAPI.CodexAPIException {
+        Object jsonRes = JSONValue.parse(responseBody);
+        Object choices = jsonRes instanceof JSONObject ? ((JSONObject) jsonRes).get("choices") : null;
+        if (!(choices instanceof JSONArray) || ((JSONArray) choices).isEmpty()) {
+            throw new CodexAPI.CodexAPIException("The completion API did not return any choices: " + responseBody);
+        }
+        List<String> completions = new ArrayList<>();
+        for (Object choice : (JSONArray) choices) {
+            Object text = ((JSONObject) choice).get("text");
+            completions.add(text == null ? "" : (String) text);
+        }
+        return completions;
+    }
+
+    /**
+     * Text and outcome of a streamed completion.
+     */
+    private static class StreamResult {
+        private final StringBuilder text = new StringBuilder();
+        private boolean cancelled;
+        private String error;
+        private String errorBody;
+    }
+}
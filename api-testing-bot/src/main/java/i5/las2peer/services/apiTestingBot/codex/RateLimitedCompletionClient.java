@@ -0,0 +1,342 @@
+package i5.las2peer.services.apiTestingBot.codex;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completion client that schedules the requests to another client, so that the requests-per-minute and
+ * tokens-per-minute limits of the completion API are not exceeded (which would result in 429 responses).
+ *
+ * The budgets are token buckets that are refilled continuously and allow bursts of up to {@link #BURST_SECONDS}
+ * seconds of their budget. The tokens of a request are estimated from the length of its prompt and suffix plus the
+ * maximum number of generated tokens. A request is sent as soon as both budgets allow it; the budgets may become
+ * negative, so that large requests are not starved.
+ *
+ * Waiting requests are sent in the following order: interactive requests before background requests, and within a
+ * priority, the sessions (e.g., chat channels) take turns, so that a session with many requests does not block the
+ * other ones.
+ */
+public class RateLimitedCompletionClient implements CompletionClient {
+
+    public static final int DEFAULT_REQUESTS_PER_MINUTE = 60;
+    public static final int DEFAULT_TOKENS_PER_MINUTE = 150000;
+    public static final int DEFAULT_MAX_WAIT_SECONDS = 60;
+
+    /**
+     * Period (in seconds) whose budget can be used at once.
+     */
+    public static final int BURST_SECONDS = 10;
+
+    /**
+     * Session of requests that do not belong to a session.
+     */
+    private static final String SHARED_SESSION = "";
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    /**
+     * Clock that waits on the monitor of the client.
+     */
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void await(Object monitor, long nanos) throws InterruptedException {
+            if (nanos == 0) monitor.wait();
+            else TimeUnit.NANOSECONDS.timedWait(monitor, nanos);
+        }
+    };
+
+    private final CompletionClient client;
+    private final Clock clock;
+    private final Bucket requestBudget;
+    private final Bucket tokenBudget;
+    private final long maxWaitNanos;
+
+    /**
+     * Waiting requests per priority, grouped by session. The session whose request is sent next is the first one.
+     */
+    private final Map<CompletionRequest.Priority, LinkedHashMap<String, ArrayDeque<Ticket>>> queues =
+            new EnumMap<>(CompletionRequest.Priority.class);
+
+    private final Map<CompletionRequest.Priority, Metrics> metrics = new EnumMap<>(CompletionRequest.Priority.class);
+    private long timeouts;
+
+    /**
+     * @param client            Client that sends the requests.
+     * @param requestsPerMinute Maximum number of requests per minute (0 for no limit).
+     * @param tokensPerMinute   Maximum number of tokens (prompt and completions) per minute (0 for no limit).
+     * @param maxWaitSeconds    Maximum time (in seconds) that a request waits for its turn (0 to wait indefinitely).
+     */
+    public RateLimitedCompletionClient(CompletionClient client, int requestsPerMinute, int tokensPerMinute,
+                                       int maxWaitSeconds) {
+        this(client, requestsPerMinute, tokensPerMinute, maxWaitSeconds, SYSTEM_CLOCK);
+    }
+
+    /**
+     * @param clock Clock that the budgets and the wait times are based on.
+     */
+    RateLimitedCompletionClient(CompletionClient client, int requestsPerMinute, int tokensPerMinute,
+                                int maxWaitSeconds, Clock clock) {
+        this.client = client;
+        this.clock = clock;
+        long now = clock.nanoTime();
+        this.requestBudget = requestsPerMinute > 0 ? new Bucket(requestsPerMinute, now) : null;
+        this.tokenBudget = tokensPerMinute > 0 ? new Bucket(tokensPerMinute, now) : null;
+        this.maxWaitNanos = TimeUnit.SECONDS.toNanos(Math.max(0, maxWaitSeconds));
+        for (CompletionRequest.Priority priority : CompletionRequest.Priority.values()) {
+            queues.put(priority, new LinkedHashMap<>());
+            metrics.put(priority, new Metrics());
+        }
+    }
+
+    @Override
+    public List<String> complete(CompletionRequest request) throws CodexAPI.CodexAPIException {
+        acquire(request);
+        return client.complete(request);
+    }
+
+    @Override
+    public String stream(CompletionRequest request, CompletionStreamListener listener)
+            throws CodexAPI.CodexAPIException {
+        acquire(request);
+        return client.stream(request, listener);
+    }
+
+    @Override
+    public void shutdown() {
+        client.shutdown();
+    }
+
+    /**
+     * Returns the number of requests that are currently waiting for their turn.
+     *
+     * @return Queue length
+     */
+    public synchronized int getQueueLength() {
+        int length = 0;
+        for (CompletionRequest.Priority priority : CompletionRequest.Priority.values()) {
+            length += getQueueLength(priority);
+        }
+        return length;
+    }
+
+    public synchronized int getQueueLength(CompletionRequest.Priority priority) {
+        int length = 0;
+        for (ArrayDeque<Ticket> tickets : queues.get(priority).values()) length += tickets.size();
+        return length;
+    }
+
+    /**
+     * Returns the number of requests with the given priority that have been sent.
+     *
+     * @param priority Priority of the requests.
+     * @return Number of sent requests.
+     */
+    public synchronized long getSentCount(CompletionRequest.Priority priority) {
+        return metrics.get(priority).sent;
+    }
+
+    /**
+     * Returns the average time (in milliseconds) that the sent requests with the given priority have waited.
+     *
+     * @param priority Priority of the requests.
+     * @return Average wait time.
+     */
+    public synchronized double getAverageWaitMillis(CompletionRequest.Priority priority) {
+        Metrics m = metrics.get(priority);
+        return m.sent == 0 ? 0 : (double) m.totalWaitNanos / m.sent / 1_000_000;
+    }
+
+    /**
+     * Returns the longest time (in milliseconds) that a sent request with the given priority has waited.
+     *
+     * @param priority Priority of the requests.
+     * @return Maximum wait time.
+     */
+    public synchronized double getMaxWaitMillis(CompletionRequest.Priority priority) {
+        return metrics.get(priority).maxWaitNanos / 1_000_000.0;
+    }
+
+    /**
+     * Returns the number of requests that have not been sent because they waited too long.
+     *
+     * @return Number of timed out requests.
+     */
+    public synchronized long getTimeoutCount() {
+        return timeouts;
+    }
+
+    /**
+     * Waits until it is the turn of the given request and the budgets allow it.
+     */
+    private synchronized void acquire(CompletionRequest request) throws CodexAPI.CodexAPIException {
+        Ticket ticket = new Ticket(request.getSession() == null ? SHARED_SESSION : request.getSession(),
+                request.getPriority() == null ? CompletionRequest.Priority.BACKGROUND : request.getPriority(),
+                estimateTokens(request), clock.nanoTime());
+        queues.get(ticket.priority).computeIfAbsent(ticket.session, s -> new ArrayDeque<>()).add(ticket);
+        long deadline = ticket.enqueuedAt + maxWaitNanos;
+
+        try {
+            while (true) {
+                long now = clock.nanoTime();
+                long waitNanos = 0;
+                if (next() == ticket) {
+                    waitNanos = Math.max(nanosUntilAvailable(requestBudget, 1, now),
+                            nanosUntilAvailable(tokenBudget, ticket.tokens, now));
+                    if (waitNanos <= 0) {
+                        if (requestBudget != null) requestBudget.take(1, now);
+                        if (tokenBudget != null) tokenBudget.take(ticket.tokens, now);
+                        remove(ticket);
+                        metrics.get(ticket.priority).add(now - ticket.enqueuedAt);
+                        // the next request may be sent as well
+                        notifyAll();
+                        return;
+                    }
+                }
+                if (maxWaitNanos > 0) {
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        remove(ticket);
+                        timeouts++;
+                        notifyAll();
+                        throw new CodexAPI.CodexAPIException("The completion API is busy, the request has waited "
+                                + TimeUnit.NANOSECONDS.toSeconds(maxWaitNanos) + " seconds.");
+                    }
+                    waitNanos = waitNanos == 0 ? remaining : Math.min(waitNanos, remaining);
+                }
+                // if it is not the turn of this request, it waits until another request has been sent
+                clock.await(this, waitNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            remove(ticket);
+            notifyAll();
+            throw new CodexAPI.CodexAPIException("Interrupted while waiting for the completion API.");
+        }
+    }
+
+    /**
+     * Returns the request that is sent next: the oldest request of the first session with the highest priority.
+     */
+    private Ticket next() {
+        for (CompletionRequest.Priority priority : CompletionRequest.Priority.values()) {
+            Iterator<ArrayDeque<Ticket>> sessions = queues.get(priority).values().iterator();
+            if (sessions.hasNext()) return sessions.next().peekFirst();
+        }
+        return null;
+    }
+
+    /**
+     * Removes the given request from its queue. If it was sent, the session of the request takes its next turn after
+     * the other sessions.
+     */
+    private void remove(Ticket ticket) {
+        LinkedHashMap<String, ArrayDeque<Ticket>> sessions = queues.get(ticket.priority);
+        ArrayDeque<Ticket> tickets = sessions.remove(ticket.session);
+        tickets.remove(ticket);
+        if (!tickets.isEmpty()) sessions.put(ticket.session, tickets);
+    }
+
+    private static long nanosUntilAvailable(Bucket bucket, double amount, long now) {
+        return bucket == null ? 0 : bucket.nanosUntilAvailable(amount, now);
+    }
+
+    private static int estimateTokens(CompletionRequest request) {
+        int promptChars = (request.getPrompt() == null ? 0 : request.getPrompt().length())
+                + (request.getSuffix() == null ? 0 : request.getSuffix().length());
+        return promptChars / CHARS_PER_TOKEN + request.getMaxTokens() * Math.max(1, request.getN());
+    }
+
+    /**
+     * Request that waits for its turn.
+     */
+    private static class Ticket {
+        private final String session;
+        private final CompletionRequest.Priority priority;
+        private final int tokens;
+        private final long enqueuedAt;
+
+        private Ticket(String session, CompletionRequest.Priority priority, int tokens, long enqueuedAt) {
+            this.session = session;
+            this.priority = priority;
+            this.tokens = tokens;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Budget that is refilled continuously (per-minute limit), up to the budget of {@link #BURST_SECONDS} seconds.
+     */
+    private static class Bucket {
+        private final double capacity;
+        private final double perNano;
+        private double available;
+        private long updatedAt;
+
+        private Bucket(int perMinute, long now) {
+            this.capacity = Math.max(1, perMinute * BURST_SECONDS / 60.0);
+            this.perNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.available = capacity;
+            this.updatedAt = now;
+        }
+
+        /**
+         * Returns the time until the given amount can be taken. Amounts that exceed the capacity only need a full
+         * bucket.
+         */
+        private long nanosUntilAvailable(double amount, long now) {
+            refill(now);
+            double missing = Math.min(amount, capacity) - available;
+            return missing <= 0 ? 0 : (long) Math.ceil(missing / perNano);
+        }
+
+        private void take(double amount, long now) {
+            refill(now);
+            available -= amount;
+        }
+
+        private void refill(long now) {
+            available = Math.min(capacity, available + (now - updatedAt) * perNano);
+            updatedAt = now;
+        }
+    }
+
+    /**
+     * Source of the time that the budgets and the wait times are based on (replaced by tests).
+     */
+    interface Clock {
+        long nanoTime();
+
+        /**
+         * Waits on the given monitor (whose lock is held) until it is notified or the given time has passed.
+         *
+         * @param monitor Monitor
+         * @param nanos   Maximum wait time (0 to wait until the monitor is notified).
+         */
+        void await(Object monitor, long nanos) throws InterruptedException;
+    }
+
+    /**
+     * Wait times of the sent requests of one priority.
+     */
+    private static class Metrics {
+        private long sent;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        private void add(long waitNanos) {
+            sent++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+    }
+}
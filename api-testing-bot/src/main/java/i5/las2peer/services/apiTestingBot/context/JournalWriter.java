@@ -0,0 +1,136 @@
+package i5.las2peer.services.apiTestingBot.context;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Background thread that appends records to {@link SessionJournal}s with group commit.
+ *
+ * Callers only queue their records, so that they do not wait for the disk. The thread writes the records in the order
+ * in which they were queued and forces the journals once per group, i.e., the records that were queued while the
+ * previous group was forced are written and forced together.
+ */
+public class JournalWriter {
+
+    /**
+     * Maximum number of records that are forced together.
+     */
+    private static final int MAX_GROUP_SIZE = 1000;
+
+    private final LinkedBlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    /**
+     * @param name Name of the thread
+     */
+    public JournalWriter(String name) {
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a record that stores the given value for the given key.
+     *
+     * @param journal Journal
+     * @param key     Key
+     * @param value   Serialized value
+     */
+    public void put(SessionJournal journal, String key, byte[] value) {
+        queue.add(new Write(journal, key, value, null));
+    }
+
+    /**
+     * Queues a record that removes the value of the given key.
+     *
+     * @param journal Journal
+     * @param key     Key
+     */
+    public void remove(SessionJournal journal, String key) {
+        queue.add(new Write(journal, key, null, null));
+    }
+
+    /**
+     * Waits until the records that have been queued so far are forced to disk.
+     */
+    public void flush() {
+        if (closed) return;
+        CountDownLatch written = new CountDownLatch(1);
+        queue.add(new Write(null, null, null, written));
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the queued records and stops the thread. Records that are queued afterwards are not written.
+     */
+    public void close() {
+        flush();
+        closed = true;
+        thread.interrupt();
+    }
+
+    private void run() {
+        List<Write> group = new ArrayList<>();
+        Set<SessionJournal> written = new LinkedHashSet<>();
+        while (!closed) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(group, MAX_GROUP_SIZE - 1);
+
+            try {
+                for (Write write : group) {
+                    if (write.journal == null) continue;
+                    if (write.value == null) write.journal.remove(write.key, false);
+                    else write.journal.put(write.key, write.value, false);
+                    written.add(write.journal);
+                }
+                // in the order in which the journals were first written to, e.g., documents before the contexts that
+                // reference them
+                for (SessionJournal journal : written) journal.force();
+            } catch (RuntimeException e) {
+                // do not let a broken record stop the writer
+                e.printStackTrace();
+            } finally {
+                for (Write write : group) {
+                    if (write.written != null) write.written.countDown();
+                }
+                group.clear();
+                written.clear();
+            }
+        }
+    }
+
+    private static class Write {
+        private final SessionJournal journal;
+        private final String key;
+
+        /**
+         * Value to store, or null to remove the value of the key.
+         */
+        private final byte[] value;
+
+        /**
+         * Counted down as soon as the record has been forced (only for the marker records of {@link #flush()}).
+         */
+        private final CountDownLatch written;
+
+        private Write(SessionJournal journal, String key, byte[] value, CountDownLatch written) {
+            this.journal = journal;
+            this.key = key;
+            this.value = value;
+            this.written = written;
+        }
+    }
+}
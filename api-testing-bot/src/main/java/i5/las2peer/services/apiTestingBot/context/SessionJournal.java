@@ -0,0 +1,449 @@
+package i5.las2peer.services.apiTestingBot.context;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal on local disk that stores the latest serialized value per key (e.g., per channel).
+ *
+ * Every modification is appended as a record to the journal file and forced to disk, so that the values survive a
+ * crash or a redeploy of the node. Writers that append many records can defer the force and force a group of records
+ * at once (see {@link JournalWriter}). Each record is protected by a checksum. A record that was only partially written
+ * (e.g., because the node crashed) ends the replay and is cut off.
+ * After a configurable number of appended records, the journal is compacted: the journal file is rotated, i.e., it is
+ * renamed and new records are appended to a new journal file, and a background thread writes the latest value of
+ * every key of the snapshot and the rotated file to a new snapshot file and deletes the rotated file afterwards. Values
+ * that have expired (see {@link #recover(long)}) are dropped during the compaction. If the node crashes during a
+ * compaction, the rotated file is replayed between the snapshot and the journal file.
+ * Records whose payload exceeds {@link #MAX_PAYLOAD_SIZE} are treated as broken by the replay, so larger values are
+ * rejected when they are stored.
+ *
+ * Record layout: [int payload length][int CRC32 of payload][payload]
+ * Payload layout: [byte type][long timestamp][short key length][key (UTF-8)][value]
+ */
+public class SessionJournal implements Closeable {
+
+    /**
+     * Default number of appended records after which the journal is compacted.
+     */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10000;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int PAYLOAD_HEADER_SIZE = 1 + 8 + 2;
+    private static final int MAX_KEY_SIZE = 0xFFFF;
+    static final int MAX_PAYLOAD_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Compacts the journals in the background (one at a time, the compactions are bound by the disk).
+     */
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "session-journal-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path journalFile;
+    private final Path rotatedFile;
+    private final Path snapshotFile;
+    private final int compactionThreshold;
+
+    private FileChannel journal;
+    private int recordsSinceCompaction = 0;
+
+    /**
+     * Running or last compaction (null if the journal has not been compacted yet).
+     */
+    private Future<?> compaction;
+
+    /**
+     * Locked while the snapshot or the rotated file are read or written (after the lock of the journal, if it is
+     * held).
+     */
+    private final Object compactionLock = new Object();
+
+    /**
+     * Values that were last written longer ago than this are dropped (0 keeps all values).
+     */
+    private volatile long maxAgeMillis = 0;
+
+    /**
+     * Number of records that were read during the last replay of a file (guarded by {@link #compactionLock}).
+     */
+    private int replayedRecords = 0;
+
+    /**
+     * Opens (or creates) the journal with the given name in the given directory.
+     *
+     * @param directory           Directory that contains the journal and snapshot files.
+     * @param name                Name of the journal.
+     * @param compactionThreshold Number of appended records after which the journal is compacted.
+     * @throws IOException If the journal file cannot be opened.
+     */
+    public SessionJournal(Path directory, String name, int compactionThreshold) throws IOException {
+        Files.createDirectories(directory);
+        this.journalFile = directory.resolve(name + ".journal");
+        this.rotatedFile = directory.resolve(name + ".journal.rotated");
+        this.snapshotFile = directory.resolve(name + ".snapshot");
+        this.compactionThreshold = compactionThreshold > 0 ? compactionThreshold : DEFAULT_COMPACTION_THRESHOLD;
+        this.journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Replays the snapshot, the rotated file (if a compaction has been interrupted) and the journal.
+     *
+     * @param maxAgeMillis Values that were last written longer ago than this are dropped, now and during the following
+     *                     compactions (0 keeps all values).
+     * @return Latest value per key.
+     * @throws IOException If the files cannot be read.
+     */
+    public synchronized Map<String, byte[]> recover(long maxAgeMillis) throws IOException {
+        this.maxAgeMillis = Math.max(0, maxAgeMillis);
+        Map<String, Record> records;
+        synchronized (compactionLock) {
+            records = replay();
+            // the journal is compacted as soon as the threshold is reached (instead of delaying the recovery)
+            recordsSinceCompaction = replayedRecords;
+        }
+        removeExpired(records);
+
+        Map<String, byte[]> values = new HashMap<>(records.size() * 2);
+        for (Record record : records.values()) values.put(record.key, record.value);
+        return values;
+    }
+
+    /**
+     * Stores the given value for the given key.
+     * If the value (together with the key) is too large to be replayed, it is not stored and the previous value of the
+     * key is removed instead, so that no outdated value is recovered.
+     *
+     * @param key   Key
+     * @param value Serialized value
+     * @return Whether the value has been stored.
+     */
+    public boolean put(String key, byte[] value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * Stores the given value for the given key (see {@link #put(String, byte[])}).
+     *
+     * @param key   Key
+     * @param value Serialized value
+     * @param force Whether the record is forced to disk. If not, {@link #force()} needs to be called afterwards.
+     * @return Whether the value has been stored.
+     */
+    public synchronized boolean put(String key, byte[] value, boolean force) {
+        int keySize = key.getBytes(StandardCharsets.UTF_8).length;
+        if (keySize > MAX_KEY_SIZE) {
+            System.out.println("Not storing value in " + journalFile + ": key is too long (" + keySize + " bytes).");
+            return false;
+        }
+        if ((long) PAYLOAD_HEADER_SIZE + keySize + value.length > MAX_PAYLOAD_SIZE) {
+            System.out.println("Not storing value of " + key + " in " + journalFile + ": value is too large ("
+                    + value.length + " bytes).");
+            append(REMOVE, key, new byte[0], force);
+            return false;
+        }
+        return append(PUT, key, value, force);
+    }
+
+    /**
+     * Removes the value of the given key.
+     *
+     * @param key Key
+     */
+    public void remove(String key) {
+        remove(key, true);
+    }
+
+    /**
+     * Removes the value of the given key.
+     *
+     * @param key   Key
+     * @param force Whether the record is forced to disk. If not, {@link #force()} needs to be called afterwards.
+     */
+    public synchronized void remove(String key, boolean force) {
+        append(REMOVE, key, new byte[0], force);
+    }
+
+    /**
+     * Forces the records that have been appended so far to disk.
+     */
+    public synchronized void force() {
+        try {
+            journal.force(false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the latest value of every key to the snapshot file and waits until the compaction is finished.
+     */
+    public void compact() {
+        Future<?> compaction;
+        synchronized (this) {
+            compaction = startCompaction();
+        }
+        await(compaction);
+    }
+
+    /**
+     * Waits for a running compaction and closes the journal.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        await(compaction);
+        journal.close();
+    }
+
+    private boolean append(byte type, String key, byte[] value, boolean force) {
+        try {
+            journal.write(encode(type, key, value, System.currentTimeMillis()), journal.size());
+            if (force) journal.force(false);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        recordsSinceCompaction++;
+        // if the previous compaction is still running, the journal is compacted after one of the next records
+        if (recordsSinceCompaction >= compactionThreshold && (compaction == null || compaction.isDone())) {
+            startCompaction();
+        }
+        return true;
+    }
+
+    /**
+     * Rotates the journal file and compacts the rotated file in the background.
+     * Needs to be called while holding the lock of the journal.
+     *
+     * @return Started compaction.
+     */
+    private Future<?> startCompaction() {
+        // at most one rotated file at a time
+        await(compaction);
+        try {
+            // a rotated file that is left over (e.g., because its compaction failed) is compacted first
+            if (!Files.exists(rotatedFile)) rotate();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        compaction = compactor.submit(this::compactRotated);
+        return compaction;
+    }
+
+    /**
+     * Renames the journal file to the rotated file and continues with an empty journal file.
+     */
+    private void rotate() throws IOException {
+        journal.force(true);
+        journal.close();
+        try {
+            Files.move(journalFile, rotatedFile, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+        recordsSinceCompaction = 0;
+    }
+
+    /**
+     * Merges the rotated file into the snapshot and deletes it afterwards. Does not need the lock of the journal.
+     */
+    private void compactRotated() {
+        synchronized (compactionLock) {
+            try {
+                Map<String, Record> records = new HashMap<>();
+                replay(snapshotFile, records);
+                replay(rotatedFile, records);
+                removeExpired(records);
+                writeSnapshot(records);
+                Files.deleteIfExists(rotatedFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void await(Future<?> compaction) {
+        if (compaction == null) return;
+        try {
+            compaction.get();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void removeExpired(Map<String, Record> records) {
+        if (maxAgeMillis == 0) return;
+        long minTimestamp = System.currentTimeMillis() - maxAgeMillis;
+        records.values().removeIf(record -> record.timestamp < minTimestamp);
+    }
+
+    /**
+     * Reads the snapshot, the rotated file and the journal. Records of later files override the ones of earlier files.
+     * If the journal ends with a broken record, it is truncated behind the last valid record.
+     *
+     * @return Latest record per key.
+     */
+    private Map<String, Record> replay() throws IOException {
+        Map<String, Record> records = new HashMap<>();
+        replay(snapshotFile, records);
+        replay(rotatedFile, records);
+        long validLength = replay(journal, records);
+        if (validLength < journal.size()) {
+            System.out.println("Truncating broken records at the end of " + journalFile);
+            journal.truncate(validLength);
+        }
+        return records;
+    }
+
+    /**
+     * Reads the records of the given file (if it exists) into the given map.
+     */
+    private void replay(Path file, Map<String, Record> records) throws IOException {
+        if (!Files.exists(file)) return;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            replay(channel, records);
+        }
+    }
+
+    /**
+     * Reads the records of the given file (memory-mapped) into the given map.
+     *
+     * @return Length of the valid part of the file.
+     */
+    private long replay(FileChannel file, Map<String, Record> records) throws IOException {
+        replayedRecords = 0;
+        long size = file.size();
+        if (size == 0) return 0;
+        MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        CRC32 crc = new CRC32();
+
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > MAX_PAYLOAD_SIZE || length > buffer.remaining()) return start;
+
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) return start;
+
+            byte type = payload.get();
+            long timestamp = payload.getLong();
+            byte[] keyBytes = new byte[payload.getShort() & 0xFFFF];
+            payload.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (type == PUT) {
+                byte[] value = new byte[payload.remaining()];
+                payload.get(value);
+                records.put(key, new Record(key, value, timestamp));
+            } else {
+                records.remove(key);
+            }
+            replayedRecords++;
+            buffer.position(start + HEADER_SIZE + length);
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Atomically replaces the snapshot file with the given records.
+     */
+    private void writeSnapshot(Map<String, Record> records) throws IOException {
+        Path tmpFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (OutputStream tmp = new BufferedOutputStream(Files.newOutputStream(tmpFile), 1 << 20)) {
+            for (Record record : records.values()) {
+                ByteBuffer buffer = encode(PUT, record.key, record.value, record.timestamp);
+                tmp.write(buffer.array(), 0, buffer.limit());
+            }
+        }
+        try (FileChannel tmp = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+            tmp.force(true);
+        }
+        Files.move(tmpFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ByteBuffer encode(byte type, String key, byte[] value, long timestamp) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = PAYLOAD_HEADER_SIZE + keyBytes.length + value.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + length);
+        buffer.putInt(length);
+        buffer.putInt(0);
+        buffer.put(type);
+        buffer.putLong(timestamp);
+        buffer.putShort((short) keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.put(value);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Serializes the given object using Java serialization.
+     *
+     * @param object Object
+     * @return Serialized object.
+     * @throws IOException If the object cannot be serialized.
+     */
+    public static byte[] serialize(Serializable object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes an object that was serialized with {@link #serialize(Serializable)}.
+     *
+     * @param bytes Serialized object
+     * @return Deserialized object.
+     * @throws IOException If the object cannot be deserialized.
+     */
+    public static Object deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static class Record {
+        private final String key;
+        private final byte[] value;
+        private final long timestamp;
+
+        private Record(String key, byte[] value, long timestamp) {
+            this.key = key;
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package i5.las2peer.services.apiTestingBot.context;
+
+import i5.las2peer.services.apiTestingBot.util.Hashing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Reference-counted registry for large documents (e.g., parsed OpenAPI documents or CAE projects) that are used by
+ * multiple test modeling contexts at the same time.
+ *
+ * Instead of keeping an own copy of such a document, a context only stores the key of the document and acquires a
+ * reference to it. All contexts that use a document with the same key share one instance. As soon as the last
+ * reference is released, the document is removed from the registry.
+ *
+ * @param <T> Type of the documents
+ */
+public class SharedDocumentRegistry<T> {
+
+    private final ConcurrentHashMap<String, Reference<T>> documents = new ConcurrentHashMap<>();
+
+    /**
+     * Acquires a reference to the document with the given key.
+     * If the registry does not contain such a document yet, it is created using the given loader.
+     *
+     * @param key    Key of the document
+     * @param loader Creates the document if it is not contained in the registry yet.
+     * @return Shared document instance.
+     */
+    public T acquire(String key, Supplier<T> loader) {
+        return documents.compute(key, (k, existing) -> {
+            Reference<T> reference = existing == null ? new Reference<>(loader.get()) : existing;
+            reference.count++;
+            return reference;
+        }).document;
+    }
+
+    /**
+     * Returns the document with the given key, without acquiring a reference to it.
+     *
+     * @param key Key of the document
+     * @return Shared document instance, or null if no reference to the document is held.
+     */
+    public T get(String key) {
+        Reference<T> reference = documents.get(key);
+        return reference == null ? null : reference.document;
+    }
+
+    /**
+     * Releases a reference to the document with the given key. The document is removed if it is no longer referenced.
+     *
+     * @param key Key of the document
+     */
+    public void release(String key) {
+        documents.computeIfPresent(key, (k, reference) -> {
+            reference.count--;
+            return reference.count <= 0 ? null : reference;
+        });
+    }
+
+    /**
+     * Returns the number of references that are held to the document with the given key.
+     *
+     * @param key Key of the document
+     * @return Number of references.
+     */
+    public int getReferenceCount(String key) {
+        Reference<T> reference = documents.get(key);
+        return reference == null ? 0 : reference.count;
+    }
+
+    /**
+     * Returns the number of documents that are currently contained in the registry.
+     *
+     * @return Number of documents.
+     */
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * Computes a hash of the given document content (hex-encoded SHA-256).
+     *
+     * @param content Document content
+     * @return Content hash
+     */
+    public static String contentHash(String content) {
+        return Hashing.sha256Hex(content);
+    }
+
+    private static class Reference<T> {
+        private final T document;
+
+        /**
+         * Number of references. Only modified within ConcurrentHashMap.compute.
+         */
+        private int count = 0;
+
+        private Reference(T document) {
+            this.document = document;
+        }
+    }
+}
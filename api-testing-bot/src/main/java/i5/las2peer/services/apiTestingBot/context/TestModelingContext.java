@@ -1,6 +1,7 @@
 package i5.las2peer.services.apiTestingBot.context;
 
 import i5.las2peer.apiTestModel.*;
+import i5.las2peer.services.apiTestingBot.util.OpenAPIFingerprint;
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.Operation;
 import io.swagger.v3.oas.models.PathItem;
@@ -9,18 +10,52 @@ import io.swagger.v3.parser.OpenAPIV3Parser;
 import io.swagger.v3.parser.core.models.SwaggerParseResult;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
 
+import java.io.Serializable;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 import static i5.las2peer.services.apiTestingBot.context.TestModelingState.*;
 
 /**
  * Stores the information about a test case that gets modeled.
+ * The context is serializable, so that it can be persisted in the {@link SessionJournal}.
+ *
+ * Large documents (OpenAPI documentation and CAE projects) are not stored in the context itself. The context only
+ * stores their keys (fingerprint of the OpenAPI documentation, content hashes of the projects and the versionedModelId
+ * of the microservice component) and resolves them from registries that are shared by all contexts. When the context
+ * is discarded, {@link #releaseSharedDocuments()} needs to be called.
+ * The serialized context only contains the keys of the shared documents as well. The documents are persisted
+ * separately (once per key, see {@link #getSharedDocumentKeys()}) and need to be resolved again after deserialization
+ * (see {@link #restoreSharedDocuments(Function)}).
  */
-public class TestModelingContext {
+public class TestModelingContext implements Serializable {
+
+    private static final long serialVersionUID = 4L;
+
+    /**
+     * Prefixes of the keys returned by {@link #getSharedDocumentKeys()}.
+     */
+    private static final String OPENAPI_KEY_PREFIX = "openapi:";
+    private static final String PROJECT_KEY_PREFIX = "project:";
+
+    /**
+     * Parsed OpenAPI documents that are shared by the contexts (key: fingerprint of the document).
+     */
+    private static final SharedDocumentRegistry<OpenAPIDocument> openAPIDocuments = new SharedDocumentRegistry<>();
+
+    /**
+     * CAE projects that are shared by the contexts (key: content hash of the project, so that a context that loads a
+     * newer version of a project does not get the version that other contexts still hold).
+     */
+    private static final SharedDocumentRegistry<JSONObject> projects = new SharedDocumentRegistry<>();
 
     /**
      * Current state within the modeling process.
@@ -28,19 +63,19 @@ public class TestModelingContext {
     private TestModelingState state;
 
     /**
-     * CAE projects that are linked to the current channel.
+     * Keys of the CAE projects that are linked to the current channel.
      */
-    private List<JSONObject> projectsLinkedToChannel;
+    private List<String> projectKeysLinkedToChannel;
 
     /**
-     * CAE project that the test case should be added to.
+     * Key of the CAE project that the test case should be added to.
      */
-    private JSONObject project;
+    private String projectKey;
 
     /**
-     * Microservice that the test case should be added to.
+     * versionedModelId of the microservice that the test case should be added to (-1 if none is selected).
      */
-    private JSONObject microserviceComponent;
+    private int componentVersionedModelId = -1;
 
     /**
      * Name of the test case.
@@ -48,9 +83,9 @@ public class TestModelingContext {
     private String testCaseName;
 
     /**
-     * OpenAPI documentation of the microservice.
+     * Content hash of the OpenAPI documentation of the microservice.
      */
-    private OpenAPI openAPI;
+    private String specHash;
     private List<Map.Entry<PathItem.HttpMethod, String>> availableMethods;
 
     /**
@@ -116,11 +151,13 @@ public class TestModelingContext {
     }
 
     public JSONObject getProject() {
-        return project;
+        return projectKey == null ? null : projects.get(projectKey);
     }
 
     public void setProject(JSONObject project) {
-        this.project = project;
+        String previousProjectKey = this.projectKey;
+        this.projectKey = project == null ? null : acquireProject(project);
+        if (previousProjectKey != null) projects.release(previousProjectKey);
     }
 
     public void setState(TestModelingState state) {
@@ -128,24 +165,47 @@ public class TestModelingContext {
     }
 
     public List<JSONObject> getProjectsLinkedToChannel() {
-        return projectsLinkedToChannel;
+        if (projectKeysLinkedToChannel == null) return null;
+        return projectKeysLinkedToChannel.stream().map(projects::get).toList();
     }
 
     public void setProjectsLinkedToChannel(List<JSONObject> projectsLinkedToChannel) {
-        this.projectsLinkedToChannel = projectsLinkedToChannel;
+        List<String> previousProjectKeys = this.projectKeysLinkedToChannel;
+        if (projectsLinkedToChannel == null) {
+            this.projectKeysLinkedToChannel = null;
+        } else {
+            this.projectKeysLinkedToChannel = new ArrayList<>(projectsLinkedToChannel.size());
+            for (JSONObject project : projectsLinkedToChannel) {
+                this.projectKeysLinkedToChannel.add(acquireProject(project));
+            }
+        }
+        if (previousProjectKeys != null) previousProjectKeys.forEach(projects::release);
     }
 
+    /**
+     * Returns the selected microservice component of the selected project.
+     *
+     * @return Microservice component, or null if no microservice has been selected.
+     */
     public JSONObject getMicroserviceComponent() {
-        return microserviceComponent;
+        if (componentVersionedModelId == -1 || getProject() == null) return null;
+        return getMicroserviceComponentsOfProject().stream()
+                .filter(component -> ((Long) component.get("versionedModelId")).intValue() == componentVersionedModelId)
+                .findFirst().orElse(null);
     }
 
+    /**
+     * Selects the given microservice component (which needs to be part of the selected project).
+     *
+     * @param microserviceComponent Microservice component
+     */
     public void setMicroserviceComponent(JSONObject microserviceComponent) {
-        this.microserviceComponent = microserviceComponent;
+        if (microserviceComponent == null) this.componentVersionedModelId = -1;
+        else this.componentVersionedModelId = ((Long) microserviceComponent.get("versionedModelId")).intValue();
     }
 
     public int getComponentVersionedModelId() {
-        if (microserviceComponent == null) return -1;
-        return ((Long) microserviceComponent.get("versionedModelId")).intValue();
+        return componentVersionedModelId;
     }
 
     public String getRequestPath() {
@@ -161,16 +221,49 @@ public class TestModelingContext {
     }
 
     public void setAvailableMethods(List<Map.Entry<PathItem.HttpMethod, String>> availableMethods) {
-        this.availableMethods = availableMethods;
+        // use serializable entries
+        this.availableMethods = new ArrayList<>();
+        for (Map.Entry<PathItem.HttpMethod, String> entry : availableMethods) {
+            this.availableMethods.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+        }
     }
 
     public OpenAPI getOpenAPI() {
-        return openAPI;
+        if (specHash == null) return null;
+        OpenAPIDocument document = openAPIDocuments.get(specHash);
+        return document == null ? null : document.openAPI;
     }
 
+    /**
+     * Sets the OpenAPI documentation of the microservice. If another context already uses the same documentation,
+     * its parsed instance is shared instead of parsing the documentation again.
+     *
+     * @param openAPIDocStr OpenAPI documentation
+     */
     public void setOpenAPI(String openAPIDocStr) {
-        SwaggerParseResult parsed = new OpenAPIV3Parser().readContents(openAPIDocStr);
-        this.openAPI = parsed.getOpenAPI();
+        String previousSpecHash = this.specHash;
+        if (openAPIDocStr == null) {
+            this.specHash = null;
+        } else {
+            this.specHash = OpenAPIFingerprint.fingerprint(openAPIDocStr);
+            openAPIDocuments.acquire(specHash, () -> new OpenAPIDocument(openAPIDocStr));
+        }
+        if (previousSpecHash != null) openAPIDocuments.release(previousSpecHash);
+    }
+
+    public String getSpecHash() {
+        return specHash;
+    }
+
+    /**
+     * Releases the references to the shared documents.
+     * Needs to be called when the context is discarded. Afterwards, the shared documents can no longer be accessed
+     * through this context.
+     */
+    public void releaseSharedDocuments() {
+        setOpenAPI(null);
+        setProject(null);
+        setProjectsLinkedToChannel(null);
     }
 
     public List<PathParameter> getPathParams() {
@@ -179,7 +272,7 @@ public class TestModelingContext {
     }
 
     private Operation getOperation() {
-        return this.openAPI.getPaths().get(this.requestPath).readOperationsMap().get(PathItem.HttpMethod.valueOf(this.requestMethod));
+        return getOpenAPI().getPaths().get(this.requestPath).readOperationsMap().get(PathItem.HttpMethod.valueOf(this.requestMethod));
     }
 
     public HashMap<String, String> getPathParamValues() {
@@ -263,4 +356,87 @@ public class TestModelingContext {
         TestCase testCase = new TestCase(testCaseName, List.of(request));
         return new TestModel(List.of(testCase));
     }
+
+    private static String acquireProject(JSONObject project) {
+        String projectKey = SharedDocumentRegistry.contentHash(project.toJSONString());
+        projects.acquire(projectKey, () -> project);
+        return projectKey;
+    }
+
+    /**
+     * Returns the keys of the shared documents that the context uses. The keys are unique across document types.
+     *
+     * @return Keys of the shared documents.
+     */
+    public Set<String> getSharedDocumentKeys() {
+        Set<String> keys = new LinkedHashSet<>();
+        if (specHash != null) keys.add(OPENAPI_KEY_PREFIX + specHash);
+        if (projectKey != null) keys.add(PROJECT_KEY_PREFIX + projectKey);
+        if (projectKeysLinkedToChannel != null) {
+            for (String key : projectKeysLinkedToChannel) keys.add(PROJECT_KEY_PREFIX + key);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the content of the shared document with the given key (see {@link #getSharedDocumentKeys()}).
+     *
+     * @param key Key of the shared document
+     * @return Content of the document, or null if no context uses the document.
+     */
+    public static String getSharedDocument(String key) {
+        if (key.startsWith(OPENAPI_KEY_PREFIX)) {
+            OpenAPIDocument document = openAPIDocuments.get(key.substring(OPENAPI_KEY_PREFIX.length()));
+            return document == null ? null : document.doc;
+        }
+        if (key.startsWith(PROJECT_KEY_PREFIX)) {
+            JSONObject project = projects.get(key.substring(PROJECT_KEY_PREFIX.length()));
+            return project == null ? null : project.toJSONString();
+        }
+        return null;
+    }
+
+    /**
+     * Acquires the references to the shared documents after the context has been deserialized. Documents that are
+     * neither used by another context nor provided by the given function are no longer referenced by the context.
+     *
+     * @param documents Returns the content of the shared document with the given key (or null if it is unknown).
+     */
+    public void restoreSharedDocuments(Function<String, String> documents) {
+        if (specHash != null) {
+            String doc = resolveSharedDocument(OPENAPI_KEY_PREFIX + specHash, documents);
+            if (doc == null) specHash = null;
+            else openAPIDocuments.acquire(specHash, () -> new OpenAPIDocument(doc));
+        }
+        if (projectKey != null && !restoreProject(projectKey, documents)) projectKey = null;
+        if (projectKeysLinkedToChannel != null) {
+            projectKeysLinkedToChannel.removeIf(key -> !restoreProject(key, documents));
+        }
+    }
+
+    private static boolean restoreProject(String key, Function<String, String> documents) {
+        String project = resolveSharedDocument(PROJECT_KEY_PREFIX + key, documents);
+        if (project == null) return false;
+        projects.acquire(key, () -> (JSONObject) JSONValue.parse(project));
+        return true;
+    }
+
+    private static String resolveSharedDocument(String key, Function<String, String> documents) {
+        String content = documents.apply(key);
+        return content != null ? content : getSharedDocument(key);
+    }
+
+    /**
+     * OpenAPI documentation together with its parsed representation.
+     */
+    private static class OpenAPIDocument {
+        private final String doc;
+        private final OpenAPI openAPI;
+
+        private OpenAPIDocument(String doc) {
+            this.doc = doc;
+            SwaggerParseResult parsed = new OpenAPIV3Parser().readContents(doc);
+            this.openAPI = parsed.getOpenAPI();
+        }
+    }
 }
@@ -0,0 +1,745 @@
+package i5.las2peer.services.apiTestingBot.context;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe store for the test modeling contexts of the channels (Rocket.Chat channels, GitHub issues and pull
+ * requests) in which a test case is currently modeled.
+ *
+ * The store is split into stripes, each guarded by its own lock, so that messages for different channels do not
+ * contend with each other. The number of stored contexts is bounded: if a stripe is full, its least recently used
+ * context is evicted. Contexts that have not been accessed for longer than the idle timeout are evicted by a
+ * background sweeper that uses a hashed timing wheel, i.e., it only looks at the contexts whose deadline falls into
+ * the current tick instead of scanning the whole store.
+ *
+ * Contexts that are removed or evicted release their references to shared documents (see
+ * {@link TestModelingContext#releaseSharedDocuments()}). While a task uses the context of a channel (see
+ * {@link #runPinned(String, Supplier)}), the context is pinned and neither evicted nor released.
+ *
+ * If persistence is enabled, every modification is written to a {@link SessionJournal}. The contexts are serialized
+ * outside of the stripe locks and the records are written by a {@link JournalWriter}, so that neither the
+ * serialization nor a slow disk blocks the messages of other channels. After a restart, the contexts
+ * are restored from the journal lazily, i.e., a context is only deserialized when its channel is accessed again.
+ * Recovered contexts that are not accessed within the idle timeout after the restart are dropped.
+ * The shared documents of the contexts are written to a second journal, once per document key (see
+ * {@link TestModelingContext#getSharedDocumentKeys()}), and removed from it as soon as no persisted context references
+ * them anymore. The journal record of a context only contains the context fields and the keys of its documents.
+ */
+public class TestModelingContextStore {
+
+    /**
+     * Default maximum number of contexts that are kept in the store.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * Default time (in minutes) after which a context that has not been accessed is evicted.
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT_MINUTES = 60;
+
+    private static final int STRIPES = 16;
+    private static final int WHEEL_SIZE = 64;
+    private static final long TICK_MILLIS = 1000;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongSupplier clock;
+
+    private volatile int maxEntriesPerStripe;
+    private volatile long idleTimeoutMillis;
+
+    /**
+     * Slots of the timing wheel. Each slot contains the entries whose deadline tick maps to this slot.
+     */
+    private final ConcurrentLinkedQueue<Entry>[] wheel;
+    private volatile long currentTick;
+    private final ScheduledExecutorService sweeper;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Journal that the contexts are persisted to (null if persistence is disabled).
+     */
+    private volatile SessionJournal journal;
+
+    /**
+     * Journal that the shared documents of the persisted contexts are written to (null if persistence is disabled).
+     */
+    private volatile SessionJournal documentJournal;
+
+    /**
+     * Writes the records of both journals (null if persistence is disabled).
+     */
+    private volatile JournalWriter writer;
+
+    /**
+     * Serialized contexts that were recovered from the journal, but have not been accessed since the restart.
+     */
+    private final ConcurrentHashMap<String, byte[]> recovered = new ConcurrentHashMap<>();
+
+    /**
+     * Shared documents that were recovered from the document journal and are referenced by recovered contexts
+     * (content as UTF-8).
+     */
+    private final ConcurrentHashMap<String, byte[]> recoveredDocuments = new ConcurrentHashMap<>();
+
+    /**
+     * Number of persisted contexts that reference a shared document. The document journal contains exactly the
+     * documents with at least one reference.
+     * This map also guards {@link #documentKeysOfChannel} and {@link #recoveredDocumentReferences} and is locked
+     * while queueing records for the journals (after the lock of a stripe, if it is held), so that the records are
+     * queued in the order of the reference changes.
+     */
+    private final HashMap<String, Integer> documentReferences = new HashMap<>();
+
+    /**
+     * Keys of the shared documents that the persisted context of a channel references.
+     */
+    private final HashMap<String, Set<String>> documentKeysOfChannel = new HashMap<>();
+
+    /**
+     * Number of recovered contexts (that have not been restored yet) that reference a recovered document.
+     */
+    private final HashMap<String, Integer> recoveredDocumentReferences = new HashMap<>();
+
+    public TestModelingContextStore() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_IDLE_TIMEOUT_MINUTES);
+    }
+
+    /**
+     * @param maxEntries Maximum number of contexts that are kept in the store.
+     * @param idleTimeoutMinutes Time (in minutes) after which a context that has not been accessed is evicted.
+     */
+    public TestModelingContextStore(int maxEntries, int idleTimeoutMinutes) {
+        this(maxEntries, idleTimeoutMinutes, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Current time in milliseconds (the store still sweeps once per tick of the system clock).
+     */
+    @SuppressWarnings("unchecked")
+    TestModelingContextStore(int maxEntries, int idleTimeoutMinutes, LongSupplier clock) {
+        this.clock = clock;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+        wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) wheel[i] = new ConcurrentLinkedQueue<>();
+        setLimits(maxEntries, idleTimeoutMinutes);
+
+        currentTick = tickOf(clock.getAsLong());
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "modeling-context-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleAtFixedRate(this::sweep, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Updates the size bound and the idle timeout of the store.
+     * Contexts that are already stored are evicted lazily if they exceed the new limits.
+     *
+     * @param maxEntries Maximum number of contexts that are kept in the store.
+     * @param idleTimeoutMinutes Time (in minutes) after which a context that has not been accessed is evicted.
+     */
+    public void setLimits(int maxEntries, int idleTimeoutMinutes) {
+        if (maxEntries <= 0) maxEntries = DEFAULT_MAX_ENTRIES;
+        if (idleTimeoutMinutes <= 0) idleTimeoutMinutes = DEFAULT_IDLE_TIMEOUT_MINUTES;
+        this.maxEntriesPerStripe = Math.max(1, maxEntries / STRIPES);
+        this.idleTimeoutMillis = TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+    }
+
+    /**
+     * Persists all following modifications to the given journals and restores the contexts that the journals contain.
+     *
+     * @param journal         Journal for the contexts.
+     * @param documentJournal Journal for the shared documents of the contexts.
+     */
+    public void enablePersistence(SessionJournal journal, SessionJournal documentJournal) {
+        Map<String, byte[]> contexts;
+        Map<String, byte[]> documents;
+        try {
+            contexts = journal.recover(idleTimeoutMillis);
+            documents = documentJournal.recover(0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        synchronized (documentReferences) {
+            for (Map.Entry<String, byte[]> record : contexts.entrySet()) {
+                Set<String> keys = decodeDocumentKeys(record.getValue());
+                documentKeysOfChannel.put(record.getKey(), keys);
+                for (String key : keys) {
+                    documentReferences.merge(key, 1, Integer::sum);
+                    recoveredDocumentReferences.merge(key, 1, Integer::sum);
+                }
+            }
+            for (Map.Entry<String, byte[]> document : documents.entrySet()) {
+                if (documentReferences.containsKey(document.getKey())) {
+                    recoveredDocuments.put(document.getKey(), document.getValue());
+                } else {
+                    // the contexts that referenced the document have expired
+                    documentJournal.remove(document.getKey());
+                }
+            }
+            recovered.putAll(contexts);
+            this.writer = new JournalWriter("modeling-context-journal");
+            this.documentJournal = documentJournal;
+            this.journal = journal;
+        }
+        // the recovery counts as the last access of the recovered contexts
+        sweeper.schedule(() -> expireRecovered(contexts.keySet()), idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        System.out.println("Recovered " + recovered.size() + " test modeling contexts and "
+                + recoveredDocuments.size() + " shared documents from journal.");
+    }
+
+    /**
+     * Persists the current state of the context of the given channel.
+     * Needs to be called by the task that modified the context (the context must not be modified while it is
+     * serialized).
+     *
+     * @param channel Channel name
+     */
+    public void update(String channel) {
+        if (journal == null) return;
+        Stripe stripe = stripeOf(channel);
+        Entry entry;
+        stripe.lock.lock();
+        try {
+            entry = stripe.entries.get(channel);
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (entry == null) return;
+
+        Snapshot snapshot = snapshot(entry.context);
+        if (snapshot == null) return;
+        stripe.lock.lock();
+        try {
+            // not persisted if the context has been removed or replaced in the meantime
+            if (!entry.removed) persist(channel, snapshot);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the context of the given channel.
+     *
+     * @param channel Channel name
+     * @return Context of the given channel, or null if there is none.
+     */
+    public TestModelingContext get(String channel) {
+        Stripe stripe = stripeOf(channel);
+        stripe.lock.lock();
+        try {
+            Entry entry = stripe.entries.get(channel);
+            if (entry == null) {
+                TestModelingContext context = restore(stripe, channel);
+                if (context == null) misses.incrementAndGet();
+                else hits.incrementAndGet();
+                return context;
+            }
+            hits.incrementAndGet();
+            entry.lastAccess = clock.getAsLong();
+            return entry.context;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the context of the given channel. If there is none, a new context is created and stored.
+     *
+     * @param channel Channel name
+     * @return Context of the given channel.
+     */
+    public TestModelingContext getOrCreate(String channel) {
+        Stripe stripe = stripeOf(channel);
+        stripe.lock.lock();
+        try {
+            Entry entry = stripe.entries.get(channel);
+            if (entry != null) {
+                hits.incrementAndGet();
+                entry.lastAccess = clock.getAsLong();
+                return entry.context;
+            }
+            TestModelingContext context = restore(stripe, channel);
+            if (context != null) {
+                hits.incrementAndGet();
+                return context;
+            }
+            misses.incrementAndGet();
+            context = new TestModelingContext();
+            insert(stripe, channel, context);
+            return context;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Stores the given context for the given channel (replaces an existing one).
+     *
+     * @param channel Channel name
+     * @param context Test modeling context
+     */
+    public void put(String channel, TestModelingContext context) {
+        Snapshot snapshot = journal == null ? null : snapshot(context);
+        Stripe stripe = stripeOf(channel);
+        stripe.lock.lock();
+        try {
+            Entry previous = stripe.entries.remove(channel);
+            if (previous != null) {
+                if (previous.context == context) previous.removed = true;
+                else discard(previous);
+            }
+            forgetRecovered(channel);
+            insert(stripe, channel, context);
+            if (snapshot != null) persist(channel, snapshot);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the context of the given channel.
+     *
+     * @param channel Channel name
+     * @return Removed context (its shared documents are already released), or null if there was none.
+     */
+    public TestModelingContext remove(String channel) {
+        Stripe stripe = stripeOf(channel);
+        stripe.lock.lock();
+        try {
+            Entry entry = stripe.entries.remove(channel);
+            boolean wasRecovered = forgetRecovered(channel);
+            if (entry == null && !wasRecovered) return null;
+            unpersist(channel);
+            if (entry == null) return null;
+            discard(entry);
+            return entry.context;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Executes the given task while the context of the given channel is pinned, i.e., the context is not evicted
+     * (and its shared documents are not released) while the task uses it.
+     *
+     * @param channel Channel name
+     * @param task    Task that uses the context of the channel.
+     * @param <T>     Result type
+     * @return Result of the task.
+     */
+    public <T> T runPinned(String channel, Supplier<T> task) {
+        Stripe stripe = stripeOf(channel);
+        stripe.lock.lock();
+        try {
+            stripe.pins.merge(channel, 1, Integer::sum);
+        } finally {
+            stripe.lock.unlock();
+        }
+        try {
+            return task.get();
+        } finally {
+            stripe.lock.lock();
+            try {
+                stripe.pins.computeIfPresent(channel, (c, count) -> count <= 1 ? null : count - 1);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    public boolean containsKey(String channel) {
+        Stripe stripe = stripeOf(channel);
+        stripe.lock.lock();
+        try {
+            return stripe.entries.containsKey(channel) || recovered.containsKey(channel);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Waits until the modifications so far are written to the journal (if persistence is enabled).
+     */
+    public void flush() {
+        JournalWriter writer = this.writer;
+        if (writer != null) writer.flush();
+    }
+
+    /**
+     * Stops the background sweeper and writes the queued journal records. Stored contexts are no longer evicted
+     * because of the idle timeout afterwards.
+     */
+    public void shutdown() {
+        sweeper.shutdownNow();
+        JournalWriter writer = this.writer;
+        if (writer != null) writer.close();
+    }
+
+    /**
+     * Stores a new entry in the given stripe and schedules it on the timing wheel.
+     * Needs to be called while holding the lock of the stripe.
+     */
+    private void insert(Stripe stripe, String channel, TestModelingContext context) {
+        // evict least recently used entries if the stripe is full (pinned contexts are in use and kept)
+        Iterator<Entry> it = stripe.entries.values().iterator();
+        while (stripe.entries.size() >= maxEntriesPerStripe && it.hasNext()) {
+            Entry eldest = it.next();
+            if (stripe.pins.containsKey(eldest.channel)) continue;
+            it.remove();
+            discard(eldest);
+            evictions.incrementAndGet();
+            unpersist(eldest.channel);
+        }
+
+        Entry entry = new Entry(channel, context, clock.getAsLong());
+        stripe.entries.put(channel, entry);
+        schedule(entry);
+    }
+
+    /**
+     * Marks the given entry as removed and releases the shared documents of its context.
+     */
+    private void discard(Entry entry) {
+        entry.removed = true;
+        entry.context.releaseSharedDocuments();
+    }
+
+    /**
+     * Puts the given entry into the wheel slot of the tick at which it expires (if it is not accessed until then).
+     */
+    private void schedule(Entry entry) {
+        long deadlineTick = Math.max(tickOf(entry.lastAccess + idleTimeoutMillis), currentTick + 1);
+        entry.deadlineTick = deadlineTick;
+        wheel[(int) (deadlineTick % WHEEL_SIZE)].add(entry);
+    }
+
+    /**
+     * Advances the timing wheel up to the current time and evicts the idle entries of the passed slots.
+     */
+    synchronized void sweep() {
+        try {
+            long nowTick = tickOf(clock.getAsLong());
+            while (currentTick < nowTick) {
+                currentTick++;
+                expireSlot(currentTick);
+            }
+        } catch (RuntimeException e) {
+            // do not let an exception cancel the periodic sweep
+            e.printStackTrace();
+        }
+    }
+
+    private void expireSlot(long tick) {
+        ConcurrentLinkedQueue<Entry> slot = wheel[(int) (tick % WHEEL_SIZE)];
+        int pending = slot.size();
+        for (int i = 0; i < pending; i++) {
+            Entry entry = slot.poll();
+            if (entry == null) break;
+            if (entry.removed) continue;
+            if (entry.deadlineTick > tick) {
+                // deadline lies in a later round of the wheel
+                slot.add(entry);
+                continue;
+            }
+
+            Stripe stripe = stripeOf(entry.channel);
+            stripe.lock.lock();
+            try {
+                if (entry.removed) continue;
+                if (entry.lastAccess + idleTimeoutMillis <= clock.getAsLong()
+                        && !stripe.pins.containsKey(entry.channel)) {
+                    stripe.entries.remove(entry.channel, entry);
+                    discard(entry);
+                    evictions.incrementAndGet();
+                    unpersist(entry.channel);
+                } else {
+                    // entry has been accessed in the meantime or is in use
+                    schedule(entry);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drops the given recovered contexts if they have not been restored in the meantime.
+     */
+    private void expireRecovered(Set<String> channels) {
+        try {
+            for (String channel : channels) {
+                Stripe stripe = stripeOf(channel);
+                stripe.lock.lock();
+                try {
+                    if (forgetRecovered(channel)) {
+                        evictions.incrementAndGet();
+                        unpersist(channel);
+                    }
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Moves the context of the given channel from the recovered contexts into the given stripe.
+     * Needs to be called while holding the lock of the stripe.
+     *
+     * @return Restored context, or null if no context was recovered for the channel.
+     */
+    private TestModelingContext restore(Stripe stripe, String channel) {
+        byte[] record = recovered.remove(channel);
+        if (record == null) return null;
+        Set<String> documentKeys = decodeDocumentKeys(record);
+        try {
+            TestModelingContext context = (TestModelingContext) SessionJournal.deserialize(decodeContext(record));
+            context.restoreSharedDocuments(this::getRecoveredDocument);
+            insert(stripe, channel, context);
+            return context;
+        } catch (IOException | ClassCastException e) {
+            e.printStackTrace();
+            unpersist(channel);
+            return null;
+        } finally {
+            releaseRecoveredDocuments(documentKeys);
+        }
+    }
+
+    /**
+     * Drops the recovered context of the given channel (if any) without restoring it.
+     *
+     * @return Whether a context was recovered for the channel.
+     */
+    private boolean forgetRecovered(String channel) {
+        byte[] record = recovered.remove(channel);
+        if (record == null) return false;
+        releaseRecoveredDocuments(decodeDocumentKeys(record));
+        return true;
+    }
+
+    private String getRecoveredDocument(String key) {
+        byte[] document = recoveredDocuments.get(key);
+        return document == null ? null : new String(document, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Drops the recovered documents that are no longer needed to restore a context (the restored contexts reference
+     * them in the shared document registries).
+     */
+    private void releaseRecoveredDocuments(Set<String> keys) {
+        synchronized (documentReferences) {
+            for (String key : keys) {
+                if (recoveredDocumentReferences.computeIfPresent(key, (k, count) -> count <= 1 ? null : count - 1)
+                        == null) {
+                    recoveredDocuments.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Serializes the given context for the journal. Does not need the lock of a stripe.
+     *
+     * @return Snapshot of the context, or null if it cannot be serialized.
+     */
+    private static Snapshot snapshot(TestModelingContext context) {
+        try {
+            Set<String> keys = context.getSharedDocumentKeys();
+            return new Snapshot(keys, encodeRecord(keys, SessionJournal.serialize(context)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Queues the given snapshot for the journal. Its shared documents that are not contained in the document journal
+     * yet are queued before, the ones that are no longer referenced by any persisted context are removed after.
+     * Needs to be called while holding the lock of the stripe of the channel.
+     */
+    private void persist(String channel, Snapshot snapshot) {
+        if (journal == null) return;
+        synchronized (documentReferences) {
+            Set<String> previousKeys = documentKeysOfChannel.put(channel, snapshot.documentKeys);
+            for (String key : snapshot.documentKeys) {
+                if (documentReferences.merge(key, 1, Integer::sum) == 1) {
+                    String document = TestModelingContext.getSharedDocument(key);
+                    if (document != null) writer.put(documentJournal, key, document.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            writer.put(journal, channel, snapshot.record);
+            if (previousKeys != null) releaseDocuments(previousKeys);
+        }
+    }
+
+    private void unpersist(String channel) {
+        if (journal == null) return;
+        synchronized (documentReferences) {
+            writer.remove(journal, channel);
+            Set<String> previousKeys = documentKeysOfChannel.remove(channel);
+            if (previousKeys != null) releaseDocuments(previousKeys);
+        }
+    }
+
+    /**
+     * Releases one reference to each of the given documents and removes the ones that are no longer referenced from
+     * the document journal. Needs to be called while holding the lock of {@link #documentReferences}.
+     */
+    private void releaseDocuments(Set<String> keys) {
+        for (String key : keys) {
+            if (documentReferences.computeIfPresent(key, (k, count) -> count <= 1 ? null : count - 1) == null) {
+                writer.remove(documentJournal, key);
+                recoveredDocumentReferences.remove(key);
+                recoveredDocuments.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Encodes the journal record of a context: [int number of document keys][document keys][serialized context]
+     */
+    private static byte[] encodeRecord(Set<String> documentKeys, byte[] context) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(context.length + 128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(documentKeys.size());
+            for (String key : documentKeys) out.writeUTF(key);
+            out.write(context);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the document keys of the given journal record (an empty set if the record cannot be decoded).
+     */
+    private static Set<String> decodeDocumentKeys(byte[] record) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            int count = in.readInt();
+            if (count < 0) return Collections.emptySet();
+            Set<String> keys = new LinkedHashSet<>();
+            for (int i = 0; i < count; i++) keys.add(in.readUTF());
+            return keys;
+        } catch (IOException e) {
+            return Collections.emptySet();
+        }
+    }
+
+    private static byte[] decodeContext(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int count = in.readInt();
+        if (count < 0) throw new IOException("Invalid journal record of test modeling context.");
+        for (int i = 0; i < count; i++) in.readUTF();
+        return in.readAllBytes();
+    }
+
+    private Stripe stripeOf(String channel) {
+        return stripes[stripeIndex(channel)];
+    }
+
+    static int stripeIndex(String channel) {
+        int h = channel.hashCode();
+        h ^= (h >>> 16);
+        return h & (STRIPES - 1);
+    }
+
+    private static long tickOf(long timeMillis) {
+        return timeMillis / TICK_MILLIS;
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Entries of this stripe in access order (least recently used first).
+         */
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        /**
+         * Number of tasks that currently use the context of a channel (only channels with at least one task).
+         */
+        private final HashMap<String, Integer> pins = new HashMap<>();
+    }
+
+    /**
+     * Serialized context together with the keys of its shared documents.
+     */
+    private static class Snapshot {
+        private final Set<String> documentKeys;
+        private final byte[] record;
+
+        private Snapshot(Set<String> documentKeys, byte[] record) {
+            this.documentKeys = documentKeys;
+            this.record = record;
+        }
+    }
+
+    private static class Entry {
+        private final String channel;
+        private final TestModelingContext context;
+        private volatile long lastAccess;
+        private volatile long deadlineTick;
+        private volatile boolean removed = false;
+
+        private Entry(String channel, TestModelingContext context, long lastAccess) {
+            this.channel = channel;
+            this.context = context;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
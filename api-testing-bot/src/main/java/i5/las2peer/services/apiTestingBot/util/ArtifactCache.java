@@ -0,0 +1,257 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import i5.las2peer.services.apiTestingBot.context.SharedDocumentRegistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed cache on local disk for the OpenAPI docs that are extracted from workflow run artifacts.
+ *
+ * The OpenAPI doc of a commit does not change, so it only needs to be downloaded once per repository and commit SHA
+ * (e.g., the doc of the base branch is shared by all pull requests against this branch).
+ *
+ * Directory layout:
+ * - blobs/[SHA-256 of content]: content of an OpenAPI doc (stored only once, even if multiple commits share it)
+ * - refs/[SHA-256 of repository full name and commit SHA]: SHA-256 of the content of the commit's OpenAPI doc
+ *
+ * The total size of the blobs is bounded. If it is exceeded, the least recently used blobs (and the refs pointing to
+ * them) are removed. The last access time is stored as the modification time of a blob, so that the order survives
+ * a restart.
+ */
+public class ArtifactCache {
+
+    public static final long DEFAULT_MAX_SIZE_BYTES = 256L * 1024 * 1024;
+
+    private final Path blobDirectory;
+    private final Path refDirectory;
+    private final long maxSizeBytes;
+
+    /**
+     * Size of each blob (key: content hash), in access order (least recently used first).
+     */
+    private final LinkedHashMap<String, Long> blobs = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Content hash per ref (key: hash of repository full name and commit SHA).
+     */
+    private final Map<String, String> refs = new HashMap<>();
+
+    private long sizeBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Opens (or creates) the cache in the given directory.
+     *
+     * @param directory    Cache directory
+     * @param maxSizeBytes Maximum total size of the cached OpenAPI docs (in bytes).
+     * @throws IOException If the directory cannot be created or read.
+     */
+    public ArtifactCache(Path directory, long maxSizeBytes) throws IOException {
+        this.blobDirectory = directory.resolve("blobs");
+        this.refDirectory = directory.resolve("refs");
+        this.maxSizeBytes = maxSizeBytes > 0 ? maxSizeBytes : DEFAULT_MAX_SIZE_BYTES;
+        Files.createDirectories(blobDirectory);
+        Files.createDirectories(refDirectory);
+        load();
+    }
+
+    /**
+     * Returns the cached OpenAPI doc of the given commit.
+     *
+     * @param repoFullName Full name of repository
+     * @param sha          Commit SHA
+     * @return Content of OpenAPI doc, or null if it is not cached.
+     */
+    public String get(String repoFullName, String sha) {
+        String contentHash;
+        synchronized (this) {
+            contentHash = refs.get(refKey(repoFullName, sha));
+            // marks the blob as recently used
+            if (contentHash != null && blobs.get(contentHash) == null) contentHash = null;
+        }
+        if (contentHash == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        Path blob = blobDirectory.resolve(contentHash);
+        try {
+            String content = Files.readString(blob, StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return content;
+        } catch (NoSuchFileException e) {
+            // blob has been evicted in the meantime (or deleted from the directory)
+            synchronized (this) {
+                Long size = blobs.remove(contentHash);
+                if (size != null) sizeBytes -= size;
+                refs.values().removeIf(contentHash::equals);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores the OpenAPI doc of the given commit.
+     *
+     * @param repoFullName Full name of repository
+     * @param sha          Commit SHA
+     * @param content      Content of OpenAPI doc
+     */
+    public void put(String repoFullName, String sha, String content) {
+        put(repoFullName, sha, content.getBytes(StandardCharsets.UTF_8), SharedDocumentRegistry.contentHash(content));
+    }
+
+    /**
+     * Stores the OpenAPI doc of the given commit, whose content hash is already known.
+     *
+     * @param repoFullName Full name of repository
+     * @param sha          Commit SHA
+     * @param bytes        Content of OpenAPI doc (UTF-8)
+     * @param contentHash  Hex-encoded SHA-256 of the content
+     */
+    public void put(String repoFullName, String sha, byte[] bytes, String contentHash) {
+        String refKey = refKey(repoFullName, sha);
+        if (bytes.length > maxSizeBytes) return;
+
+        try {
+            boolean blobExists;
+            synchronized (this) {
+                blobExists = blobs.containsKey(contentHash);
+            }
+            if (!blobExists) writeAtomically(blobDirectory.resolve(contentHash), bytes);
+            writeAtomically(refDirectory.resolve(refKey), contentHash.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        List<String> evicted;
+        synchronized (this) {
+            if (blobs.put(contentHash, (long) bytes.length) == null) sizeBytes += bytes.length;
+            refs.put(refKey, contentHash);
+            evicted = evict();
+        }
+        deleteBlobs(evicted);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Removes the least recently used blobs (and their refs) until the size limit is met.
+     *
+     * @return Content hashes of the removed blobs, whose files still need to be deleted.
+     */
+    private List<String> evict() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> iterator = blobs.entrySet().iterator();
+        while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            sizeBytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+            evictions.incrementAndGet();
+        }
+        if (!evicted.isEmpty()) {
+            refs.entrySet().removeIf(ref -> {
+                if (!evicted.contains(ref.getValue())) return false;
+                deleteQuietly(refDirectory.resolve(ref.getKey()));
+                return true;
+            });
+        }
+        return evicted;
+    }
+
+    private void deleteBlobs(List<String> contentHashes) {
+        for (String contentHash : contentHashes) {
+            deleteQuietly(blobDirectory.resolve(contentHash));
+        }
+    }
+
+    /**
+     * Restores the index from the cache directory. Refs without blob and leftover temporary files are removed.
+     */
+    private synchronized void load() throws IOException {
+        List<Path> blobFiles = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(blobDirectory)) {
+            for (Path file : files) {
+                if (file.getFileName().toString().endsWith(".tmp")) deleteQuietly(file);
+                else blobFiles.add(file);
+            }
+        }
+        // least recently used first
+        Map<Path, Long> lastModified = new HashMap<>();
+        for (Path file : blobFiles) lastModified.put(file, Files.getLastModifiedTime(file).toMillis());
+        blobFiles.sort((a, b) -> Long.compare(lastModified.get(a), lastModified.get(b)));
+        for (Path file : blobFiles) {
+            long size = Files.size(file);
+            blobs.put(file.getFileName().toString(), size);
+            sizeBytes += size;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(refDirectory)) {
+            for (Path file : files) {
+                String contentHash = file.getFileName().toString().endsWith(".tmp") ? null
+                        : new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                if (contentHash == null || !blobs.containsKey(contentHash)) deleteQuietly(file);
+                else refs.put(file.getFileName().toString(), contentHash);
+            }
+        }
+
+        // size limit might have been reduced
+        deleteBlobs(evict());
+    }
+
+    private static void writeAtomically(Path file, byte[] bytes) throws IOException {
+        Path tmpFile = file.resolveSibling(file.getFileName() + "-" + UUID.randomUUID() + ".tmp");
+        Files.write(tmpFile, bytes);
+        Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String refKey(String repoFullName, String sha) {
+        return SharedDocumentRegistry.contentHash(repoFullName + "@" + sha);
+    }
+}
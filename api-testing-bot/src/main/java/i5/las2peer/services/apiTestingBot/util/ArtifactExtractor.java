@@ -0,0 +1,187 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts a single file from a (zipped) workflow run artifact while it is downloaded.
+ *
+ * The zip stream is read only until the requested entry has been found and read. The entry is hashed (SHA-256) while
+ * it is read, so that it does not need to be read again for the artifact cache. Both the size of the downloaded
+ * artifact and the size of the extracted file are limited, because artifacts are produced by the workflows of the
+ * repositories that the bot is installed in.
+ */
+public class ArtifactExtractor {
+
+    public static final long DEFAULT_MAX_COMPRESSED_BYTES = 50L * 1024 * 1024;
+    public static final long DEFAULT_MAX_UNCOMPRESSED_BYTES = 100L * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long maxCompressedBytes;
+    private final long maxUncompressedBytes;
+
+    /**
+     * @param maxCompressedBytes   Maximum size of the zipped artifact (in bytes).
+     * @param maxUncompressedBytes Maximum size of the extracted file (in bytes).
+     */
+    public ArtifactExtractor(long maxCompressedBytes, long maxUncompressedBytes) {
+        this.maxCompressedBytes = maxCompressedBytes > 0 ? maxCompressedBytes : DEFAULT_MAX_COMPRESSED_BYTES;
+        this.maxUncompressedBytes = maxUncompressedBytes > 0 ? maxUncompressedBytes : DEFAULT_MAX_UNCOMPRESSED_BYTES;
+    }
+
+    /**
+     * Returns whether an artifact of the given (compressed) size may be downloaded at all.
+     *
+     * @param compressedBytes Size of the zipped artifact (as reported by GitHub).
+     * @return Whether the artifact is small enough.
+     */
+    public boolean acceptsArtifactSize(long compressedBytes) {
+        return compressedBytes <= maxCompressedBytes;
+    }
+
+    /**
+     * Searches the given zip stream for the file with the given name and reads it.
+     *
+     * @param zipStream Stream of the zipped artifact
+     * @param fileName  Name of the file that should be extracted
+     * @return Extraction result
+     * @throws IOException If the zip stream cannot be read.
+     */
+    public Result extract(InputStream zipStream, String fileName) throws IOException {
+        LimitedInputStream limited = new LimitedInputStream(zipStream, maxCompressedBytes);
+        ZipInputStream zipInputStream = new ZipInputStream(limited);
+        try {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                if (!entry.isDirectory() && entry.getName().equals(fileName)) return read(zipInputStream, entry);
+            }
+            return new Result(Status.NOT_FOUND, null, null);
+        } catch (SizeLimitExceededException e) {
+            return new Result(Status.TOO_LARGE, null, null);
+        }
+    }
+
+    private Result read(ZipInputStream zipInputStream, ZipEntry entry) throws IOException {
+        // the size is only known in advance if it is stored in the local file header
+        long size = entry.getSize();
+        if (size > maxUncompressedBytes) return new Result(Status.TOO_LARGE, null, null);
+
+        MessageDigest digest = Hashing.sha256();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 ? (int) size : BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = zipInputStream.read(buffer)) != -1) {
+            total += read;
+            if (total > maxUncompressedBytes) return new Result(Status.TOO_LARGE, null, null);
+            digest.update(buffer, 0, read);
+            out.write(buffer, 0, read);
+        }
+        return new Result(Status.FOUND, out.toByteArray(), Hashing.toHex(digest.digest()));
+    }
+
+    public enum Status {
+        FOUND,
+        NOT_FOUND,
+        TOO_LARGE
+    }
+
+    /**
+     * Result of an extraction. Content and hash are only given if the file has been found.
+     */
+    public static class Result {
+        private final Status status;
+        private final byte[] bytes;
+        private final String contentHash;
+
+        private Result(Status status, byte[] bytes, String contentHash) {
+            this.status = status;
+            this.bytes = bytes;
+            this.contentHash = contentHash;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isFound() {
+            return status == Status.FOUND;
+        }
+
+        /**
+         * @return Content of the extracted file (UTF-8), or null if it has not been found.
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return Hex-encoded SHA-256 of the content, or null if the file has not been found.
+         */
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        /**
+         * @return Content of the extracted file as a string, or null if it has not been found.
+         */
+        public String getContent() {
+            return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Thrown if more bytes than allowed are read from the downloaded artifact.
+     */
+    private static class SizeLimitExceededException extends IOException {
+        private SizeLimitExceededException() {
+            super("Size limit exceeded");
+        }
+    }
+
+    /**
+     * Stream that fails as soon as more than the given number of bytes has been read from it.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count = 0;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) count(read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) throws SizeLimitExceededException {
+            count += bytes;
+            if (count > limit) throw new SizeLimitExceededException();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes the handling of messages that belong to the same channel (Rocket.Chat channel, GitHub issue or pull
+ * request), while messages of different channels are handled in parallel.
+ *
+ * Every channel with pending messages has a mailbox. The tasks in a mailbox are executed one after another in
+ * arrival order. Each task is executed on the thread that submitted it (i.e., the web connector thread of the
+ * request), because the las2peer context is bound to this thread. Therefore, no additional worker threads are
+ * needed and channels are processed in parallel on the shared thread pool of the web connector.
+ * A mailbox only holds a limited number of tasks. If it is full, the task is rejected immediately.
+ */
+public class ChannelMailboxes {
+
+    /**
+     * Default maximum number of tasks (including the one that is currently executed) per mailbox.
+     */
+    public static final int DEFAULT_QUEUE_DEPTH = 5;
+
+    private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private volatile int queueDepth;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ChannelMailboxes() {
+        this(DEFAULT_QUEUE_DEPTH);
+    }
+
+    /**
+     * @param queueDepth Maximum number of tasks (including the one that is currently executed) per mailbox.
+     */
+    public ChannelMailboxes(int queueDepth) {
+        setQueueDepth(queueDepth);
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth > 0 ? queueDepth : DEFAULT_QUEUE_DEPTH;
+    }
+
+    /**
+     * Executes the given task as soon as all tasks that were previously submitted for the same channel are finished.
+     *
+     * @param channel Channel the task belongs to
+     * @param task    Task that should be executed
+     * @param busy    Supplies the result if the mailbox of the channel is full.
+     * @param <T>     Result type
+     * @return Result of the task, or the result of busy if the mailbox of the channel is full.
+     */
+    public <T> T execute(String channel, Supplier<T> task, Supplier<T> busy) {
+        Mailbox mailbox = enqueue(channel);
+        if (mailbox == null) {
+            rejected.incrementAndGet();
+            return busy.get();
+        }
+
+        try {
+            // fair lock => tasks are executed in arrival order
+            mailbox.lock.lock();
+            try {
+                return task.get();
+            } finally {
+                mailbox.lock.unlock();
+            }
+        } finally {
+            dequeue(channel);
+        }
+    }
+
+    /**
+     * Returns the number of channels that currently have pending tasks.
+     *
+     * @return Number of channels that currently have pending tasks.
+     */
+    public int getActiveChannelCount() {
+        return mailboxes.size();
+    }
+
+    /**
+     * Returns the number of tasks that were rejected because the mailbox of their channel was full.
+     *
+     * @return Number of rejected tasks.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Reserves a slot in the mailbox of the given channel (the mailbox is created if it does not exist yet).
+     *
+     * @param channel Channel
+     * @return Mailbox of the channel, or null if the mailbox is full.
+     */
+    private Mailbox enqueue(String channel) {
+        boolean[] full = {false};
+        Mailbox mailbox = mailboxes.compute(channel, (key, existing) -> {
+            Mailbox box = existing == null ? new Mailbox() : existing;
+            if (box.pending >= queueDepth) full[0] = true;
+            else box.pending++;
+            return box;
+        });
+        return full[0] ? null : mailbox;
+    }
+
+    /**
+     * Releases a slot in the mailbox of the given channel and removes the mailbox if it is empty.
+     *
+     * @param channel Channel
+     */
+    private void dequeue(String channel) {
+        mailboxes.computeIfPresent(channel, (key, box) -> {
+            box.pending--;
+            return box.pending == 0 ? null : box;
+        });
+    }
+
+    private static class Mailbox {
+        /**
+         * Number of tasks that are waiting or executed. Only modified within ConcurrentHashMap.compute.
+         */
+        private int pending = 0;
+
+        private final ReentrantLock lock = new ReentrantLock(true);
+    }
+}
@@ -0,0 +1,159 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bounded store for string values on local disk (one file per key), used as the disk tier of caches.
+ *
+ * The keys of the stored files are kept in memory in access order, i.e., reading or writing a value makes its key the
+ * most recently used one. If there are too many files, the least recently used ones are removed. Values that were
+ * written longer ago than the maximum age are no longer returned and removed when they are read. After a restart, the
+ * keys are restored in the order in which their files were written. A value is written to a temporary file that is moved into place atomically, so that a crash never leaves a
+ * partially written value. Keys need to be valid file names (e.g., hex-encoded hashes).
+ */
+public class DiskLruStore {
+
+    private final Path directory;
+    private final int maxEntries;
+    private final long maxAgeMillis;
+
+    /**
+     * Time at which the files on disk were written, by key (least recently used first).
+     */
+    private final LinkedHashMap<String, Long> keys = new LinkedHashMap<>(16, 0.75f, true);
+
+    private DiskLruStore(Path directory, int maxEntries, long maxAgeMillis) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Opens the store in the given directory and restores the keys of the files that it contains (oldest first).
+     * Leftover temporary files and files that are older than the given maximum age are removed.
+     *
+     * @param directory    Directory of the store (null to disable the disk tier).
+     * @param maxEntries   Maximum number of files.
+     * @param maxAgeMillis Values that were written longer ago than this are removed (0 keeps all values).
+     * @return Store, or null if the directory is null or cannot be used.
+     */
+    public static DiskLruStore open(Path directory, int maxEntries, long maxAgeMillis) {
+        if (directory == null) return null;
+        DiskLruStore store = new DiskLruStore(directory, maxEntries, Math.max(0, maxAgeMillis));
+        try {
+            Files.createDirectories(directory);
+            long now = System.currentTimeMillis();
+            Map<String, Long> lastModified = new HashMap<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    long modified = Files.getLastModifiedTime(file).toMillis();
+                    if (name.endsWith(".tmp") || (maxAgeMillis > 0 && now - modified > maxAgeMillis)) {
+                        Files.deleteIfExists(file);
+                    } else {
+                        lastModified.put(name, modified);
+                    }
+                }
+            }
+            lastModified.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue())
+                    .forEach(entry -> store.keys.put(entry.getKey(), entry.getValue()));
+            return store;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads the value of the given key. The key becomes the most recently used one.
+     *
+     * @param key Key
+     * @return Value, or null if the store does not contain the key or the value has expired.
+     */
+    public String read(String key) {
+        synchronized (this) {
+            Long written = keys.get(key);
+            if (written == null) return null;
+            if (maxAgeMillis > 0 && System.currentTimeMillis() - written > maxAgeMillis) {
+                keys.remove(key);
+                delete(key);
+                return null;
+            }
+        }
+        try {
+            return Files.readString(directory.resolve(key), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the value of the given key (replaces an existing one). The key becomes the most recently used one and the
+     * least recently used files are removed if there are too many.
+     *
+     * @param key   Key
+     * @param value Value
+     */
+    public void write(String key, String value) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            keys.put(key, System.currentTimeMillis());
+            Iterator<String> iterator = keys.keySet().iterator();
+            while (keys.size() > maxEntries && iterator.hasNext()) {
+                evicted.add(iterator.next());
+                iterator.remove();
+            }
+        }
+
+        try {
+            Path tmpFile = directory.resolve(key + "-" + UUID.randomUUID() + ".tmp");
+            Files.writeString(tmpFile, value, StandardCharsets.UTF_8);
+            Files.move(tmpFile, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (String evictedKey : evicted) delete(evictedKey);
+    }
+
+    /**
+     * Removes the value of the given key.
+     *
+     * @param key Key
+     */
+    public void remove(String key) {
+        synchronized (this) {
+            if (keys.remove(key) == null) return;
+        }
+        delete(key);
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(directory.resolve(key));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
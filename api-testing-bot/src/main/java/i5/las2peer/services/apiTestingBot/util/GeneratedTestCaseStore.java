@@ -0,0 +1,266 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import i5.las2peer.apiTestModel.TestCase;
+import i5.las2peer.services.apiTestingBot.context.SessionJournal;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe store for the test cases that have been generated for GitHub pull requests.
+ * The users can ask the bot to generate the code of one of these test cases (see "@testingbot code").
+ *
+ * For every pull request, a small history of generated test cases is kept. The test cases of a pull request are
+ * numbered (starting with 1), so that they can be addressed by their number.
+ * The number of pull requests per repository is bounded: if a repository exceeds the limit, the pull request whose
+ * test cases were generated least recently is evicted. The test cases of a pull request are removed when the pull
+ * request gets closed or merged.
+ *
+ * If persistence is enabled, the history of a pull request is written to a {@link SessionJournal} whenever it is
+ * modified, so that the test cases survive a restart.
+ *
+ * The key of a pull request is [OWNER]/[REPO NAME]#[PR NUMBER].
+ */
+public class GeneratedTestCaseStore {
+
+    public static final int DEFAULT_MAX_PULL_REQUESTS_PER_REPO = 100;
+    public static final int DEFAULT_HISTORY_SIZE = 5;
+
+    private volatile int maxPullRequestsPerRepo = DEFAULT_MAX_PULL_REQUESTS_PER_REPO;
+    private volatile int historySize = DEFAULT_HISTORY_SIZE;
+
+    /**
+     * Histories of the pull requests per repository (least recently updated pull request first).
+     */
+    private final Map<String, LinkedHashMap<String, History>> repositories = new HashMap<>();
+
+    private int testCaseCount = 0;
+    private int pullRequestCount = 0;
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Journal that the histories are persisted to (null if persistence is disabled).
+     */
+    private SessionJournal journal;
+
+    /**
+     * @param maxPullRequestsPerRepo Maximum number of pull requests per repository.
+     * @param historySize            Maximum number of test cases per pull request.
+     */
+    public void setLimits(int maxPullRequestsPerRepo, int historySize) {
+        if (maxPullRequestsPerRepo > 0) this.maxPullRequestsPerRepo = maxPullRequestsPerRepo;
+        if (historySize > 0) this.historySize = historySize;
+    }
+
+    /**
+     * Adds a generated test case to the history of the given pull request.
+     *
+     * @param pullRequestKey [OWNER]/[REPO NAME]#[PR NUMBER]
+     * @param testCase       Generated test case
+     * @return Number of the test case within the pull request.
+     */
+    public synchronized int add(String pullRequestKey, TestCase testCase) {
+        LinkedHashMap<String, History> pullRequests = repositories.computeIfAbsent(getRepository(pullRequestKey),
+                k -> new LinkedHashMap<>());
+        // re-inserted, so that the pull request becomes the most recently updated one
+        History history = pullRequests.remove(pullRequestKey);
+        if (history == null) {
+            history = new History();
+            pullRequestCount++;
+        }
+        pullRequests.put(pullRequestKey, history);
+
+        int number = history.nextNumber++;
+        history.entries.add(new Entry(number, System.currentTimeMillis(), testCase));
+        testCaseCount++;
+        while (history.entries.size() > historySize) {
+            history.entries.remove(0);
+            testCaseCount--;
+        }
+        persist(pullRequestKey, history);
+
+        // evict least recently updated pull requests of the repository
+        Iterator<Map.Entry<String, History>> iterator = pullRequests.entrySet().iterator();
+        while (pullRequests.size() > maxPullRequestsPerRepo && iterator.hasNext()) {
+            Map.Entry<String, History> eldest = iterator.next();
+            iterator.remove();
+            removed(eldest.getKey(), eldest.getValue());
+            evictions.incrementAndGet();
+        }
+        return number;
+    }
+
+    /**
+     * Returns the latest test case that has been generated for the given pull request.
+     *
+     * @param pullRequestKey [OWNER]/[REPO NAME]#[PR NUMBER]
+     * @return Latest test case, or null if there is none.
+     */
+    public synchronized TestCase getLatest(String pullRequestKey) {
+        History history = getHistory(pullRequestKey);
+        if (history == null || history.entries.isEmpty()) return null;
+        return history.entries.get(history.entries.size() - 1).testCase;
+    }
+
+    /**
+     * Returns the test case with the given number.
+     *
+     * @param pullRequestKey [OWNER]/[REPO NAME]#[PR NUMBER]
+     * @param number         Number of the test case within the pull request
+     * @return Test case, or null if there is no such test case (anymore).
+     */
+    public synchronized TestCase get(String pullRequestKey, int number) {
+        History history = getHistory(pullRequestKey);
+        if (history == null) return null;
+        for (Entry entry : history.entries) {
+            if (entry.number == number) return entry.testCase;
+        }
+        return null;
+    }
+
+    /**
+     * Removes all test cases of the given pull request (e.g., because it has been closed or merged).
+     *
+     * @param pullRequestKey [OWNER]/[REPO NAME]#[PR NUMBER]
+     */
+    public synchronized void remove(String pullRequestKey) {
+        String repository = getRepository(pullRequestKey);
+        LinkedHashMap<String, History> pullRequests = repositories.get(repository);
+        if (pullRequests == null) return;
+        History history = pullRequests.remove(pullRequestKey);
+        if (history != null) removed(pullRequestKey, history);
+        if (pullRequests.isEmpty()) repositories.remove(repository);
+    }
+
+    /**
+     * Persists all following modifications to the given journal and restores the histories that the journal contains.
+     * Journals that were written before the history was introduced (one test case per pull request) are supported.
+     *
+     * @param journal Journal
+     */
+    public synchronized void enablePersistence(SessionJournal journal) {
+        Map<String, byte[]> records;
+        try {
+            records = journal.recover(0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        Map<String, History> histories = new HashMap<>();
+        for (Map.Entry<String, byte[]> record : records.entrySet()) {
+            History history;
+            try {
+                Object value = SessionJournal.deserialize(record.getValue());
+                if (value instanceof History) {
+                    history = (History) value;
+                } else {
+                    history = new History();
+                    history.entries.add(new Entry(history.nextNumber++, 0, (TestCase) value));
+                }
+            } catch (IOException | ClassCastException e) {
+                // only the test cases of this pull request are lost
+                System.out.println("Could not recover generated test cases of " + record.getKey() + ".");
+                e.printStackTrace();
+                journal.remove(record.getKey());
+                continue;
+            }
+            if (!history.entries.isEmpty()) histories.put(record.getKey(), history);
+        }
+
+        // restore the order of the pull requests (least recently updated first)
+        histories.entrySet().stream()
+                .sorted(Comparator.comparingLong(record -> record.getValue().getLastUpdate()))
+                .forEach(record -> {
+                    repositories.computeIfAbsent(getRepository(record.getKey()), k -> new LinkedHashMap<>())
+                            .put(record.getKey(), record.getValue());
+                    pullRequestCount++;
+                    testCaseCount += record.getValue().entries.size();
+                });
+        System.out.println("Recovered " + testCaseCount + " generated test cases of " + pullRequestCount
+                + " pull requests from journal.");
+        this.journal = journal;
+    }
+
+    /**
+     * @return Number of pull requests with generated test cases.
+     */
+    public synchronized int getPullRequestCount() {
+        return pullRequestCount;
+    }
+
+    /**
+     * @return Number of stored test cases.
+     */
+    public synchronized int getTestCaseCount() {
+        return testCaseCount;
+    }
+
+    /**
+     * @return Number of pull requests that were evicted, because their repository reached its limit.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private History getHistory(String pullRequestKey) {
+        LinkedHashMap<String, History> pullRequests = repositories.get(getRepository(pullRequestKey));
+        return pullRequests == null ? null : pullRequests.get(pullRequestKey);
+    }
+
+    private void removed(String pullRequestKey, History history) {
+        pullRequestCount--;
+        testCaseCount -= history.entries.size();
+        if (journal != null) journal.remove(pullRequestKey);
+    }
+
+    private void persist(String pullRequestKey, History history) {
+        if (journal == null) return;
+        try {
+            journal.put(pullRequestKey, SessionJournal.serialize(history));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String getRepository(String pullRequestKey) {
+        int separator = pullRequestKey.lastIndexOf('#');
+        return separator == -1 ? pullRequestKey : pullRequestKey.substring(0, separator);
+    }
+
+    /**
+     * Generated test cases of a pull request (oldest first).
+     */
+    private static class History implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private int nextNumber = 1;
+        private final ArrayList<Entry> entries = new ArrayList<>();
+
+        private long getLastUpdate() {
+            return entries.get(entries.size() - 1).createdAt;
+        }
+    }
+
+    private static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int number;
+        private final long createdAt;
+        private final TestCase testCase;
+
+        private Entry(int number, long createdAt, TestCase testCase) {
+            this.number = number;
+            this.createdAt = createdAt;
+            this.testCase = testCase;
+        }
+    }
+}
@@ -2,7 +2,9 @@ package i5.las2peer.services.apiTestingBot.util;
 
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import org.kohsuke.github.GHApp;
 import org.kohsuke.github.GHAppInstallation;
+import org.kohsuke.github.GHAppInstallationToken;
 import org.kohsuke.github.GitHub;
 import org.kohsuke.github.GitHubBuilder;
 
@@ -14,6 +16,11 @@ import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A GitHub app can be installed multiple times (e.g., within different organizations or repositories).
@@ -21,10 +28,60 @@ import java.util.Date;
  * For requesting this access token, a JWT is needed. This JWT allows to authenticate as a GitHub app.
  * The JWT needs to be signed using the app's private key (from general app settings).
  *
+ * The helper is meant to be long-lived (see {@link #getInstance(int, String)}), because it caches everything that is
+ * needed for the authentication:
+ * - the parsed private key,
+ * - the JWT (until shortly before it expires),
+ * - the installation id of each repository,
+ * - the access token of each installation, together with a GitHub object that uses this token. The GitHub objects
+ *   are shared by all callers. Tokens are refreshed in the background shortly before they expire (they are valid
+ *   for one hour).
+ *
  * See https://docs.github.com/en/developers/apps/building-github-apps/authenticating-with-github-apps
  */
 public class GitHubAppHelper {
 
+    /**
+     * URL of the public GitHub API.
+     */
+    public static final String GITHUB_API_URL = "https://api.github.com";
+
+    /**
+     * Validity of a JWT (GitHub accepts at most 10 minutes).
+     */
+    private static final long JWT_VALIDITY_MILLIS = TimeUnit.MINUTES.toMillis(9);
+
+    /**
+     * The issue time of a JWT is set to the past to allow for clock drift between this node and GitHub.
+     */
+    private static final long JWT_CLOCK_DRIFT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * A new JWT is generated if the current one expires within this time.
+     */
+    private static final long JWT_RENEWAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * An installation token is refreshed in the background if it expires within this time.
+     */
+    private static final long TOKEN_REFRESH_AHEAD_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * An installation token is no longer used if it expires within this time.
+     */
+    private static final long TOKEN_MIN_VALIDITY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Helpers per GitHub app (key: app id and private key).
+     */
+    private static final ConcurrentHashMap<String, GitHubAppHelper> instances = new ConcurrentHashMap<>();
+
+    private static final ExecutorService tokenRefresher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "github-token-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Id of the GitHub app.
      */
@@ -35,6 +92,61 @@ public class GitHubAppHelper {
      */
     private Key privateKey;
 
+    /**
+     * URL of the GitHub API.
+     */
+    private final String apiUrl;
+
+    /**
+     * GitHub object that is authenticated as the app (using a JWT).
+     */
+    private volatile AppClient appClient;
+
+    /**
+     * Lock for renewing the JWT (only one thread requests the app).
+     */
+    private final Object appLock = new Object();
+
+    /**
+     * Installation id per repository (full name).
+     */
+    private final ConcurrentHashMap<String, Long> installationIds = new ConcurrentHashMap<>();
+
+    /**
+     * GitHub object (authenticated with an installation token) per installation id.
+     */
+    private final ConcurrentHashMap<Long, InstallationClient> installationClients = new ConcurrentHashMap<>();
+
+    /**
+     * Lock per installation id for requesting a new installation token, so that the tokens of different
+     * installations are requested concurrently.
+     */
+    private final ConcurrentHashMap<Long, Object> installationLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Installations whose token is currently refreshed in the background.
+     */
+    private final Set<Long> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Returns the (shared) helper for the given GitHub app.
+     *
+     * @param gitHubAppId Id of the GitHub app
+     * @param pkcs8PrivateKey Private key of GitHub app (already needs to be converted to pkcs8)
+     * @return Helper for the given GitHub app.
+     * @throws GitHubAppHelperException If the private key cannot be parsed.
+     */
+    public static GitHubAppHelper getInstance(int gitHubAppId, String pkcs8PrivateKey) throws GitHubAppHelperException {
+        String key = gitHubAppId + ":" + pkcs8PrivateKey;
+        GitHubAppHelper helper = instances.get(key);
+        if (helper == null) {
+            GitHubAppHelper created = new GitHubAppHelper(gitHubAppId, pkcs8PrivateKey);
+            helper = instances.putIfAbsent(key, created);
+            if (helper == null) helper = created;
+        }
+        return helper;
+    }
+
     /**
      *
      * @param gitHubAppId Id of the GitHub app
@@ -42,7 +154,19 @@ public class GitHubAppHelper {
      * @throws GitHubAppHelperException
      */
     public GitHubAppHelper(int gitHubAppId, String pkcs8PrivateKey) throws GitHubAppHelperException {
+        this(gitHubAppId, pkcs8PrivateKey, GITHUB_API_URL);
+    }
+
+    /**
+     *
+     * @param gitHubAppId Id of the GitHub app
+     * @param pkcs8PrivateKey Private key of GitHub app (already needs to be converted to pkcs8)
+     * @param apiUrl URL of the GitHub API (e.g., of a GitHub Enterprise server)
+     * @throws GitHubAppHelperException
+     */
+    public GitHubAppHelper(int gitHubAppId, String pkcs8PrivateKey, String apiUrl) throws GitHubAppHelperException {
         this.gitHubAppId = gitHubAppId;
+        this.apiUrl = apiUrl;
 
         byte[] pkcs8PrivateKeyBytes = DatatypeConverter.parseBase64Binary(pkcs8PrivateKey);
         PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(pkcs8PrivateKeyBytes);
@@ -59,40 +183,174 @@ public class GitHubAppHelper {
      * @return GitHub object that has access to the given repository.
      */
     public GitHub getGitHubInstance(String repositoryFullName) {
+        try {
+            long installationId = getInstallationId(repositoryFullName);
+            return getInstallationClient(installationId).gitHub;
+        } catch (IOException e) {
+            e.printStackTrace();
+            // the app might have been uninstalled from the repository
+            installationIds.remove(repositoryFullName);
+            return null;
+        }
+    }
+
+    /**
+     * Returns an installation token that has access to the given repository (e.g., for API endpoints or parameters
+     * that the GitHub API client does not support).
+     *
+     * @param repositoryFullName Full name of the repository, containing both owner and repository name.
+     * @return Installation token, or null if the app has no access to the repository.
+     */
+    public String getInstallationToken(String repositoryFullName) {
+        try {
+            long installationId = getInstallationId(repositoryFullName);
+            return getInstallationClient(installationId).token;
+        } catch (IOException e) {
+            e.printStackTrace();
+            installationIds.remove(repositoryFullName);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the URL of the GitHub API that the helper uses.
+     *
+     * @return URL of the GitHub API.
+     */
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    /**
+     * Returns the id of the app installation that has access to the given repository.
+     */
+    private long getInstallationId(String repositoryFullName) throws IOException {
+        Long installationId = installationIds.get(repositoryFullName);
+        if (installationId != null) return installationId;
+
         String ownerName = repositoryFullName.split("/")[0];
         String repoName = repositoryFullName.split("/")[1];
 
+        // get app installation for given repository (getInstallationByRepository requires a JWT)
+        GHAppInstallation installation = getApp().getInstallationByRepository(ownerName, repoName);
+        installationIds.put(repositoryFullName, installation.getId());
+        return installation.getId();
+    }
+
+    /**
+     * Returns the GitHub object of the given installation. If its token expires soon, a new token is requested in
+     * the background. If the token has expired (or there is none yet), a new token is requested directly.
+     */
+    private InstallationClient getInstallationClient(long installationId) throws IOException {
+        InstallationClient client = installationClients.get(installationId);
+        long remaining = client == null ? 0 : client.expiresAt - System.currentTimeMillis();
+        if (remaining > TOKEN_MIN_VALIDITY_MILLIS) {
+            if (remaining < TOKEN_REFRESH_AHEAD_MILLIS) refreshInBackground(installationId);
+            return client;
+        }
+        return refreshInstallationClient(installationId, TOKEN_MIN_VALIDITY_MILLIS);
+    }
+
+    private void refreshInBackground(long installationId) {
+        if (!refreshing.add(installationId)) return;
         try {
-            // first create GitHub object using a JWT (this is needed to request an access token for an app installation)
-            GitHub gitHub = new GitHubBuilder().withJwtToken(generateJWT()).build();
+            tokenRefresher.execute(() -> {
+                try {
+                    refreshInstallationClient(installationId, TOKEN_REFRESH_AHEAD_MILLIS);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    refreshing.remove(installationId);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(installationId);
+        }
+    }
 
-            // get app installation for given repository (getInstallationByRepository requires a JWT)
-            GHAppInstallation installation = gitHub.getApp().getInstallationByRepository(ownerName, repoName);
+    /**
+     * Requests a new installation token, unless another thread already did that in the meantime.
+     *
+     * @param installationId Id of the app installation
+     * @param minValidityMillis The current token is kept if it is still valid for this time.
+     */
+    private InstallationClient refreshInstallationClient(long installationId, long minValidityMillis)
+            throws IOException {
+        synchronized (installationLocks.computeIfAbsent(installationId, id -> new Object())) {
+            InstallationClient client = installationClients.get(installationId);
+            if (client != null && client.expiresAt - System.currentTimeMillis() > minValidityMillis) return client;
+
+            GHAppInstallationToken token = getApp().getInstallationById(installationId).createToken().create();
+            Date expiresAt = token.getExpiresAt();
+            long expiresAtMillis = expiresAt != null ? expiresAt.getTime()
+                    : System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
 
             // create a GitHub object with app installation token
-            return new GitHubBuilder().withAppInstallationToken(installation.createToken().create().getToken()).build();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+            GitHub gitHub = new GitHubBuilder().withEndpoint(apiUrl).withAppInstallationToken(token.getToken())
+                    .build();
+            client = new InstallationClient(gitHub, token.getToken(), expiresAtMillis);
+            installationClients.put(installationId, client);
+            return client;
+        }
+    }
+
+    /**
+     * Returns the GitHub app (requested with a JWT that is renewed shortly before it expires).
+     */
+    private GHApp getApp() throws IOException {
+        AppClient client = appClient;
+        if (client != null && client.expiresAt - System.currentTimeMillis() >= JWT_RENEWAL_MILLIS) return client.app;
+
+        synchronized (appLock) {
+            client = appClient;
+            if (client == null || client.expiresAt - System.currentTimeMillis() < JWT_RENEWAL_MILLIS) {
+                long expiresAt = System.currentTimeMillis() + JWT_VALIDITY_MILLIS;
+                GitHub gitHub = new GitHubBuilder().withEndpoint(apiUrl).withJwtToken(generateJWT(expiresAt)).build();
+                client = new AppClient(gitHub.getApp(), expiresAt);
+                appClient = client;
+            }
+            return client.app;
         }
     }
 
     /**
      * Generates a JWT and signs it with the app's private key.
+     * @param expiresAtMillis Expiration time of the JWT
      * @return JWT
      */
-    private String generateJWT() {
-        long nowMillis = System.currentTimeMillis();
-        Date now = new Date(nowMillis);
-        Date expiration = new Date(nowMillis + 60000);
+    private String generateJWT(long expiresAtMillis) {
+        Date issuedAt = new Date(System.currentTimeMillis() - JWT_CLOCK_DRIFT_MILLIS);
+        Date expiration = new Date(expiresAtMillis);
         return Jwts.builder()
-                .setIssuedAt(now) // issue now
+                .setIssuedAt(issuedAt) // issue time (slightly in the past)
                 .setExpiration(expiration) // expiration time of JWT
                 .setIssuer(String.valueOf(gitHubAppId)) // app id needs to be used as issuer
                 .signWith(this.privateKey, SignatureAlgorithm.RS256) // sign with app's private key
                 .compact();
     }
 
+    private static class AppClient {
+        private final GHApp app;
+        private final long expiresAt;
+
+        private AppClient(GHApp app, long expiresAt) {
+            this.app = app;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class InstallationClient {
+        private final GitHub gitHub;
+        private final String token;
+        private final long expiresAt;
+
+        private InstallationClient(GitHub gitHub, String token, long expiresAt) {
+            this.gitHub = gitHub;
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     /**
      * General exception that is thrown if something related to the GitHubAppHelper is not working.
      */
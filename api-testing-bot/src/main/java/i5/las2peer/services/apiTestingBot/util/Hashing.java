@@ -0,0 +1,51 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 helpers for the content hashes and fingerprints that are used as cache keys and file names.
+ */
+public class Hashing {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * @return New SHA-256 digest.
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param content Content (hashed as UTF-8)
+     * @return Hex-encoded SHA-256 of the content.
+     */
+    public static String sha256Hex(String content) {
+        return toHex(sha256().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, bytes.length);
+    }
+
+    /**
+     * @param bytes  Bytes to encode
+     * @param length Number of bytes (from the start) that are encoded
+     * @return Lowercase hex encoding.
+     */
+    public static String toHex(byte[] bytes, int length) {
+        char[] hex = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,124 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded thread pool for blocking network calls (e.g., to the GitHub API) that can be executed in parallel.
+ *
+ * A group of tasks is only successful if every task returns a result (non-null) within the timeout. As soon as one
+ * task fails, returns null, or the caller is no longer interested (e.g., because a newer commit has been pushed), the
+ * remaining tasks are cancelled (interrupted).
+ */
+public class IOTaskExecutor {
+
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Maximum number of tasks that wait for a thread.
+     */
+    private static final int MAX_QUEUED_TASKS = 1000;
+
+    /**
+     * Interval in which the cancellation condition is checked while waiting for the tasks.
+     */
+    private static final long CANCELLATION_CHECK_MILLIS = 500;
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param name           Prefix of the thread names
+     * @param threads        Number of threads
+     * @param timeoutSeconds Time (in seconds) that a group of tasks may take.
+     */
+    public IOTaskExecutor(String name, int threads, int timeoutSeconds) {
+        if (threads <= 0) threads = DEFAULT_THREADS;
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds > 0 ? timeoutSeconds : DEFAULT_TIMEOUT_SECONDS);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED_TASKS), r -> {
+            Thread thread = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Executes the given tasks in parallel and waits until all of them are finished.
+     *
+     * @param tasks     Tasks
+     * @param cancelled Checked while waiting, the tasks are cancelled as soon as it returns true.
+     * @param <T>       Type of the task results
+     * @return Results (in the order of the tasks), or null if a task failed, returned null, or did not finish in time.
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> tasks, BooleanSupplier cancelled) {
+        ExecutorCompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<T>> futures = new ArrayList<>();
+        try {
+            for (Callable<T> task : tasks) futures.add(completionService.submit(task));
+
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            for (int finished = 0; finished < futures.size(); ) {
+                if (cancelled.getAsBoolean()) return null;
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    timeouts.incrementAndGet();
+                    return null;
+                }
+                Future<T> future = completionService.poll(Math.min(remaining, CANCELLATION_CHECK_MILLIS),
+                        TimeUnit.MILLISECONDS);
+                if (future == null) continue;
+                finished++;
+                // stop as soon as one of the results is missing, the others are not needed anymore
+                if (future.get() == null) return null;
+            }
+
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) results.add(future.get());
+            return results;
+        } catch (ExecutionException | RejectedExecutionException e) {
+            failures.incrementAndGet();
+            e.printStackTrace();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            // no-op for the finished tasks
+            for (Future<T> future : futures) future.cancel(true);
+        }
+    }
+
+    /**
+     * Stops the threads. Running tasks are interrupted.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+}
@@ -0,0 +1,314 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes fingerprints of JSON or YAML (OpenAPI) documents that only depend on their content, i.e., that do not
+ * change if the keys of an object are reordered, the document is pretty-printed differently, or converted between
+ * JSON and YAML. Numbers are compared by value (e.g., 1 and 1.0 are equal).
+ *
+ * The document is hashed while it is streamed through a parser, no object model is built. Arrays and objects are
+ * hashed (SHA-256) bottom-up: the hash of an array covers its elements in order, the hash of an object covers the
+ * sorted hashes of its members (key and value), which does not depend on their order. Thus, the memory that is needed
+ * only depends on the nesting depth of the document and the number of members of its objects, not on its size.
+ *
+ * Documents that cannot be parsed (e.g., YAML documents that exceed the limits of the YAML parser) are fingerprinted
+ * by their raw content.
+ */
+public class OpenAPIFingerprint {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final YAMLFactory YAML_FACTORY = new YAMLFactory();
+
+    private static final int HASH_LENGTH = 32;
+
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private static final byte NULL = 'n';
+    private static final byte TRUE = 't';
+    private static final byte FALSE = 'f';
+    private static final byte INTEGER = 'i';
+    private static final byte DECIMAL = 'd';
+    private static final byte STRING = 's';
+    private static final byte KEY = 'k';
+    private static final byte HASH = 'h';
+    private static final byte ARRAY = '[';
+    private static final byte OBJECT = '{';
+
+    /**
+     * Computes the 256-bit fingerprint of the given document.
+     *
+     * @param doc JSON or YAML document
+     * @return Hex-encoded fingerprint (64 characters).
+     */
+    public static String fingerprint(String doc) {
+        return Hashing.toHex(fingerprintBytes(doc), HASH_LENGTH);
+    }
+
+    /**
+     * Computes the 128-bit fingerprint of the given document (prefix of the 256-bit fingerprint).
+     *
+     * @param doc JSON or YAML document
+     * @return Hex-encoded fingerprint (32 characters).
+     */
+    public static String fingerprint128(String doc) {
+        return Hashing.toHex(fingerprintBytes(doc), HASH_LENGTH / 2);
+    }
+
+    /**
+     * Checks if the given documents have the same content.
+     *
+     * @param doc      JSON or YAML document
+     * @param otherDoc JSON or YAML document
+     * @return Whether the documents are identical or have the same fingerprint.
+     */
+    public static boolean sameContent(String doc, String otherDoc) {
+        if (doc.equals(otherDoc)) return true;
+        return MessageDigest.isEqual(fingerprintBytes(doc), fingerprintBytes(otherDoc));
+    }
+
+    private static byte[] fingerprintBytes(String doc) {
+        try {
+            return new Hasher().hash(createParser(doc));
+        } catch (IOException | DigestException e) {
+            // not a JSON or YAML document
+            return Hashing.sha256().digest(doc.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static JsonParser createParser(String doc) throws IOException {
+        // JSON documents are read with the (faster) JSON parser, everything else as YAML
+        for (int i = 0; i < doc.length(); i++) {
+            char c = doc.charAt(i);
+            if (Character.isWhitespace(c) || c == '\uFEFF') continue;
+            if (c == '{' || c == '[') return JSON_FACTORY.createParser(new StringReader(doc));
+            break;
+        }
+        return YAML_FACTORY.createParser(new StringReader(doc));
+    }
+
+    /**
+     * Hashes one document. The frames of the nesting levels are reused, so that only the first visit of a nesting
+     * level allocates memory.
+     *
+     * Scalars are not hashed on their own, their (self-delimiting) encoding is written directly into the digest of the
+     * enclosing array or object member. Thus, only objects, arrays and object members need their own hash.
+     */
+    private static class Hasher {
+        /**
+         * Digest of a scalar root value, also used to finish objects.
+         */
+        private final MessageDigest digest = Hashing.sha256();
+        private final byte[] valueHash = new byte[HASH_LENGTH];
+        private final byte[] chars = new byte[4096];
+        private final List<Frame> frames = new ArrayList<>();
+        private int depth = 0;
+        private byte[] result;
+
+        private byte[] hash(JsonParser parser) throws IOException, DigestException {
+            try (parser) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    switch (token) {
+                        case START_OBJECT:
+                            push(true);
+                            break;
+                        case START_ARRAY:
+                            push(false).digest.update(ARRAY);
+                            break;
+                        case FIELD_NAME:
+                            MessageDigest member = frames.get(depth - 1).digest;
+                            member.update(KEY);
+                            updateChars(member, parser);
+                            break;
+                        case END_OBJECT:
+                            Frame object = frames.get(--depth);
+                            digest.update(OBJECT);
+                            updateLong(digest, object.count);
+                            object.updateMembers(digest);
+                            digest.digest(valueHash, 0, HASH_LENGTH);
+                            emitHash();
+                            break;
+                        case END_ARRAY:
+                            frames.get(--depth).digest.digest(valueHash, 0, HASH_LENGTH);
+                            emitHash();
+                            break;
+                        default:
+                            MessageDigest target = depth == 0 ? digest : frames.get(depth - 1).digest;
+                            updateScalar(target, token, parser);
+                            finishValue();
+                    }
+                }
+            }
+            if (result == null || depth != 0) throw new IOException("Incomplete document.");
+            return result;
+        }
+
+        private Frame push(boolean object) {
+            if (frames.size() == depth) frames.add(new Frame());
+            Frame frame = frames.get(depth++);
+            frame.object = object;
+            frame.count = 0;
+            frame.digest.reset();
+            return frame;
+        }
+
+        /**
+         * Adds the hash of the array or object that has just been finished to the enclosing array or object member.
+         */
+        private void emitHash() throws DigestException {
+            MessageDigest target = depth == 0 ? digest : frames.get(depth - 1).digest;
+            target.update(HASH);
+            target.update(valueHash);
+            finishValue();
+        }
+
+        /**
+         * Finishes the current object member (or the document, if the value was the root value).
+         */
+        private void finishValue() throws DigestException {
+            if (depth == 0) {
+                if (result != null) throw new DigestException("Multiple documents.");
+                result = digest.digest();
+                return;
+            }
+            Frame frame = frames.get(depth - 1);
+            frame.count++;
+            if (frame.object) {
+                frame.digest.digest(frame.nextMember(), 0, HASH_LENGTH);
+            }
+        }
+
+        private void updateScalar(MessageDigest digest, JsonToken token, JsonParser parser) throws IOException {
+            switch (token) {
+                case VALUE_STRING:
+                    digest.update(STRING);
+                    updateChars(digest, parser);
+                    break;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    updateNumber(digest, parser);
+                    break;
+                case VALUE_TRUE:
+                    digest.update(TRUE);
+                    break;
+                case VALUE_FALSE:
+                    digest.update(FALSE);
+                    break;
+                case VALUE_NULL:
+                    digest.update(NULL);
+                    break;
+                default:
+                    // embedded objects are not part of JSON or YAML documents
+                    throw new IOException("Unsupported token: " + token);
+            }
+        }
+
+        private void updateNumber(MessageDigest digest, JsonParser parser) throws IOException {
+            JsonParser.NumberType type = parser.getNumberType();
+            if (type == JsonParser.NumberType.INT || type == JsonParser.NumberType.LONG) {
+                digest.update(INTEGER);
+                updateLong(digest, parser.getLongValue());
+                return;
+            }
+            BigDecimal value;
+            if (type == JsonParser.NumberType.BIG_INTEGER) {
+                value = new BigDecimal(parser.getBigIntegerValue());
+            } else {
+                try {
+                    value = parser.getDecimalValue().stripTrailingZeros();
+                } catch (NumberFormatException e) {
+                    // NaN or infinity (YAML)
+                    digest.update(DECIMAL);
+                    updateChars(digest, parser);
+                    return;
+                }
+            }
+            // integral values are hashed like integers, so that 1 and 1.0 are equal
+            if (value.scale() <= 0 && value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0) {
+                digest.update(INTEGER);
+                updateLong(digest, value.longValueExact());
+                return;
+            }
+            byte[] unscaled = value.unscaledValue().toByteArray();
+            digest.update(DECIMAL);
+            updateLong(digest, value.scale());
+            updateLong(digest, unscaled.length);
+            digest.update(unscaled);
+        }
+
+        /**
+         * Hashes the text of the current token (UTF-16 code units, length-prefixed) without creating a string.
+         */
+        private void updateChars(MessageDigest digest, JsonParser parser) throws IOException {
+            char[] text = parser.getTextCharacters();
+            int offset = parser.getTextOffset();
+            int length = parser.getTextLength();
+            updateLong(digest, length);
+            for (int start = 0; start < length; start += chars.length / 2) {
+                int end = Math.min(length, start + chars.length / 2);
+                int n = 0;
+                for (int i = start; i < end; i++) {
+                    char c = text[offset + i];
+                    chars[n++] = (byte) (c >> 8);
+                    chars[n++] = (byte) c;
+                }
+                digest.update(chars, 0, n);
+            }
+        }
+    }
+
+    /**
+     * State of an array or object that is currently hashed.
+     */
+    private static class Frame {
+        /**
+         * Digest of the array, or of the current member of the object.
+         */
+        private final MessageDigest digest = Hashing.sha256();
+        private boolean object;
+        private int count;
+
+        /**
+         * Hashes of the members of the object (the first count entries), kept for the next object on this level.
+         */
+        private byte[][] members = new byte[8][];
+
+        /**
+         * Returns the array that the hash of the member that has just been finished (the count-th one) is written to.
+         */
+        private byte[] nextMember() {
+            int index = count - 1;
+            if (index == members.length) members = Arrays.copyOf(members, members.length * 2);
+            if (members[index] == null) members[index] = new byte[HASH_LENGTH];
+            return members[index];
+        }
+
+        /**
+         * Updates the given digest with the member hashes in sorted order (the same members in a different order
+         * result in the same sequence).
+         */
+        private void updateMembers(MessageDigest digest) {
+            Arrays.sort(members, 0, count, Arrays::compareUnsigned);
+            for (int i = 0; i < count; i++) digest.update(members[i]);
+        }
+    }
+
+    private static void updateLong(MessageDigest digest, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) digest.update((byte) (value >>> shift));
+    }
+}
@@ -1,7 +1,16 @@
 package i5.las2peer.services.apiTestingBot.util;
 
-import org.openapitools.openapidiff.core.OpenApiCompare;
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.Paths;
 import org.openapitools.openapidiff.core.model.ChangedOpenApi;
+import org.openapitools.openapidiff.core.model.ChangedOperation;
+import org.openapitools.openapidiff.core.model.Endpoint;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Util class for creating messages that describe OpenAPI document changes.
@@ -16,8 +25,38 @@ public class OpenAPIUtils {
      * @return Chat message that describes the differences between the given OpenAPI documents.
      */
     public static String getDiffDescriptionMessage(String openAPIDocOld, String openAPIDocUpdated, String messenger) {
+        return renderDiff(OpenAPIUtils.getDocDifferences(openAPIDocOld, openAPIDocUpdated), messenger);
+    }
+
+    /**
+     * Creates a chat message that describes the changes between the given OpenAPI documents, if there are any.
+     * The documents are only parsed and compared once. Documents that are identical or only differ in formatting or
+     * key order are detected by their content before any parsing happens.
+     * @param openAPIDocOld Old OpenAPI document.
+     * @param openAPIDocUpdated Updated OpenAPI document.
+     * @param messenger Messenger for which the message should be generated.
+     * @return Chat message that describes the changes, or null if the given OpenAPI document is unchanged.
+     */
+    public static String getChangesMessage(String openAPIDocOld, String openAPIDocUpdated, String messenger) {
+        if(contentUnchanged(openAPIDocOld, openAPIDocUpdated)) return null;
+
         ChangedOpenApi diff = OpenAPIUtils.getDocDifferences(openAPIDocOld, openAPIDocUpdated);
+        if(diff.isUnchanged()) return null;
+        return renderDiff(diff, messenger);
+    }
+
+    /**
+     * Checks if the given OpenAPI documents are identical, either byte by byte or canonically (same JSON/YAML content,
+     * independent of formatting and key order).
+     * @param openAPIDocOld Old OpenAPI document.
+     * @param openAPIDocUpdated Updated OpenAPI document.
+     * @return Whether the given OpenAPI documents have the same content.
+     */
+    public static boolean contentUnchanged(String openAPIDocOld, String openAPIDocUpdated) {
+        return OpenAPIFingerprint.sameContent(openAPIDocOld, openAPIDocUpdated);
+    }
 
+    private static String renderDiff(ChangedOpenApi diff, String messenger) {
         if(messenger.equals("RocketChat")) {
             return new RocketChatRender().render(diff);
         }
@@ -25,23 +64,122 @@ public class OpenAPIUtils {
     }
 
     /**
-     * Checks if the given OpenAPI document is unchanged.
+     * Returns the operations that have been added or changed in the updated OpenAPI document (i.e., the operations
+     * that tests can be generated for), ranked by relevance: new operations before changed ones.
+     * Each operation comes with a pair of OpenAPI documents that only contain this operation.
+     *
      * @param openAPIDocOld Old OpenAPI document.
      * @param openAPIDocUpdated Updated OpenAPI document.
-     * @return Whether the given OpenAPI document is unchanged.
+     * @return Added and changed operations, ranked by relevance.
      */
-    public static boolean docUnchanged(String openAPIDocOld, String openAPIDocUpdated) {
-        return OpenAPIUtils.getDocDifferences(openAPIDocOld, openAPIDocUpdated).isUnchanged();
+    public static List<OperationChange> getChangedOperations(String openAPIDocOld, String openAPIDocUpdated) {
+        ChangedOpenApi diff = OpenAPIUtils.getDocDifferences(openAPIDocOld, openAPIDocUpdated);
+        List<OperationChange> operations = new ArrayList<>();
+        for(Endpoint endpoint : diff.getNewEndpoints()) {
+            operations.add(new OperationChange(endpoint.getMethod(), endpoint.getPathUrl(), true,
+                    diff.getOldSpecOpenApi(), diff.getNewSpecOpenApi()));
+        }
+        for(ChangedOperation operation : diff.getChangedOperations()) {
+            operations.add(new OperationChange(operation.getHttpMethod(), operation.getPathUrl(), false,
+                    diff.getOldSpecOpenApi(), diff.getNewSpecOpenApi()));
+        }
+        return operations;
+    }
+
+    /**
+     * Creates a copy of the given OpenAPI document that only contains the given operation (and all components).
+     *
+     * @param openAPI OpenAPI document
+     * @param path Path of the operation
+     * @param method Method of the operation
+     * @return OpenAPI document (JSON) that only contains the given operation (no operation at all if the given
+     * document does not contain it).
+     */
+    private static String scopeToOperation(OpenAPI openAPI, String path, PathItem.HttpMethod method) {
+        OpenAPI scoped = new OpenAPI()
+                .openapi(openAPI.getOpenapi())
+                .info(openAPI.getInfo())
+                .servers(openAPI.getServers())
+                .security(openAPI.getSecurity())
+                .tags(openAPI.getTags())
+                .components(openAPI.getComponents())
+                .paths(new Paths());
+
+        PathItem pathItem = openAPI.getPaths() == null ? null : openAPI.getPaths().get(path);
+        Operation operation = pathItem == null ? null : pathItem.readOperationsMap().get(method);
+        if(operation != null) {
+            PathItem scopedPathItem = new PathItem()
+                    .parameters(pathItem.getParameters())
+                    .servers(pathItem.getServers());
+            scopedPathItem.operation(method, operation);
+            scoped.getPaths().addPathItem(path, scopedPathItem);
+        }
+        return Json.pretty(scoped);
     }
 
     /**
      * Calculates the differences between the two given OpenAPI documents.
+     * Only the operations whose fingerprints differ are compared in detail (see {@link OperationDiffEngine}).
      * @param openAPIDocOld Old OpenAPI document.
      * @param openAPIDocUpdated Updated OpenAPI document.
      * @return Differences between the two given OpenAPI documents.
      */
     private static ChangedOpenApi getDocDifferences(String openAPIDocOld, String openAPIDocUpdated) {
-        return OpenApiCompare.fromContents(openAPIDocOld, openAPIDocUpdated);
+        return OperationDiffEngine.diff(openAPIDocOld, openAPIDocUpdated);
+    }
+
+    /**
+     * Operation that has been added or changed in an updated OpenAPI document.
+     */
+    public static class OperationChange {
+        private final PathItem.HttpMethod method;
+        private final String path;
+        private final boolean added;
+        private final OpenAPI openAPIOld;
+        private final OpenAPI openAPIUpdated;
+
+        private OperationChange(PathItem.HttpMethod method, String path, boolean added, OpenAPI openAPIOld,
+                                OpenAPI openAPIUpdated) {
+            this.method = method;
+            this.path = path;
+            this.added = added;
+            this.openAPIOld = openAPIOld;
+            this.openAPIUpdated = openAPIUpdated;
+        }
+
+        public PathItem.HttpMethod getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return Whether the operation is new (otherwise it has been changed).
+         */
+        public boolean isAdded() {
+            return added;
+        }
+
+        /**
+         * @return Old OpenAPI document (JSON) that only contains this operation (or no operation if it is new).
+         */
+        public String getScopedDocOld() {
+            return scopeToOperation(openAPIOld, path, method);
+        }
+
+        /**
+         * @return Updated OpenAPI document (JSON) that only contains this operation.
+         */
+        public String getScopedDocUpdated() {
+            return scopeToOperation(openAPIUpdated, path, method);
+        }
+
+        @Override
+        public String toString() {
+            return method + " " + path;
+        }
     }
 
 }
@@ -0,0 +1,247 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.swagger.parser.OpenAPIParser;
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.Paths;
+import io.swagger.v3.parser.core.models.ParseOptions;
+import org.openapitools.openapidiff.core.OpenApiCompare;
+import org.openapitools.openapidiff.core.model.ChangedOpenApi;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes the differences between two OpenAPI documents operation by operation.
+ *
+ * First, a fingerprint is computed for every operation of both documents. The fingerprint covers the method, the
+ * path, the operation itself (parameters, request body, responses, ...), the parameters of its path item, all
+ * components that the operation references (transitively) and the document-wide info, servers and security
+ * requirements (which apply to every operation). The detailed comparison (openapi-diff) is then only
+ * executed for the operations whose fingerprints differ (added, removed or changed operations), i.e., on documents
+ * that only contain these operations. If a pull request touches a single operation of a large document, only this
+ * operation is compared in detail.
+ *
+ * Fingerprints are canonical: object properties and map entries are serialized in sorted order, so that reordering
+ * the keys of a document does not change them.
+ */
+public class OperationDiffEngine {
+
+    private static final Pattern COMPONENT_REF = Pattern.compile("\"\\$ref\"\\s*:\\s*\"#/components/([^/\"]+)/([^\"]+)\"");
+
+    private static final ObjectMapper CANONICAL_MAPPER = canonicalMapper();
+
+    /**
+     * Calculates the differences between the two given OpenAPI documents.
+     *
+     * @param openAPIDocOld Old OpenAPI document.
+     * @param openAPIDocUpdated Updated OpenAPI document.
+     * @return Differences between the operations of the two given OpenAPI documents.
+     */
+    public static ChangedOpenApi diff(String openAPIDocOld, String openAPIDocUpdated) {
+        OpenAPI openAPIOld = parse(openAPIDocOld);
+        OpenAPI openAPIUpdated = parse(openAPIDocUpdated);
+
+        Map<String, String> fingerprintsOld = fingerprints(openAPIOld);
+        Map<String, String> fingerprintsUpdated = fingerprints(openAPIUpdated);
+
+        // operations that have been added, removed or changed
+        Set<String> differing = new HashSet<>();
+        for (Map.Entry<String, String> entry : fingerprintsUpdated.entrySet()) {
+            if (!entry.getValue().equals(fingerprintsOld.get(entry.getKey()))) differing.add(entry.getKey());
+        }
+        for (String operation : fingerprintsOld.keySet()) {
+            if (!fingerprintsUpdated.containsKey(operation)) differing.add(operation);
+        }
+
+        return OpenApiCompare.fromSpecifications(retainOperations(openAPIOld, differing),
+                retainOperations(openAPIUpdated, differing));
+    }
+
+    /**
+     * Returns whether the operations of the two given OpenAPI documents are equal (without detailed comparison).
+     *
+     * @param openAPIDocOld Old OpenAPI document.
+     * @param openAPIDocUpdated Updated OpenAPI document.
+     * @return Whether the fingerprints of all operations are equal.
+     */
+    public static boolean operationsUnchanged(String openAPIDocOld, String openAPIDocUpdated) {
+        return fingerprints(parse(openAPIDocOld)).equals(fingerprints(parse(openAPIDocUpdated)));
+    }
+
+    /**
+     * Computes the fingerprints of all operations of the given OpenAPI document.
+     *
+     * @param openAPI OpenAPI document
+     * @return Fingerprint (hex-encoded SHA-256) per operation (key: [METHOD] [PATH]).
+     */
+    public static Map<String, String> fingerprints(OpenAPI openAPI) {
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        if (openAPI == null || openAPI.getPaths() == null) return fingerprints;
+
+        // canonical JSON per component, every component is serialized at most once
+        Map<String, String> componentJson = new HashMap<>();
+        Map<String, Object> components = components(openAPI);
+        // part of every fingerprint, e.g., a changed server or global security requirement affects all operations
+        String documentJson = toJson(Arrays.asList(openAPI.getInfo(), openAPI.getServers(), openAPI.getSecurity()));
+
+        for (Map.Entry<String, PathItem> path : openAPI.getPaths().entrySet()) {
+            PathItem pathItem = path.getValue();
+            String pathParameters = pathItem.getParameters() == null ? "" : toJson(pathItem.getParameters());
+            for (Map.Entry<PathItem.HttpMethod, Operation> operation : pathItem.readOperationsMap().entrySet()) {
+                String key = operation.getKey() + " " + path.getKey();
+                String operationJson = toJson(operation.getValue());
+
+                MessageDigest digest = Hashing.sha256();
+                update(digest, key);
+                update(digest, documentJson);
+                update(digest, pathParameters);
+                update(digest, operationJson);
+                // referenced components in sorted order (transitively)
+                for (String ref : referencedComponents(pathParameters + operationJson, components, componentJson)) {
+                    update(digest, ref);
+                    update(digest, componentJson.get(ref));
+                }
+                fingerprints.put(key, Hashing.toHex(digest.digest()));
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Returns a copy of the given OpenAPI document that only contains the given operations (and all components).
+     */
+    private static OpenAPI retainOperations(OpenAPI openAPI, Set<String> operations) {
+        OpenAPI retained = new OpenAPI()
+                .openapi(openAPI.getOpenapi())
+                .info(openAPI.getInfo())
+                .servers(openAPI.getServers())
+                .security(openAPI.getSecurity())
+                .tags(openAPI.getTags())
+                .components(openAPI.getComponents())
+                .extensions(openAPI.getExtensions())
+                .paths(new Paths());
+        if (openAPI.getPaths() == null) return retained;
+
+        for (Map.Entry<String, PathItem> path : openAPI.getPaths().entrySet()) {
+            PathItem pathItem = path.getValue();
+            PathItem retainedPathItem = null;
+            for (Map.Entry<PathItem.HttpMethod, Operation> operation : pathItem.readOperationsMap().entrySet()) {
+                if (!operations.contains(operation.getKey() + " " + path.getKey())) continue;
+                if (retainedPathItem == null) {
+                    retainedPathItem = new PathItem()
+                            .summary(pathItem.getSummary())
+                            .description(pathItem.getDescription())
+                            .parameters(pathItem.getParameters())
+                            .servers(pathItem.getServers());
+                    retained.getPaths().addPathItem(path.getKey(), retainedPathItem);
+                }
+                retainedPathItem.operation(operation.getKey(), operation.getValue());
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Returns the references of all components that the given JSON references (transitively), in sorted order.
+     */
+    private static Set<String> referencedComponents(String json, Map<String, Object> components,
+                                                    Map<String, String> componentJson) {
+        Set<String> refs = new TreeSet<>();
+        List<String> pending = new ArrayList<>();
+        collectRefs(json, refs, pending);
+        while (!pending.isEmpty()) {
+            String ref = pending.remove(pending.size() - 1);
+            String refJson = componentJson.computeIfAbsent(ref, r -> {
+                Object component = components.get(r);
+                // unknown components are only identified by their reference
+                return component == null ? "" : toJson(component);
+            });
+            collectRefs(refJson, refs, pending);
+        }
+        return refs;
+    }
+
+    private static void collectRefs(String json, Set<String> refs, List<String> pending) {
+        Matcher matcher = COMPONENT_REF.matcher(json);
+        while (matcher.find()) {
+            String ref = matcher.group(1) + "/" + matcher.group(2);
+            if (refs.add(ref)) pending.add(ref);
+        }
+    }
+
+    /**
+     * Returns all components of the given OpenAPI document (key: [COMPONENT TYPE]/[NAME], e.g., schemas/Pet).
+     */
+    private static Map<String, Object> components(OpenAPI openAPI) {
+        Map<String, Object> components = new HashMap<>();
+        if (openAPI.getComponents() == null) return components;
+        addComponents(components, "schemas", openAPI.getComponents().getSchemas());
+        addComponents(components, "responses", openAPI.getComponents().getResponses());
+        addComponents(components, "parameters", openAPI.getComponents().getParameters());
+        addComponents(components, "examples", openAPI.getComponents().getExamples());
+        addComponents(components, "requestBodies", openAPI.getComponents().getRequestBodies());
+        addComponents(components, "headers", openAPI.getComponents().getHeaders());
+        addComponents(components, "securitySchemes", openAPI.getComponents().getSecuritySchemes());
+        addComponents(components, "links", openAPI.getComponents().getLinks());
+        addComponents(components, "callbacks", openAPI.getComponents().getCallbacks());
+        return components;
+    }
+
+    private static void addComponents(Map<String, Object> components, String type, Map<String, ?> byName) {
+        if (byName == null) return;
+        byName.forEach((name, component) -> components.put(type + "/" + name, component));
+    }
+
+    /**
+     * Swagger's mapper (with its serializers for the OpenAPI model) that serializes properties and map entries in
+     * sorted order.
+     */
+    private static ObjectMapper canonicalMapper() {
+        ObjectMapper mapper = Json.mapper().copy();
+        mapper.setConfig(mapper.getSerializationConfig()
+                .with(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+                .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS));
+        return mapper;
+    }
+
+    private static OpenAPI parse(String openAPIDoc) {
+        ParseOptions options = new ParseOptions();
+        options.setResolve(true);
+        // also reads (and converts) Swagger 2.0 documents, like openapi-diff does
+        OpenAPI openAPI = new OpenAPIParser().readContents(openAPIDoc, null, options).getOpenAPI();
+        if (openAPI == null) throw new IllegalArgumentException("Cannot parse OpenAPI document.");
+        return openAPI;
+    }
+
+    private static String toJson(Object object) {
+        try {
+            return CANONICAL_MAPPER.writeValueAsString(object);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // separator, so that the boundaries of the values are part of the fingerprint
+        digest.update((byte) 0);
+    }
+}
@@ -5,21 +5,24 @@ import i5.las2peer.api.logging.MonitoringEvent;
 import i5.las2peer.apiTestModel.*;
 import i5.las2peer.services.apiTestingBot.APITestingBot;
 import i5.las2peer.services.apiTestingBot.chat.GHMessageHandler;
-import org.apache.commons.io.IOUtils;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 import org.kohsuke.github.GHArtifact;
-import org.kohsuke.github.GHRepository;
-import org.kohsuke.github.GHWorkflowRun;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class PRTestGenHelper {
 
@@ -39,20 +42,73 @@ public class PRTestGenHelper {
      */
     private static final String OPENAPI_DOC_FILE_NAME = "swagger.json";
 
+    public static final int DEFAULT_TEST_GEN_MAX_OPERATIONS = 10;
+    public static final int DEFAULT_TEST_GEN_CONCURRENCY_PER_REPO = 4;
+    public static final int DEFAULT_TEST_GEN_TIMEOUT_SECONDS = 120;
+
+    /**
+     * Stores the test cases that have been generated for the GitHub pull requests.
+     * This store is needed, because the users can ask the bot to generate the test case code.
+     * Then, the bot needs to remember which test cases got suggested previously.
+     */
+    private static final GeneratedTestCaseStore generatedTestCases = new GeneratedTestCaseStore();
+
+    /**
+     * Makes sure that only the workflow runs of the newest commit of a pull request are handled.
+     */
+    private static final PullRequestJobCoalescer jobCoalescer = new PullRequestJobCoalescer();
+
+    /**
+     * Cache for the OpenAPI docs of the workflow run artifacts (null if caching is disabled).
+     */
+    private static ArtifactCache artifactCache;
+
     /**
-     * Stores the latest test case that has been generated for a GitHub pull request.
-     * The key is [OWNER]/[REPO NAME]#[PR NUMBER].
-     * This map is needed, because the users can ask the bot to generate the test case code.
-     * Then, the bot needs to remember which test case got suggested previously.
+     * Extracts the OpenAPI doc from the downloaded artifacts (with size limits).
      */
-    public static HashMap<String, TestCase> generatedTestCases = new HashMap<>();
+    private static ArtifactExtractor artifactExtractor = new ArtifactExtractor(
+            ArtifactExtractor.DEFAULT_MAX_COMPRESSED_BYTES, ArtifactExtractor.DEFAULT_MAX_UNCOMPRESSED_BYTES);
+
+    /**
+     * Results of the test generation per pair of OpenAPI docs.
+     */
+    private static TestGenResultCache testGenResultCache = new TestGenResultCache(
+            TestGenResultCache.DEFAULT_MAX_ENTRIES, null, TestGenResultCache.DEFAULT_MAX_DISK_ENTRIES);
+
+    /**
+     * Loads the OpenAPI docs of the PR base and head in parallel.
+     */
+    private static IOTaskExecutor ioTaskExecutor = new IOTaskExecutor("artifact-download",
+            IOTaskExecutor.DEFAULT_THREADS, IOTaskExecutor.DEFAULT_TIMEOUT_SECONDS);
+
+    /**
+     * Maximum number of added or changed operations per event that test cases are generated for.
+     */
+    private static int testGenMaxOperations = DEFAULT_TEST_GEN_MAX_OPERATIONS;
+
+    /**
+     * Maximum number of concurrent test generation calls per repository.
+     */
+    private static int testGenConcurrencyPerRepo = DEFAULT_TEST_GEN_CONCURRENCY_PER_REPO;
+
+    /**
+     * Time (in seconds) that the test generation for all operations of an event may take.
+     */
+    private static int testGenTimeoutSeconds = DEFAULT_TEST_GEN_TIMEOUT_SECONDS;
+
+    /**
+     * Limits the number of concurrent test generation calls per repository (key: repository full name).
+     * A limit is removed as soon as no event of the repository uses it and none of its permits are held.
+     */
+    private static final Map<String, RepoLimit> testGenRepoLimits = new ConcurrentHashMap<>();
 
     private static String BOT_COMMAND_OVERVIEW = "---\n\n" +
                                                  "<details>\n" +
                                                  "<summary>Testing Bot commands</summary>\n" +
                                                  "<br />\n\n" +
                                                  "You can use the following commands:\n" +
-                                                 "- `@testingbot code` will generate the code for the test case\n" +
+                                                 "- `@testingbot code` will generate the code for the latest test case\n" +
+                                                 "- `@testingbot code #[number]` will generate the code for the test case with the given number\n" +
                                                  "</details>";
 
     /**
@@ -73,35 +129,138 @@ public class PRTestGenHelper {
         JSONObject workflowRun = (JSONObject) eventPayload.get("workflow_run");
         long workflowRunId = (Long) workflowRun.get("id");
 
-        // check if workflow run of PR contains OpenAPI doc as an artifact
-        if(!containsSwaggerArtifact(repoFullName, workflowRunId, gitHubAppId, gitHubAppPrivateKey)) return;
-
         // get pull request
         JSONObject pullRequest = (JSONObject) ((JSONArray) workflowRun.get("pull_requests")).get(0);
+        String channel = repoFullName + "#" + pullRequest.get("number");
 
-        // check if the latest workflow run on the base branch of the pull request contains OpenAPI doc as an artifact
-        long baseWorkflowRunId = getPRBaseWorkflowRunId(repoFullName, pullRequest, gitHubAppId, gitHubAppPrivateKey);
-        if(!containsSwaggerArtifact(repoFullName, baseWorkflowRunId, gitHubAppId, gitHubAppPrivateKey)) return;
+        // skip the event if a newer commit has been pushed to the PR (and cancel running jobs for older commits)
+        String prHeadSha = (String) ((JSONObject) pullRequest.get("head")).get("sha");
+        PullRequestJobCoalescer.Job job = jobCoalescer.register(channel, (String) workflowRun.get("head_sha"),
+                prHeadSha, (String) workflowRun.get("created_at"));
+        if(job == null) return;
 
-        // OpenAPI doc is given for both base branch and current PR state => load both files
-        String swaggerJson = getSwaggerJsonContent(getSwaggerJsonArtifact(repoFullName, workflowRunId, gitHubAppId, gitHubAppPrivateKey));
-        String swaggerJsonBase = getSwaggerJsonContent(getSwaggerJsonArtifact(repoFullName, baseWorkflowRunId, gitHubAppId, gitHubAppPrivateKey));
-        if(swaggerJson == null || swaggerJsonBase == null) return;
+        boolean posted = false;
+        try {
+            // repository, workflow runs and artifacts are only requested once while handling this event
+            WorkflowArtifactResolver artifacts;
+            try {
+                artifacts = new WorkflowArtifactResolver(GitHubAppHelper.getInstance(gitHubAppId, gitHubAppPrivateKey),
+                        repoFullName);
+            } catch (GitHubAppHelper.GitHubAppHelperException e) {
+                e.printStackTrace();
+                return;
+            }
 
-        String testGenServiceResult = callTestGenService(swaggerJson, swaggerJsonBase);
-        if(testGenServiceResult == null) return;
+            // check if workflow run of PR contains OpenAPI doc as an artifact
+            if(!containsSwaggerArtifact(artifacts, workflowRunId)) return;
 
-        JSONObject resultJSON = (JSONObject) JSONValue.parse(testGenServiceResult);
-        if(!resultJSON.containsKey("testCase")) return;
+            // other workflow runs of the same commit do not need to be handled
+            if(!jobCoalescer.claim(job)) return;
 
-        JSONObject testCaseJSON = (JSONObject) resultJSON.get("testCase");
-        String testCaseDescription = (String) resultJSON.get("description");
-        TestCase testCase = new TestCase(testCaseJSON);
+            // the OpenAPI docs of the base commit and the PR head are loaded in parallel
+            // (the doc of the base commit is usually cached already, because it is shared by all PRs against the branch)
+            String baseSha = (String) ((JSONObject) pullRequest.get("base")).get("sha");
+            String headSha = job.getHeadSha();
+            List<String> docs = ioTaskExecutor.invokeAll(List.of(
+                    () -> getHeadSwaggerJson(artifacts, repoFullName, headSha, workflowRunId),
+                    () -> getBaseSwaggerJson(artifacts, repoFullName, baseSha, pullRequest, job)
+            ), job::isCancelled);
+            if(docs == null) return;
+            String swaggerJson = docs.get(0);
+            String swaggerJsonBase = docs.get(1);
+            if(job.isCancelled()) return;
 
-        String channel = repoFullName + "#" + pullRequest.get("number");
-        postPRComment(channel, getTestCasePresentationComment(testCase, testCaseDescription), botManagerUrl);
+            // generate test cases for the added and changed operations (in parallel)
+            List<TestCaseCandidate> candidates = generateTestCases(repoFullName, swaggerJsonBase, swaggerJson, job);
+            if(candidates.isEmpty()) return;
+
+            // do not comment test cases for an outdated commit
+            if(job.isCancelled()) return;
+            for(TestCaseCandidate candidate : candidates) {
+                candidate.number = generatedTestCases.add(channel, candidate.testCase);
+            }
+            postPRComment(channel, getTestCasePresentationComment(candidates), botManagerUrl);
+            posted = true;
+        } finally {
+            // if no test cases were posted, another workflow run of the same commit may try again
+            jobCoalescer.finish(job, posted);
+        }
+    }
+
+    public static PullRequestJobCoalescer getJobCoalescer() {
+        return jobCoalescer;
+    }
+
+    /**
+     * Caches the OpenAPI docs that are downloaded from workflow run artifacts in the given cache.
+     *
+     * @param cache Artifact cache
+     */
+    public static void enableArtifactCache(ArtifactCache cache) {
+        artifactCache = cache;
+    }
 
-        generatedTestCases.put(channel, testCase);
+    public static ArtifactCache getArtifactCache() {
+        return artifactCache;
+    }
+
+    /**
+     * Sets the size limits for the artifacts that contain the OpenAPI docs.
+     *
+     * @param maxCompressedBytes Maximum size of a zipped artifact (in bytes).
+     * @param maxUncompressedBytes Maximum size of an OpenAPI doc (in bytes).
+     */
+    public static void setArtifactSizeLimits(long maxCompressedBytes, long maxUncompressedBytes) {
+        artifactExtractor = new ArtifactExtractor(maxCompressedBytes, maxUncompressedBytes);
+    }
+
+    /**
+     * Sets the limits for generating test cases for the operations of a pull request.
+     *
+     * @param maxOperations Maximum number of operations per event that test cases are generated for.
+     * @param concurrencyPerRepo Maximum number of concurrent test generation calls per repository.
+     * @param timeoutSeconds Time (in seconds) that the test generation for all operations of an event may take.
+     */
+    public static void setTestGenLimits(int maxOperations, int concurrencyPerRepo, int timeoutSeconds) {
+        if(maxOperations > 0) testGenMaxOperations = maxOperations;
+        if(concurrencyPerRepo > 0 && concurrencyPerRepo != testGenConcurrencyPerRepo) {
+            testGenConcurrencyPerRepo = concurrencyPerRepo;
+            testGenRepoLimits.clear();
+        }
+        if(timeoutSeconds > 0) testGenTimeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Caches the results of the test generation in the given cache.
+     *
+     * @param cache Test generation result cache
+     */
+    public static void setTestGenResultCache(TestGenResultCache cache) {
+        testGenResultCache = cache;
+    }
+
+    public static TestGenResultCache getTestGenResultCache() {
+        return testGenResultCache;
+    }
+
+    /**
+     * Sets the number of threads and the timeout for loading the OpenAPI docs of the PR base and head.
+     *
+     * @param threads Number of threads (shared by all events).
+     * @param timeoutSeconds Time (in seconds) that loading both OpenAPI docs may take.
+     */
+    public static void setArtifactDownloadLimits(int threads, int timeoutSeconds) {
+        IOTaskExecutor previous = ioTaskExecutor;
+        ioTaskExecutor = new IOTaskExecutor("artifact-download", threads, timeoutSeconds);
+        previous.shutdown();
+    }
+
+    public static IOTaskExecutor getIOTaskExecutor() {
+        return ioTaskExecutor;
+    }
+
+    public static GeneratedTestCaseStore getGeneratedTestCases() {
+        return generatedTestCases;
     }
 
     /**
@@ -130,6 +289,132 @@ public class PRTestGenHelper {
         return false;
     }
 
+    /**
+     * Generates test cases for the operations that have been added or changed between the given OpenAPI docs.
+     * The test generation service is called once per operation (with docs that only contain this operation). The
+     * calls are executed in parallel, but the number of concurrent calls per repository is limited. All calls share one
+     * deadline (including the time that they wait for a permit of the repository); calls that have not finished until
+     * then are cancelled.
+     *
+     * @param repoFullName Full name of repository
+     * @param swaggerJsonBase OpenAPI doc of PR base branch
+     * @param swaggerJson Latest OpenAPI doc of PR
+     * @param job Job of the current event
+     * @return Generated test cases, ranked (test cases for new operations first).
+     */
+    private static List<TestCaseCandidate> generateTestCases(String repoFullName, String swaggerJsonBase,
+                                                             String swaggerJson, PullRequestJobCoalescer.Job job) {
+        // nothing to compare if the docs only differ in formatting or key order
+        if(OpenAPIUtils.contentUnchanged(swaggerJsonBase, swaggerJson)) return new ArrayList<>();
+
+        List<OpenAPIUtils.OperationChange> operations;
+        try {
+            operations = OpenAPIUtils.getChangedOperations(swaggerJsonBase, swaggerJson);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+        if(operations.size() > testGenMaxOperations) operations = operations.subList(0, testGenMaxOperations);
+
+        RepoLimit repoLimit = testGenRepoLimits.compute(repoFullName, (k, limit) -> {
+            if(limit == null) limit = new RepoLimit(testGenConcurrencyPerRepo);
+            limit.events++;
+            return limit;
+        });
+        try {
+            return generateTestCases(repoFullName, operations, repoLimit, job);
+        } finally {
+            testGenRepoLimits.computeIfPresent(repoFullName, (k, limit) -> {
+                if(limit == repoLimit) limit.events--;
+                return limit.isUnused() ? null : limit;
+            });
+        }
+    }
+
+    /**
+     * Generates test cases for the given operations in parallel, using the given limit of the repository.
+     *
+     * @param repoFullName Full name of repository
+     * @param operations Ranked added or changed operations
+     * @param repoLimit Limit of the repository
+     * @param job Job of the current event
+     * @return Generated test cases, ranked (test cases for new operations first).
+     */
+    private static List<TestCaseCandidate> generateTestCases(String repoFullName,
+                                                             List<OpenAPIUtils.OperationChange> operations,
+                                                             RepoLimit repoLimit, PullRequestJobCoalescer.Job job) {
+        ExecutorService executor = Context.get().getExecutor();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(testGenTimeoutSeconds);
+        List<Future<TestCaseCandidate>> futures = new ArrayList<>();
+        for(OpenAPIUtils.OperationChange operation : operations) {
+            String scopedDocBase = operation.getScopedDocOld();
+            String scopedDoc = operation.getScopedDocUpdated();
+            try {
+                futures.add(executor.submit(() -> {
+                    if(job.isCancelled() || !repoLimit.permits.tryAcquire(deadline - System.nanoTime(),
+                            TimeUnit.NANOSECONDS)) return null;
+                    try {
+                        return job.isCancelled() ? null : generateTestCase(operation, scopedDocBase, scopedDoc);
+                    } finally {
+                        repoLimit.permits.release();
+                        testGenRepoLimits.computeIfPresent(repoFullName,
+                                (k, limit) -> limit.isUnused() ? null : limit);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+
+        // futures are in the order of the ranked operations
+        List<TestCaseCandidate> candidates = new ArrayList<>();
+        boolean timedOut = false;
+        for(Future<TestCaseCandidate> future : futures) {
+            if(timedOut) {
+                future.cancel(true);
+                continue;
+            }
+            try {
+                TestCaseCandidate candidate = future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if(candidate != null) candidates.add(candidate);
+            } catch (TimeoutException e) {
+                System.out.println("Test generation for " + repoFullName + " timed out, using finished test cases only.");
+                timedOut = true;
+                future.cancel(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                timedOut = true;
+                future.cancel(true);
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Generates a test case for a single operation.
+     *
+     * @param operation Added or changed operation
+     * @param scopedDocBase OpenAPI doc of PR base branch that only contains the operation
+     * @param scopedDoc Latest OpenAPI doc of PR that only contains the operation
+     * @return Generated test case, or null if no test case could be generated.
+     */
+    private static TestCaseCandidate generateTestCase(OpenAPIUtils.OperationChange operation, String scopedDocBase,
+                                                      String scopedDoc) {
+        // identical pairs of docs (e.g., re-runs or rebased PRs) are only sent to the test generation once
+        String testGenServiceResult = testGenResultCache.get(scopedDocBase, scopedDoc,
+                () -> callTestGenService(scopedDoc, scopedDocBase));
+        if(testGenServiceResult == null) return null;
+
+        JSONObject resultJSON = (JSONObject) JSONValue.parse(testGenServiceResult);
+        if(resultJSON == null || !resultJSON.containsKey("testCase")) return null;
+
+        JSONObject testCaseJSON = (JSONObject) resultJSON.get("testCase");
+        String testCaseDescription = (String) resultJSON.get("description");
+        return new TestCaseCandidate(operation, new TestCase(testCaseJSON), testCaseDescription);
+    }
+
     /**
      * Calls the method "openAPIDiffToTest" of the APITestGenService.
      *
@@ -165,22 +450,27 @@ public class PRTestGenHelper {
     }
 
     /**
-     * Creates a pull request comment text presenting the given test case.
+     * Creates a pull request comment text presenting the given test cases.
      *
-     * @param testCase Test case
-     * @param testCaseDescription Explanation why test case has been generated
-     * @return Pull request comment text presenting the given test case.
+     * @param candidates Generated test cases (ranked)
+     * @return Pull request comment text presenting the given test cases.
      */
-    private static String getTestCasePresentationComment(TestCase testCase, String testCaseDescription) {
-        // explain why test case has been generated and give test case name
-        String message = "I have generated the following test case:\n";
-        message += testCaseDescription;
-        message += "\n\n";
-        message += "" + testCase.getName() + "\n---\n";
+    private static String getTestCasePresentationComment(List<TestCaseCandidate> candidates) {
+        String message = candidates.size() == 1 ? "I have generated the following test case:\n"
+                : "I have generated the following " + candidates.size() + " test cases:\n";
 
-        // show request method and path
-        TestRequest request = testCase.getRequests().get(0);
-        message += GHMessageHandler.getGitHubTestDescription(request);
+        for(TestCaseCandidate candidate : candidates) {
+            // explain why test case has been generated and give test case name
+            message += "\n#" + candidate.number + " (" + (candidate.operation.isAdded() ? "new" : "changed")
+                    + " operation `" + candidate.operation + "`): " + candidate.description;
+            message += "\n\n";
+            message += "" + candidate.testCase.getName() + "\n---\n";
+
+            // show request method and path
+            TestRequest request = candidate.testCase.getRequests().get(0);
+            message += GHMessageHandler.getGitHubTestDescription(request);
+            message += "\n";
+        }
 
         // append overview of available bot commands
         message += BOT_COMMAND_OVERVIEW;
@@ -191,40 +481,29 @@ public class PRTestGenHelper {
     /**
      * Checks if the workflow run with the given id contains an OpenAPI doc artifact.
      *
-     * @param repoFullName Full name of repository
+     * @param artifacts Artifact resolver of the current event
      * @param workflowRunId Id of GitHub actions workflow run
-     * @param gitHubAppId Id of GitHub app that the bot uses
-     * @param gitHubAppPrivateKey Private key of GitHub app that the bot uses
      * @return Whether the workflow run with the given id contains an OpenAPI doc artifact.
      */
-    private static boolean containsSwaggerArtifact(String repoFullName, long workflowRunId, int gitHubAppId, String gitHubAppPrivateKey) {
-        return getSwaggerJsonArtifact(repoFullName, workflowRunId, gitHubAppId, gitHubAppPrivateKey) != null;
+    private static boolean containsSwaggerArtifact(WorkflowArtifactResolver artifacts, long workflowRunId) {
+        return getSwaggerJsonArtifact(artifacts, workflowRunId) != null;
     }
 
     /**
      * Returns the id of the workflow run that belongs to the base branch of the given pull request.
      *
-     * @param repoFullName Full name of repository
+     * @param artifacts Artifact resolver of the current event
      * @param pullRequest Pull request info
-     * @param gitHubAppId Id of GitHub app that the bot uses
-     * @param gitHubAppPrivateKey Private key of GitHub app that the bot uses
      * @return Id of the workflow run that belongs to the base branch of the given pull request.
      */
-    private static long getPRBaseWorkflowRunId(String repoFullName, JSONObject pullRequest, int gitHubAppId, String gitHubAppPrivateKey) {
+    private static long getPRBaseWorkflowRunId(WorkflowArtifactResolver artifacts, JSONObject pullRequest) {
         JSONObject base = (JSONObject) pullRequest.get("base");
         String baseBranchName = (String) base.get("ref");
         String baseSHA = (String) base.get("sha");
 
         try {
-            GitHubAppHelper helper = new GitHubAppHelper(gitHubAppId, gitHubAppPrivateKey);
-            GHRepository gitHubRepo = helper.getGitHubInstance(repoFullName).getRepository(repoFullName);
-            List<GHWorkflowRun> runs = gitHubRepo.queryWorkflowRuns().branch(baseBranchName).list().toList();
-            for(GHWorkflowRun run : runs) {
-                if(run.getHeadSha().equals(baseSHA)) {
-                    return run.getId();
-                }
-            }
-        } catch (GitHubAppHelper.GitHubAppHelperException | IOException e) {
+            return artifacts.findWorkflowRunId(baseBranchName, baseSHA);
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return -1;
@@ -233,51 +512,156 @@ public class PRTestGenHelper {
     /**
      * Searches for the artifact of the given workflow run that contains the OpenAPI doc.
      *
-     * @param repoFullName Full name of repository
+     * @param artifacts Artifact resolver of the current event
      * @param workflowRunId Id of GitHub actions workflow run
-     * @param gitHubAppId Id of GitHub app that the bot uses
-     * @param gitHubAppPrivateKey Private key of GitHub app that the bot uses
      * @return Artifact of the given workflow run that contains the OpenAPI doc.
      */
-    private static GHArtifact getSwaggerJsonArtifact(String repoFullName, long workflowRunId, int gitHubAppId, String gitHubAppPrivateKey) {
+    private static GHArtifact getSwaggerJsonArtifact(WorkflowArtifactResolver artifacts, long workflowRunId) {
+        if(workflowRunId == -1) return null;
         try {
-            GitHubAppHelper helper = new GitHubAppHelper(gitHubAppId, gitHubAppPrivateKey);
-            GHRepository gitHubRepo = helper.getGitHubInstance(repoFullName).getRepository(repoFullName);
-            List<GHArtifact> artifacts = gitHubRepo.getWorkflowRun(workflowRunId).listArtifacts().toList();
-            for(GHArtifact artifact : artifacts) {
-                if(artifact.getName().equals(OPENAPI_DOC_ARTIFACT_NAME)) {
-                    return artifact;
-                }
-            }
-        } catch (GitHubAppHelper.GitHubAppHelperException | IOException e) {
+            return artifacts.getArtifact(workflowRunId, OPENAPI_DOC_ARTIFACT_NAME);
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return null;
     }
 
     /**
-     * Downloads the given artifact from GitHub, extracts it, and searches for the OpenAPI doc file.
+     * Returns the OpenAPI doc of the PR head (from the cache or from the artifact of the given workflow run).
+     *
+     * @param artifacts Artifact resolver of the current event
+     * @param repoFullName Full name of repository
+     * @param headSha Head commit of the PR
+     * @param workflowRunId Id of the workflow run of the head commit
+     * @return Content of OpenAPI doc file, or null if it is not available.
+     */
+    private static String getHeadSwaggerJson(WorkflowArtifactResolver artifacts, String repoFullName, String headSha,
+                                             long workflowRunId) {
+        String swaggerJson = getCachedSwaggerJson(repoFullName, headSha);
+        if(swaggerJson != null) return swaggerJson;
+        return downloadSwaggerJson(repoFullName, headSha, getSwaggerJsonArtifact(artifacts, workflowRunId));
+    }
+
+    /**
+     * Returns the OpenAPI doc of the PR base (from the cache or from the artifact of the latest workflow run of the
+     * base commit).
+     *
+     * @param artifacts Artifact resolver of the current event
+     * @param repoFullName Full name of repository
+     * @param baseSha Base commit of the PR
+     * @param pullRequest Pull request info
+     * @param job Job of the current event
+     * @return Content of OpenAPI doc file, or null if it is not available.
+     */
+    private static String getBaseSwaggerJson(WorkflowArtifactResolver artifacts, String repoFullName, String baseSha,
+                                             JSONObject pullRequest, PullRequestJobCoalescer.Job job) {
+        String swaggerJsonBase = getCachedSwaggerJson(repoFullName, baseSha);
+        if(swaggerJsonBase != null) return swaggerJsonBase;
+
+        // check if the latest workflow run on the base branch of the pull request contains OpenAPI doc as an artifact
+        long baseWorkflowRunId = getPRBaseWorkflowRunId(artifacts, pullRequest);
+        if(job.isCancelled()) return null;
+        if(!containsSwaggerArtifact(artifacts, baseWorkflowRunId)) return null;
+        if(job.isCancelled()) return null;
+        return downloadSwaggerJson(repoFullName, baseSha, getSwaggerJsonArtifact(artifacts, baseWorkflowRunId));
+    }
+
+    /**
+     * Returns the OpenAPI doc of the given commit from the artifact cache.
+     *
+     * @param repoFullName Full name of repository
+     * @param sha Commit SHA
+     * @return Content of OpenAPI doc file, or null if it is not cached.
+     */
+    private static String getCachedSwaggerJson(String repoFullName, String sha) {
+        return artifactCache == null ? null : artifactCache.get(repoFullName, sha);
+    }
+
+    /**
+     * Downloads the OpenAPI doc of the given commit from the given artifact and adds it to the artifact cache.
+     *
+     * @param repoFullName Full name of repository
+     * @param sha Commit SHA
+     * @param artifact Artifact from GitHub workflow run (of the given commit)
+     * @return Content of OpenAPI doc file, or null if the artifact does not contain it.
+     */
+    private static String downloadSwaggerJson(String repoFullName, String sha, GHArtifact artifact) {
+        ArtifactExtractor.Result result = extractSwaggerJson(artifact);
+        if(result == null) return null;
+        if(!result.isFound()) {
+            System.out.println("OpenAPI doc of " + repoFullName + "@" + sha + ": " + result.getStatus());
+            return null;
+        }
+        if(artifactCache != null) artifactCache.put(repoFullName, sha, result.getBytes(), result.getContentHash());
+        return result.getContent();
+    }
+
+    /**
+     * Downloads the given artifact from GitHub and extracts the OpenAPI doc file while the artifact is downloaded.
      *
      * @param artifact Artifact from GitHub workflow run
-     * @return Content of OpenAPI doc file
+     * @return Extraction result, or null if the artifact could not be downloaded.
      */
-    private static String getSwaggerJsonContent(GHArtifact artifact) {
+    private static ArtifactExtractor.Result extractSwaggerJson(GHArtifact artifact) {
+        if(artifact == null) return null;
+        ArtifactExtractor extractor = artifactExtractor;
+        // do not download artifacts that are too large anyway
+        if(!extractor.acceptsArtifactSize(artifact.getSizeInBytes())) {
+            System.out.println("Artifact " + artifact.getId() + " is too large (" + artifact.getSizeInBytes() + " bytes).");
+            return null;
+        }
         try {
-            return artifact.download(is -> {
-                ZipInputStream zipInputStream = new ZipInputStream(is);
-                // search for file
-                ZipEntry nextEntry = zipInputStream.getNextEntry();
-                while (nextEntry != null) {
-                    if (nextEntry.getName().equals(OPENAPI_DOC_FILE_NAME))
-                        break;
-                    nextEntry = zipInputStream.getNextEntry();
-                }
-                // return file content as String
-                return IOUtils.toString(zipInputStream, StandardCharsets.UTF_8);
-            });
+            return artifact.download(is -> extractor.extract(is, OPENAPI_DOC_FILE_NAME));
         } catch (IOException e) {
+            e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * Limit of the concurrent test generation calls of a repository.
+     */
+    private static class RepoLimit {
+        private final int concurrency;
+        private final Semaphore permits;
+
+        /**
+         * Number of events that currently generate test cases (only changed within testGenRepoLimits.compute).
+         */
+        private int events;
+
+        private RepoLimit(int concurrency) {
+            this.concurrency = concurrency;
+            this.permits = new Semaphore(concurrency);
+        }
+
+        /**
+         * @return Whether no event uses the limit and none of its permits are held (e.g., by cancelled test
+         * generation calls that are still running).
+         */
+        private boolean isUnused() {
+            return events == 0 && permits.availablePermits() == concurrency;
+        }
+    }
+
+    /**
+     * Test case that has been generated for an added or changed operation.
+     */
+    private static class TestCaseCandidate {
+        private final OpenAPIUtils.OperationChange operation;
+        private final TestCase testCase;
+        private final String description;
+
+        /**
+         * Number of the test case within the pull request (assigned when it is stored).
+         */
+        private int number;
+
+        private TestCaseCandidate(OpenAPIUtils.OperationChange operation, TestCase testCase, String description) {
+            this.operation = operation;
+            this.testCase = testCase;
+            this.description = description;
+        }
+    }
+
 }
@@ -0,0 +1,198 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces the workflow run events of a pull request, so that the test case generation is only executed for the
+ * newest head commit of the pull request.
+ *
+ * - Events for a commit that is no longer the newest one are skipped.
+ * - If a newer commit gets pushed, the jobs that are still running for older commits are cancelled. The jobs need to
+ *   check {@link Job#isCancelled()} between their stages (cooperative cancellation).
+ * - If multiple workflow runs exist for the same commit, only the first one that provides the OpenAPI doc artifact
+ *   continues (see {@link #claim(Job)}). If the claiming job does not finish successfully (e.g., because the artifact
+ *   could not be downloaded), the claim is released, so that a later workflow run (or re-run) of the commit is handled.
+ *
+ * The key of a pull request is [OWNER]/[REPO NAME]#[PR NUMBER].
+ */
+public class PullRequestJobCoalescer {
+
+    /**
+     * Number of tracked pull requests above which the idle ones are forgotten.
+     */
+    private static final int MAX_TRACKED_PULL_REQUESTS = 10000;
+
+    /**
+     * Time after which the state of a pull request without running jobs may be forgotten.
+     */
+    private static final long IDLE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final ConcurrentHashMap<String, PullRequestState> pullRequests = new ConcurrentHashMap<>();
+
+    private final AtomicLong coalescedEvents = new AtomicLong();
+    private final AtomicLong cancelledJobs = new AtomicLong();
+
+    /**
+     * Registers a job for a workflow run event of the given pull request.
+     *
+     * @param pullRequestKey [OWNER]/[REPO NAME]#[PR NUMBER]
+     * @param headSha        Commit that the workflow run was executed for.
+     * @param prHeadSha      Current head commit of the pull request (according to the event payload).
+     * @param createdAt      Creation time of the workflow run (ISO 8601).
+     * @return Job that should be executed, or null if the event is outdated or a duplicate.
+     */
+    public Job register(String pullRequestKey, String headSha, String prHeadSha, String createdAt) {
+        if (prHeadSha != null && !prHeadSha.equals(headSha)) {
+            // a newer commit has already been pushed to the pull request
+            coalescedEvents.incrementAndGet();
+            return null;
+        }
+
+        if (pullRequests.size() > MAX_TRACKED_PULL_REQUESTS) forgetIdlePullRequests();
+
+        String runCreatedAt = createdAt == null ? "" : createdAt;
+        Job[] job = {null};
+        pullRequests.compute(pullRequestKey, (key, state) -> {
+            if (state == null) state = new PullRequestState();
+            state.lastAccess = System.currentTimeMillis();
+
+            if (!headSha.equals(state.headSha)) {
+                // ISO 8601 timestamps (UTC) can be compared lexicographically
+                if (state.headSha != null && runCreatedAt.compareTo(state.createdAt) < 0) {
+                    // event of an older commit arrived late
+                    return state;
+                }
+                // newer commit => cancel the jobs of the previous commits
+                for (Job running : state.jobs) {
+                    if (!running.cancelled) {
+                        running.cancelled = true;
+                        cancelledJobs.incrementAndGet();
+                    }
+                }
+                state.jobs.clear();
+                state.headSha = headSha;
+                state.createdAt = runCreatedAt;
+                state.claimed = false;
+            } else if (state.claimed) {
+                // another workflow run of the same commit is already handled
+                return state;
+            }
+
+            job[0] = new Job(pullRequestKey, headSha);
+            state.jobs.add(job[0]);
+            return state;
+        });
+
+        if (job[0] == null) coalescedEvents.incrementAndGet();
+        return job[0];
+    }
+
+    /**
+     * Needs to be called by a job as soon as it knows that its workflow run provides the OpenAPI doc.
+     * Only one job per commit can claim the commit, the other ones should stop.
+     *
+     * @param job Job
+     * @return Whether the job should continue.
+     */
+    public boolean claim(Job job) {
+        boolean[] claimed = {false};
+        pullRequests.computeIfPresent(job.pullRequestKey, (key, state) -> {
+            if (!job.cancelled && job.headSha.equals(state.headSha) && !state.claimed) {
+                state.claimed = true;
+                job.claimed = true;
+                claimed[0] = true;
+            }
+            return state;
+        });
+        if (!claimed[0] && !job.cancelled) coalescedEvents.incrementAndGet();
+        return claimed[0];
+    }
+
+    /**
+     * Needs to be called when a job is finished (or has stopped).
+     *
+     * @param job       Job
+     * @param succeeded Whether the job has finished successfully. Otherwise, its claim of the commit is released.
+     */
+    public void finish(Job job, boolean succeeded) {
+        pullRequests.computeIfPresent(job.pullRequestKey, (key, state) -> {
+            state.jobs.remove(job);
+            if (!succeeded && job.claimed && job.headSha.equals(state.headSha)) state.claimed = false;
+            state.lastAccess = System.currentTimeMillis();
+            return state;
+        });
+    }
+
+    /**
+     * Returns the number of workflow run events that were skipped, because they were outdated or duplicates.
+     *
+     * @return Number of coalesced events.
+     */
+    public long getCoalescedEventCount() {
+        return coalescedEvents.get();
+    }
+
+    /**
+     * Returns the number of running jobs that were cancelled, because a newer commit was pushed.
+     *
+     * @return Number of cancelled jobs.
+     */
+    public long getCancelledJobCount() {
+        return cancelledJobs.get();
+    }
+
+    private void forgetIdlePullRequests() {
+        long minLastAccess = System.currentTimeMillis() - IDLE_MILLIS;
+        for (String key : pullRequests.keySet()) {
+            pullRequests.computeIfPresent(key, (k, state) ->
+                    state.jobs.isEmpty() && state.lastAccess < minLastAccess ? null : state);
+        }
+    }
+
+    /**
+     * Test case generation for a workflow run of a pull request.
+     */
+    public static class Job {
+        private final String pullRequestKey;
+        private final String headSha;
+        private volatile boolean cancelled = false;
+
+        /**
+         * Whether the job has claimed its commit. Only modified within ConcurrentHashMap.compute.
+         */
+        private boolean claimed = false;
+
+        private Job(String pullRequestKey, String headSha) {
+            this.pullRequestKey = pullRequestKey;
+            this.headSha = headSha;
+        }
+
+        /**
+         * Returns whether a newer commit has been pushed to the pull request, i.e., whether the job should stop.
+         *
+         * @return Whether the job has been cancelled.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public String getHeadSha() {
+            return headSha;
+        }
+    }
+
+    /**
+     * State of a pull request. Only modified within ConcurrentHashMap.compute.
+     */
+    private static class PullRequestState {
+        private String headSha;
+        private String createdAt = "";
+        private boolean claimed = false;
+        private final Set<Job> jobs = new HashSet<>();
+        private long lastAccess;
+    }
+}
@@ -0,0 +1,38 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which failed HTTP requests are retried and how long to wait before the next attempt.
+ *
+ * Responses with status 5xx, 408 and 429 are retried, other responses would fail again. The backoff grows
+ * exponentially with the attempt (up to a maximum) and has jitter, i.e., a random delay between half and the full
+ * backoff is used, so that clients that failed at the same time do not retry at the same time.
+ */
+public class RetryPolicy {
+
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    /**
+     * @param baseBackoffMillis Backoff after the first attempt (in milliseconds).
+     * @param maxBackoffMillis  Maximum backoff (in milliseconds).
+     */
+    public RetryPolicy(long baseBackoffMillis, long maxBackoffMillis) {
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public static boolean isRetryable(int status) {
+        return status >= 500 || status == 408 || status == 429;
+    }
+
+    /**
+     * @param attempt Number of the attempt that failed (starting with 1).
+     * @return Time to wait before the next attempt (in milliseconds).
+     */
+    public long backoffMillis(int attempt) {
+        long cap = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+    }
+}
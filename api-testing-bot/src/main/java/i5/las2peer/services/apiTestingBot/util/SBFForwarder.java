@@ -0,0 +1,239 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import kong.unirest.Config;
+import kong.unirest.Empty;
+import kong.unirest.HttpResponse;
+import kong.unirest.UnirestInstance;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards the webhook events of the GitHub app to the SBF.
+ *
+ * The events are sent asynchronously using an own HTTP client with a connection pool (keep-alive connections) and
+ * timeouts, so that a slow SBF does not block the handling of further events. Failed deliveries (connection errors,
+ * timeouts, 5xx, 408 and 429 responses) are retried with exponential backoff and jitter. If an event cannot be
+ * delivered, it is written to a dead-letter spool directory. Spooled events are delivered again when the forwarder
+ * is created (i.e., after a restart).
+ * Events that the SBF rejects with another 4xx response would be rejected again, so they are not retried and are
+ * written to the subdirectory {@link #REJECTED_DIRECTORY} of the spool instead, which is never delivered again
+ * automatically (only kept for inspection).
+ */
+public class SBFForwarder {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_TIMEOUT_SECONDS = 10;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    /**
+     * Subdirectory of the dead-letter directory that rejected events are written to.
+     */
+    public static final String REJECTED_DIRECTORY = "rejected";
+
+    private static final RetryPolicy RETRY_POLICY = new RetryPolicy(500, TimeUnit.SECONDS.toMillis(30));
+
+    private final UnirestInstance unirest;
+    private final int maxAttempts;
+
+    /**
+     * Directory that undeliverable events are written to (null if they should only be logged).
+     */
+    private final Path deadLetterDirectory;
+
+    private final ScheduledExecutorService retryScheduler;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    /**
+     * @param maxConnections      Maximum number of (keep-alive) connections to the SBF.
+     * @param timeoutSeconds      Connect and socket timeout (in seconds).
+     * @param maxAttempts         Maximum number of delivery attempts per event.
+     * @param deadLetterDirectory Directory that undeliverable events are written to (null or empty to disable).
+     */
+    public SBFForwarder(int maxConnections, int timeoutSeconds, int maxAttempts, String deadLetterDirectory) {
+        if (maxConnections <= 0) maxConnections = DEFAULT_MAX_CONNECTIONS;
+        if (timeoutSeconds <= 0) timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+        this.maxAttempts = maxAttempts > 0 ? maxAttempts : DEFAULT_MAX_ATTEMPTS;
+        this.deadLetterDirectory = deadLetterDirectory == null || deadLetterDirectory.isEmpty()
+                ? null : Path.of(deadLetterDirectory);
+
+        int timeoutMillis = (int) TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        this.unirest = new UnirestInstance(new Config()
+                .connectTimeout(timeoutMillis)
+                .socketTimeout(timeoutMillis)
+                // all requests go to the SBF, so the whole pool can be used for one route
+                .concurrency(maxConnections, maxConnections)
+                .connectionTTL(5, TimeUnit.MINUTES)
+                .automaticRetries(false));
+
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sbf-forwarder-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        redeliverDeadLetters();
+    }
+
+    /**
+     * Forwards the given GitHub webhook event to the given SBF webhook URL.
+     *
+     * @param url       SBF webhook URL
+     * @param eventName Name of GitHub event
+     * @param body      Event payload
+     * @return Completes with true if the event has been delivered, or with false if it has been dead-lettered or
+     * rejected.
+     */
+    public CompletableFuture<Boolean> forward(String url, String eventName, String body) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        send(url, eventName, body, 1, System.currentTimeMillis(), result);
+        return result;
+    }
+
+    /**
+     * Stops the retry scheduler and closes the connections. Pending retries are not executed anymore.
+     */
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        unirest.shutDown(false);
+    }
+
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    public long getRetryCount() {
+        return retried.get();
+    }
+
+    public long getDeadLetterCount() {
+        return deadLettered.get();
+    }
+
+    /**
+     * Returns the number of events that the SBF has rejected with a non-retryable 4xx response.
+     *
+     * @return Number of rejected events.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the average time (in milliseconds) from the first attempt until the delivery of an event.
+     *
+     * @return Average delivery latency.
+     */
+    public double getAverageLatencyMillis() {
+        long count = delivered.get();
+        return count == 0 ? 0 : (double) totalLatencyMillis.get() / count;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+
+    private void send(String url, String eventName, String body, int attempt, long startTime,
+                      CompletableFuture<Boolean> result) {
+        CompletableFuture<HttpResponse<Empty>> request;
+        try {
+            request = unirest.post(url).body(body).header("X-GitHub-Event", eventName).asEmptyAsync();
+        } catch (RuntimeException e) {
+            // e.g., the forwarder is shut down
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((response, exception) -> {
+            if (exception == null && response.isSuccess()) {
+                long latency = System.currentTimeMillis() - startTime;
+                delivered.incrementAndGet();
+                totalLatencyMillis.addAndGet(latency);
+                maxLatencyMillis.accumulateAndGet(latency, Math::max);
+                result.complete(true);
+                return;
+            }
+
+            String error = exception != null ? exception.toString() : "status " + response.getStatus();
+            boolean retryable = exception != null || RetryPolicy.isRetryable(response.getStatus());
+            if (retryable && attempt < maxAttempts) {
+                retried.incrementAndGet();
+                try {
+                    retryScheduler.schedule(() -> send(url, eventName, body, attempt + 1, startTime, result),
+                            RETRY_POLICY.backoffMillis(attempt), TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RuntimeException e) {
+                    // forwarder is shut down
+                }
+            }
+
+            if (!retryable) {
+                System.out.println("SBF rejected " + eventName + " event (" + error + "), not retrying it.");
+                rejected.incrementAndGet();
+                spool(deadLetterDirectory == null ? null : deadLetterDirectory.resolve(REJECTED_DIRECTORY),
+                        url, eventName, body);
+                result.complete(false);
+                return;
+            }
+
+            System.out.println("Could not forward " + eventName + " event to SBF (" + error + ").");
+            deadLettered.incrementAndGet();
+            spool(deadLetterDirectory, url, eventName, body);
+            result.complete(false);
+        });
+    }
+
+    /**
+     * Writes the given event to the given spool directory (if it is not null).
+     */
+    private static void spool(Path directory, String url, String eventName, String body) {
+        if (directory == null) return;
+
+        JSONObject entry = new JSONObject();
+        entry.put("url", url);
+        entry.put("eventName", eventName);
+        entry.put("body", body);
+        try {
+            Files.createDirectories(directory);
+            String name = System.currentTimeMillis() + "-" + UUID.randomUUID();
+            Path tmpFile = directory.resolve(name + ".tmp");
+            Files.writeString(tmpFile, entry.toJSONString(), StandardCharsets.UTF_8);
+            Files.move(tmpFile, directory.resolve(name + ".json"), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Removes the events from the dead-letter spool and forwards them again (rejected events are not forwarded again).
+     */
+    private void redeliverDeadLetters() {
+        if (deadLetterDirectory == null || !Files.isDirectory(deadLetterDirectory)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(deadLetterDirectory, "*.json")) {
+            for (Path file : files) {
+                JSONObject entry = (JSONObject) JSONValue.parse(Files.readString(file, StandardCharsets.UTF_8));
+                Files.delete(file);
+                if (entry == null) continue;
+                forward((String) entry.get("url"), (String) entry.get("eventName"), (String) entry.get("body"));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache for the results of the spec-based test case generation (APITestGenService.openAPIDiffToTest).
+ *
+ * The result only depends on the two OpenAPI docs, so it is cached by the (canonical) fingerprints of both docs. This also
+ * includes results that do not contain a test case (negative caching). Failed calls (null results) are not cached.
+ *
+ * There are two tiers: a bounded in-memory LRU map and an optional directory on local disk (one file per result,
+ * the least recently used files are removed if there are too many). If multiple threads request the result for the same docs at
+ * the same time, only one of them calls the service and the others wait for its result (single flight).
+ */
+public class TestGenResultCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final int DEFAULT_MAX_DISK_ENTRIES = 10000;
+
+    private final int maxEntries;
+
+    /**
+     * Disk tier (null if the results are only cached in memory).
+     */
+    private final DiskLruStore disk;
+
+    private final LinkedHashMap<String, String> entries;
+
+    /**
+     * Service calls that are currently running (key: cache key).
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong sharedCalls = new AtomicLong();
+
+    /**
+     * @param maxEntries     Maximum number of results in memory.
+     * @param directory      Directory of the disk tier (null to disable it).
+     * @param maxDiskEntries Maximum number of results on disk.
+     */
+    public TestGenResultCache(int maxEntries, Path directory, int maxDiskEntries) {
+        this.maxEntries = maxEntries > 0 ? maxEntries : DEFAULT_MAX_ENTRIES;
+        this.entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > TestGenResultCache.this.maxEntries;
+            }
+        };
+        this.disk = DiskLruStore.open(directory, maxDiskEntries > 0 ? maxDiskEntries : DEFAULT_MAX_DISK_ENTRIES, 0);
+    }
+
+    /**
+     * Returns the test generation result for the given OpenAPI docs.
+     *
+     * @param openAPIDocBase Base OpenAPI doc
+     * @param openAPIDoc     Updated OpenAPI doc
+     * @param testGen        Calls the test generation (only if the result is not cached).
+     * @return Result of the test generation, or null if it failed.
+     */
+    public String get(String openAPIDocBase, String openAPIDoc, Supplier<String> testGen) {
+        String key = OpenAPIFingerprint.fingerprint128(openAPIDocBase) + "-"
+                + OpenAPIFingerprint.fingerprint128(openAPIDoc);
+
+        String result = getCached(key);
+        if (result != null) return result;
+
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            // the same docs are already handled by another thread
+            sharedCalls.incrementAndGet();
+            return running.join();
+        }
+
+        try {
+            // result might have been stored between the lookup and the registration of the call
+            result = getCached(key);
+            if (result == null) {
+                misses.incrementAndGet();
+                result = testGen.get();
+                if (result != null) put(key, result);
+            }
+            call.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            call.complete(null);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of requests that waited for the service call of another request with the same docs.
+     *
+     * @return Number of shared calls.
+     */
+    public long getSharedCallCount() {
+        return sharedCalls.get();
+    }
+
+    private String getCached(String key) {
+        String result;
+        synchronized (this) {
+            result = entries.get(key);
+        }
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+
+        result = disk == null ? null : disk.read(key);
+        if (result == null) return null;
+        diskHits.incrementAndGet();
+        synchronized (this) {
+            entries.put(key, result);
+        }
+        return result;
+    }
+
+    private void put(String key, String result) {
+        synchronized (this) {
+            entries.put(key, result);
+        }
+        if (disk != null) disk.write(key, result);
+    }
+}
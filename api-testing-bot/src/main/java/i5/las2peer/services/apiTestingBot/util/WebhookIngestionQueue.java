@@ -0,0 +1,341 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import i5.las2peer.services.apiTestingBot.context.SessionJournal;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue for the webhook events of the GitHub app.
+ *
+ * Incoming events are only stored in the queue, so that the webhook request can be acknowledged immediately (GitHub
+ * cancels deliveries that take longer than 10 seconds). Redeliveries of an event (same X-GitHub-Delivery id) are
+ * detected and ignored. The events are handled by a limited number of workers that run on the executor of the
+ * las2peer context (so that the handler can use the context, e.g., for RMI calls or monitoring events).
+ *
+ * If persistence is enabled, every event is written to a {@link SessionJournal} until it has been handled. Events that
+ * were not handled before a restart are handled after the first event has been received again.
+ */
+public class WebhookIngestionQueue {
+
+    /**
+     * Default maximum number of events that wait to be handled.
+     */
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    /**
+     * Default number of events that are handled in parallel.
+     */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * Number of recent delivery ids that are remembered to detect redeliveries.
+     */
+    private static final int DEDUPLICATION_WINDOW = 10000;
+
+    public enum Result {
+        /**
+         * The event has been queued.
+         */
+        ACCEPTED,
+        /**
+         * The event has already been received before.
+         */
+        DUPLICATE,
+        /**
+         * The queue is full or shut down.
+         */
+        REJECTED
+    }
+
+    private final Consumer<WebhookEvent> handler;
+
+    private volatile ArrayBlockingQueue<WebhookEvent> queue;
+    private volatile int concurrency;
+    private volatile boolean accepting = true;
+
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    /**
+     * Delivery ids of recently received events (least recently received first).
+     */
+    private final LinkedHashMap<String, Boolean> recentDeliveries = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > DEDUPLICATION_WINDOW;
+        }
+    };
+
+    /**
+     * Journal that pending events are persisted to (null if persistence is disabled).
+     */
+    private volatile SessionJournal journal;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param handler Handles a single event (is called by the workers).
+     */
+    public WebhookIngestionQueue(Consumer<WebhookEvent> handler) {
+        this.handler = handler;
+        setLimits(DEFAULT_CAPACITY, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * Updates the capacity of the queue and the number of workers.
+     * Needs to be called before the first event is submitted.
+     *
+     * @param capacity    Maximum number of events that wait to be handled.
+     * @param concurrency Number of events that are handled in parallel.
+     */
+    public void setLimits(int capacity, int concurrency) {
+        this.queue = new ArrayBlockingQueue<>(capacity > 0 ? capacity : DEFAULT_CAPACITY);
+        this.concurrency = concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+    }
+
+    /**
+     * Persists all following events to the given journal and queues the events that the journal contains.
+     *
+     * @param journal Journal
+     */
+    public void enablePersistence(SessionJournal journal) {
+        List<WebhookEvent> pending = new ArrayList<>();
+        try {
+            for (byte[] serialized : journal.recover(0).values()) {
+                pending.add((WebhookEvent) SessionJournal.deserialize(serialized));
+            }
+        } catch (IOException | ClassCastException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        // handle recovered events in the order in which they were received
+        pending.sort(Comparator.comparingLong(WebhookEvent::getReceivedAt));
+        for (WebhookEvent event : pending) {
+            synchronized (recentDeliveries) {
+                recentDeliveries.put(event.getDeliveryId(), true);
+            }
+            if (!queue.offer(event)) journal.remove(event.getDeliveryId());
+        }
+        System.out.println("Recovered " + queue.size() + " pending webhook events from journal.");
+        this.journal = journal;
+    }
+
+    /**
+     * Queues the given event (unless it is a redelivery) and makes sure that workers are running.
+     * Needs to be called from a las2peer context, because the workers are started on its executor.
+     *
+     * @param event    Webhook event
+     * @param executor Executor of the current las2peer context
+     * @return Whether the event has been accepted.
+     */
+    public Result submit(WebhookEvent event, Executor executor) {
+        if (!accepting) {
+            rejected.incrementAndGet();
+            return Result.REJECTED;
+        }
+
+        synchronized (recentDeliveries) {
+            if (recentDeliveries.containsKey(event.getDeliveryId())) {
+                duplicates.incrementAndGet();
+                return Result.DUPLICATE;
+            }
+            // persist before queueing, so that a worker cannot handle (and unpersist) the event before
+            persist(event);
+            if (!queue.offer(event)) {
+                unpersist(event);
+                rejected.incrementAndGet();
+                return Result.REJECTED;
+            }
+            recentDeliveries.put(event.getDeliveryId(), true);
+        }
+        accepted.incrementAndGet();
+
+        startWorkers(executor);
+        return Result.ACCEPTED;
+    }
+
+    /**
+     * Stops accepting events and waits until the workers have handled the queued events.
+     * Events that are not handled within the timeout stay in the journal (if persistence is enabled).
+     *
+     * @param timeoutMillis Maximum time to wait.
+     * @return Whether all events have been handled.
+     */
+    public boolean shutdown(long timeoutMillis) {
+        accepting = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (activeWorkers) {
+            // workers only stop if the queue is empty
+            while (activeWorkers.get() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                try {
+                    activeWorkers.wait(Math.min(remaining, TimeUnit.SECONDS.toMillis(1)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return queue.isEmpty();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getHandledCount() {
+        return handled.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Starts workers on the given executor until there are as many workers as allowed (or as events queued).
+     */
+    private void startWorkers(Executor executor) {
+        while (!queue.isEmpty()) {
+            int active = activeWorkers.get();
+            if (active >= concurrency) return;
+            if (activeWorkers.compareAndSet(active, active + 1)) {
+                try {
+                    executor.execute(() -> work(executor));
+                } catch (RuntimeException e) {
+                    // executor does not accept tasks, the event is handled by the next worker
+                    e.printStackTrace();
+                    workerStopped();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles queued events until the queue is empty.
+     */
+    private void work(Executor executor) {
+        try {
+            WebhookEvent event;
+            while ((event = queue.poll()) != null) {
+                try {
+                    handler.accept(event);
+                    handled.incrementAndGet();
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    System.out.println("Error handling webhook event " + event.getDeliveryId() + ".");
+                    e.printStackTrace();
+                    // allow a manual redelivery of the event
+                    synchronized (recentDeliveries) {
+                        recentDeliveries.remove(event.getDeliveryId());
+                    }
+                } finally {
+                    unpersist(event);
+                }
+            }
+        } finally {
+            workerStopped();
+        }
+        // an event might have been queued after the last poll, but before the worker count was decremented
+        if (!queue.isEmpty()) startWorkers(executor);
+    }
+
+    private void workerStopped() {
+        synchronized (activeWorkers) {
+            activeWorkers.decrementAndGet();
+            activeWorkers.notifyAll();
+        }
+    }
+
+    private void persist(WebhookEvent event) {
+        SessionJournal journal = this.journal;
+        if (journal == null) return;
+        try {
+            journal.put(event.getDeliveryId(), SessionJournal.serialize(event));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void unpersist(WebhookEvent event) {
+        SessionJournal journal = this.journal;
+        if (journal != null) journal.remove(event.getDeliveryId());
+    }
+
+    /**
+     * Webhook event that was sent by the GitHub app.
+     */
+    public static class WebhookEvent implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String deliveryId;
+        private final String eventName;
+        private final String body;
+        private final int gitHubAppId;
+        private final long receivedAt;
+
+        /**
+         * @param deliveryId  Id of the delivery (X-GitHub-Delivery header)
+         * @param eventName   Name of GitHub event (X-GitHub-Event header)
+         * @param body        Event payload
+         * @param gitHubAppId Id of GitHub app
+         */
+        public WebhookEvent(String deliveryId, String eventName, String body, int gitHubAppId) {
+            this.deliveryId = deliveryId;
+            this.eventName = eventName;
+            this.body = body;
+            this.gitHubAppId = gitHubAppId;
+            this.receivedAt = System.currentTimeMillis();
+        }
+
+        public String getDeliveryId() {
+            return deliveryId;
+        }
+
+        public String getEventName() {
+            return eventName;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public int getGitHubAppId() {
+            return gitHubAppId;
+        }
+
+        public long getReceivedAt() {
+            return receivedAt;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import kong.unirest.Config;
+import kong.unirest.HttpResponse;
+import kong.unirest.UnirestException;
+import kong.unirest.UnirestInstance;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.kohsuke.github.GHArtifact;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GHWorkflowRun;
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the artifacts of the workflow runs of a repository while a single GitHub event is handled.
+ *
+ * The repository, the workflow runs and the artifact lookups are memoized, so that every one of them is requested
+ * from the GitHub API at most once per event. The artifact list of a workflow run is paginated lazily and the
+ * pagination stops as soon as the requested artifact has been found.
+ * A resolver should not be reused across events, because the artifacts of a workflow run can change until the run
+ * is completed. It can be used by multiple threads of the same event (e.g., to load the artifacts of the PR base and
+ * head in parallel); only the repository lookup is synchronized, different runs and artifacts are looked up
+ * concurrently.
+ */
+public class WorkflowArtifactResolver {
+
+    /**
+     * Number of artifacts that are requested per page (maximum allowed by GitHub).
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Result of the head SHA lookup if the GitHub API does not support the head_sha filter.
+     */
+    private static final long UNKNOWN = -2;
+
+    /**
+     * Maximum number of workflow runs of a branch that are scanned if the GitHub API does not support the head_sha
+     * filter.
+     */
+    private static final int MAX_SCANNED_WORKFLOW_RUNS = 1000;
+
+    /**
+     * Maximum number of workflow run ids that are remembered per commit.
+     */
+    private static final int MAX_CACHED_WORKFLOW_RUN_IDS = 10000;
+
+    /**
+     * HTTP client for the API requests that the GitHub API client does not support, shared by all resolvers.
+     */
+    private static final UnirestInstance httpClient = new UnirestInstance(new Config()
+            .connectTimeout((int) TimeUnit.SECONDS.toMillis(10))
+            .socketTimeout((int) TimeUnit.SECONDS.toMillis(30))
+            .automaticRetries(false));
+
+    /**
+     * Id of the (newest completed) workflow run per commit, shared by all resolvers.
+     * Key: [API URL]/[OWNER]/[REPO NAME]@[BRANCH]@[SHA]
+     */
+    private static final Map<String, Long> workflowRunIdsBySha = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_CACHED_WORKFLOW_RUN_IDS;
+                }
+            });
+
+    private final GitHubAppHelper gitHubAppHelper;
+    private final String repoFullName;
+
+    private GHRepository repository;
+    private final Map<Long, GHWorkflowRun> workflowRuns = new ConcurrentHashMap<>();
+    private final Map<String, Optional<GHArtifact>> artifacts = new ConcurrentHashMap<>();
+
+    /**
+     * @param gitHubAppHelper Helper of the GitHub app that the bot uses
+     * @param repoFullName Full name of repository
+     */
+    public WorkflowArtifactResolver(GitHubAppHelper gitHubAppHelper, String repoFullName) {
+        this.gitHubAppHelper = gitHubAppHelper;
+        this.repoFullName = repoFullName;
+    }
+
+    /**
+     * Returns the repository (authenticated as the app installation).
+     *
+     * @return Repository
+     * @throws IOException If the repository cannot be accessed.
+     */
+    public synchronized GHRepository getRepository() throws IOException {
+        if (repository == null) {
+            GitHub gitHub = gitHubAppHelper.getGitHubInstance(repoFullName);
+            if (gitHub == null) throw new IOException("GitHub app has no access to repository " + repoFullName);
+            repository = gitHub.getRepository(repoFullName);
+        }
+        return repository;
+    }
+
+    /**
+     * Returns the workflow run with the given id.
+     *
+     * @param workflowRunId Id of GitHub actions workflow run
+     * @return Workflow run
+     * @throws IOException If the workflow run cannot be loaded.
+     */
+    public GHWorkflowRun getWorkflowRun(long workflowRunId) throws IOException {
+        GHWorkflowRun run = workflowRuns.get(workflowRunId);
+        if (run == null) {
+            run = getRepository().getWorkflowRun(workflowRunId);
+            workflowRuns.put(workflowRunId, run);
+        }
+        return run;
+    }
+
+    /**
+     * Remembers a workflow run that has already been loaded (e.g., while listing the runs of a branch).
+     *
+     * @param run Workflow run
+     */
+    public void addWorkflowRun(GHWorkflowRun run) {
+        workflowRuns.putIfAbsent(run.getId(), run);
+    }
+
+    /**
+     * Searches for the newest completed workflow run of the given commit on the given branch.
+     * The runs are filtered by the head SHA of the commit, so that a single API call is needed independent of the
+     * number of runs on the branch. If the GitHub API does not support this filter (e.g., an older GitHub Enterprise
+     * server), the runs of the branch are listed newest first until the first run of the commit (at most
+     * {@link #MAX_SCANNED_WORKFLOW_RUNS} runs). The result is remembered, so that further events for the same commit
+     * (e.g., of other pull requests with the same base) do not need any API call.
+     *
+     * @param branch Name of the branch
+     * @param sha Commit SHA
+     * @return Id of the workflow run, or -1 if there is no completed run of the commit (or it is older than the
+     * scanned runs).
+     * @throws IOException If the workflow runs cannot be loaded.
+     */
+    public long findWorkflowRunId(String branch, String sha) throws IOException {
+        String key = gitHubAppHelper.getApiUrl() + "/" + repoFullName + "@" + branch + "@" + sha;
+        Long cached = workflowRunIdsBySha.get(key);
+        if (cached != null) return cached;
+
+        long runId = findWorkflowRunIdByHeadSha(branch, sha);
+        if (runId == UNKNOWN) {
+            runId = -1;
+            int scanned = 0;
+            for (GHWorkflowRun run : getRepository().queryWorkflowRuns().branch(branch)
+                    .status(GHWorkflowRun.Status.COMPLETED).list().withPageSize(PAGE_SIZE)) {
+                if (run.getHeadSha().equals(sha)) {
+                    addWorkflowRun(run);
+                    runId = run.getId();
+                    break;
+                }
+                if (++scanned >= MAX_SCANNED_WORKFLOW_RUNS) break;
+            }
+        }
+        // not remembered if there is no run, the commit might still get one
+        if (runId != -1) workflowRunIdsBySha.put(key, runId);
+        return runId;
+    }
+
+    /**
+     * Requests the newest completed workflow run of the given commit using the head_sha filter of the GitHub API
+     * (which the pinned GitHub API client does not support).
+     *
+     * @return Id of the workflow run, -1 if there is none, or {@link #UNKNOWN} if the filter cannot be used.
+     */
+    private long findWorkflowRunIdByHeadSha(String branch, String sha) throws IOException {
+        String token = gitHubAppHelper.getInstallationToken(repoFullName);
+        if (token == null) throw new IOException("GitHub app has no access to repository " + repoFullName);
+
+        HttpResponse<String> response;
+        try {
+            response = httpClient.get(gitHubAppHelper.getApiUrl() + "/repos/" + repoFullName + "/actions/runs")
+                    .queryString("branch", branch)
+                    .queryString("status", "completed")
+                    .queryString("head_sha", sha)
+                    .queryString("per_page", 1)
+                    .header("Authorization", "token " + token)
+                    .header("Accept", "application/vnd.github+json")
+                    .asString();
+        } catch (UnirestException e) {
+            e.printStackTrace();
+            return UNKNOWN;
+        }
+        if (!response.isSuccess()) return UNKNOWN;
+
+        Object body = JSONValue.parse(response.getBody());
+        if (!(body instanceof JSONObject) || !(((JSONObject) body).get("workflow_runs") instanceof JSONArray)) {
+            return UNKNOWN;
+        }
+        JSONArray runs = (JSONArray) ((JSONObject) body).get("workflow_runs");
+        if (runs.isEmpty()) return -1;
+        JSONObject run = (JSONObject) runs.get(0);
+        // if the filter is ignored, the newest run of the branch is returned
+        if (!sha.equals(run.get("head_sha"))) return UNKNOWN;
+        return ((Number) run.get("id")).longValue();
+    }
+
+    /**
+     * Forgets the remembered workflow run ids of all commits.
+     */
+    static void clearWorkflowRunIds() {
+        workflowRunIdsBySha.clear();
+    }
+
+    /**
+     * Searches for the artifact with the given name in the given workflow run.
+     *
+     * @param workflowRunId Id of GitHub actions workflow run
+     * @param artifactName Name of the artifact
+     * @return Artifact, or null if the workflow run does not contain such an artifact.
+     * @throws IOException If the artifacts cannot be loaded.
+     */
+    public GHArtifact getArtifact(long workflowRunId, String artifactName) throws IOException {
+        String key = workflowRunId + "/" + artifactName;
+        Optional<GHArtifact> cached = artifacts.get(key);
+        if (cached != null) return cached.orElse(null);
+
+        GHArtifact result = null;
+        // the next page is only requested if the artifact has not been found on the previous pages
+        for (GHArtifact artifact : getWorkflowRun(workflowRunId).listArtifacts().withPageSize(PAGE_SIZE)) {
+            if (artifact.getName().equals(artifactName)) {
+                result = artifact;
+                break;
+            }
+        }
+        artifacts.put(key, Optional.ofNullable(result));
+        return result;
+    }
+}
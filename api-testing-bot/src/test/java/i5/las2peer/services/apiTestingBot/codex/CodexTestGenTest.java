@@ -0,0 +1,147 @@
+package i5.las2peer.services.apiTestingBot.codex;
+
+import i5.las2peer.apiTestModel.BodyAssertion;
+import i5.las2peer.apiTestModel.RequestAssertion;
+import i5.las2peer.apiTestModel.StatusCodeAssertion;
+import i5.las2peer.apiTestModel.TestRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the test generation of {@link CodexTestGen} with a stub completion client, in particular the batched
+ * generation of the assertions.
+ */
+public class CodexTestGenTest {
+
+    private static final String DESCRIPTION = "Send get request to /items and check that every item has field name";
+
+    @Test
+    public void testSplitStatements() {
+        Assert.assertEquals(List.of("a(1)", "b(\"x;y\")", "c(\"\\\";\")"),
+                CodexTestGen.splitStatements("a(1); b(\"x;y\");\n c(\"\\\";\"); d("));
+        Assert.assertEquals(List.of("a()"), CodexTestGen.splitStatements(" ; a() ;;"));
+        Assert.assertTrue(CodexTestGen.splitStatements("is(200)").isEmpty());
+    }
+
+    @Test
+    public void testFindStatusCodeAssertion() {
+        // first statement of the first candidate that continues the status code assertion
+        Assert.assertEquals("assertThat(statusCode, is(200));",
+                CodexTestGen.findStatusCodeAssertion(List.of("is(200));", "is(201));")));
+        Assert.assertEquals("assertThat(statusCode, is(201));",
+                CodexTestGen.findStatusCodeAssertion(List.of("is(200; x", "is(201));")));
+
+        // complete status code assertion in a later statement
+        Assert.assertEquals("assertThat(statusCode, is(404));", CodexTestGen.findStatusCodeAssertion(List.of(
+                "200 is expected)); assertThat(statusCode, is(404));")));
+
+        // status code that the first statement compares to
+        Assert.assertEquals("assertThat(statusCode, is(201));", CodexTestGen.findStatusCodeAssertion(List.of(
+                "equalTo(201);", "")));
+        Assert.assertEquals("assertThat(statusCode, is(500));",
+                CodexTestGen.findStatusCodeAssertion(List.of("is(500")));
+
+        Assert.assertNull(CodexTestGen.findStatusCodeAssertion(List.of("isA(Integer.class)", "1234;", "")));
+    }
+
+    /**
+     * The request is generated with two streamed completions that stop as soon as the statement is complete, the
+     * assertions with a single completion with multiple candidates.
+     */
+    @Test
+    public void testBatchedGeneration() throws Exception {
+        StubCompletionClient client = new StubCompletionClient(List.of(
+                List.of("\"GET\""),
+                // the listener stops the stream at the first complete statement
+                List.of("\"/items\", null, \"application/json\", \"*/*\")) + garbage"),
+                List.of("is(200));\n"
+                                + "            assertThat(response, isA(JSONArray.class));\n"
+                                + "            assertThat(response, isA(JSONArray.class));\n",
+                        "is(201));\n"
+                                + "            assertThat(response, hasField(\"secret\"));\n"
+                                + "            assertThat(response, asJSONObjectList(everyItem(hasField(\"name\"))));\n"
+                                + "            assertThat(response, isA(",
+                        "")));
+
+        TestRequest request = new CodexTestGen(client, 3, 200).descriptionToTestModel(DESCRIPTION);
+
+        Assert.assertEquals(3, client.requests.size());
+        Assert.assertEquals(",", client.requests.get(0).getStop());
+        Assert.assertEquals(";", client.requests.get(1).getStop());
+        CompletionRequest batched = client.requests.get(2);
+        Assert.assertEquals("}", batched.getStop());
+        Assert.assertEquals(3, batched.getN());
+        Assert.assertEquals(200, batched.getMaxTokens());
+        Assert.assertTrue(batched.getPrompt().endsWith("assertThat(statusCode, "));
+        Assert.assertEquals("[\"/items\", null, \"application/json\", \"*/*\")]", client.streamed.toString());
+
+        Assert.assertEquals("GET", request.getType());
+        Assert.assertEquals("/items", request.getUrl());
+        List<RequestAssertion> assertions = request.getAssertions();
+        Assert.assertEquals(3, assertions.size());
+        Assert.assertEquals(200, ((StatusCodeAssertion) assertions.get(0)).getStatusCodeValue());
+        // the duplicate and the irrelevant hasField assertion are skipped, the incomplete one is dropped
+        Assert.assertEquals(3, ((BodyAssertion) assertions.get(1)).getOperator().getInputType());
+        // everyItem followed by hasField
+        Assert.assertEquals("name", ((BodyAssertion) assertions.get(2)).getOperator().getFollowingOperator()
+                .getInputValue());
+    }
+
+    /**
+     * If no candidate contains a status code, the test is generated without a status code assertion (instead of
+     * sending another completion request).
+     */
+    @Test
+    public void testBatchedGenerationWithoutStatusCode() throws Exception {
+        StubCompletionClient client = new StubCompletionClient(List.of(
+                List.of("\"GET\""),
+                List.of("\"/items\", null, \"application/json\", \"*/*\")"),
+                List.of(")); assertThat(response, isA(JSONObject.class));", "ok", "")));
+
+        TestRequest request = new CodexTestGen(client, 3, 200).descriptionToTestModel(DESCRIPTION);
+
+        Assert.assertEquals(3, client.requests.size());
+        List<RequestAssertion> assertions = request.getAssertions();
+        Assert.assertEquals(1, assertions.size());
+        Assert.assertEquals(2, ((BodyAssertion) assertions.get(0)).getOperator().getInputType());
+    }
+
+    /**
+     * Returns the given completions in the given order and streams them character by character.
+     */
+    private static class StubCompletionClient implements CompletionClient {
+        private final List<List<String>> completions;
+        private final List<CompletionRequest> requests = new ArrayList<>();
+
+        /**
+         * Text that was generated until a listener stopped a stream.
+         */
+        private final List<String> streamed = new ArrayList<>();
+
+        private StubCompletionClient(List<List<String>> completions) {
+            this.completions = completions;
+        }
+
+        @Override
+        public List<String> complete(CompletionRequest request) {
+            requests.add(request);
+            return completions.get(requests.size() - 1);
+        }
+
+        @Override
+        public String stream(CompletionRequest request, CompletionStreamListener listener) {
+            String completion = complete(request).get(0);
+            for (int end = 1; end <= completion.length(); end++) {
+                String text = completion.substring(0, end);
+                if (!listener.onText(text)) {
+                    streamed.add(text);
+                    return text;
+                }
+            }
+            return completion;
+        }
+    }
+}
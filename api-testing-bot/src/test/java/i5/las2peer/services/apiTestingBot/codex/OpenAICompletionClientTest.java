@@ -0,0 +1,197 @@
+package i5.las2peer.services.apiTestingBot.codex;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the requests of the OpenAI-compatible completion client using a local mock of a model server.
+ */
+public class OpenAICompletionClientTest {
+
+    private HttpServer server;
+    private String endpoint;
+    private final List<JSONObject> requestBodies = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> authorizationHeaders = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Number of requests that the mock server answers with 503 before it answers successfully.
+     */
+    private final AtomicInteger failingRequests = new AtomicInteger();
+
+    /**
+     * Number of additional tokens that the mock server streams slowly (after the tokens of the completion).
+     */
+    private volatile int slowTokens = 0;
+
+    /**
+     * Counted down as soon as the mock server notices that the client has closed the connection of a stream.
+     */
+    private final CountDownLatch streamClosedByClient = new CountDownLatch(1);
+
+    @Before
+    public void startMockServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/completions", this::handle);
+        server.start();
+        endpoint = "http://localhost:" + server.getAddress().getPort() + "/v1/completions";
+    }
+
+    @After
+    public void stopMockServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCompletion() throws Exception {
+        OpenAICompletionClient client = new OpenAICompletionClient(endpoint, "local-model", "token", 0, 0, 0, 0);
+        try {
+            List<String> completions = client.complete(new CompletionRequest("prompt", "suffix", ";"));
+            Assert.assertEquals(List.of("200)"), completions);
+
+            JSONObject body = requestBodies.get(0);
+            Assert.assertEquals("local-model", body.get("model"));
+            Assert.assertEquals("prompt", body.get("prompt"));
+            Assert.assertEquals("suffix", body.get("suffix"));
+            Assert.assertEquals(";", body.get("stop"));
+            Assert.assertEquals("Bearer token", authorizationHeaders.get(0));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testRetries() throws Exception {
+        OpenAICompletionClient client = new OpenAICompletionClient(endpoint, null, null, 0, 0, 0, 1);
+        try {
+            failingRequests.set(1);
+            Assert.assertEquals(List.of("200)"), client.complete(new CompletionRequest("prompt", "suffix", ";")));
+            Assert.assertEquals(2, requestBodies.size());
+            Assert.assertEquals(1, client.getRetryCount());
+            // no token configured (e.g., for a local model server)
+            Assert.assertNull(authorizationHeaders.get(0));
+
+            failingRequests.set(2);
+            Assert.assertThrows(CodexAPI.CodexAPIException.class,
+                    () -> client.complete(new CompletionRequest("prompt", "suffix", ";")));
+            Assert.assertEquals(1, client.getFailureCount());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        OpenAICompletionClient client = new OpenAICompletionClient(endpoint, null, null, 0, 0, 0, 0);
+        try {
+            List<String> received = new ArrayList<>();
+            String text = client.stream(new CompletionRequest("prompt", "suffix", ";"), t -> {
+                received.add(t);
+                return true;
+            });
+            Assert.assertEquals("is(200)); // generated until the end", text);
+            Assert.assertEquals(List.of("is(", "is(200", "is(200))", "is(200)); // generated until the end"), received);
+            Assert.assertEquals(Boolean.TRUE, requestBodies.get(0).get("stream"));
+
+            // stop the generation as soon as the statement is complete
+            text = client.stream(new CompletionRequest("prompt", "suffix", ";"), t -> !t.endsWith("))"));
+            Assert.assertEquals("is(200))", text);
+            Assert.assertEquals(2, client.getStreamedRequestCount());
+            Assert.assertEquals(1, client.getCancelledStreamCount());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * A stopped stream closes its connection instead of reading the rest of the completion.
+     */
+    @Test
+    public void testStoppedStreamClosesConnection() throws Exception {
+        OpenAICompletionClient client = new OpenAICompletionClient(endpoint, null, null, 0, 0, 0, 0);
+        try {
+            // the rest of the completion would take 10 seconds
+            slowTokens = 100;
+            long start = System.currentTimeMillis();
+            String text = client.stream(new CompletionRequest("prompt", "suffix", ";"), t -> !t.endsWith("))"));
+            Assert.assertEquals("is(200))", text);
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+            Assert.assertTrue(streamClosedByClient.await(5, TimeUnit.SECONDS));
+
+            // the connection pool still works
+            Assert.assertEquals(List.of("200)"), client.complete(new CompletionRequest("prompt", "suffix", ";")));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        JSONObject requestBody = (JSONObject) JSONValue.parse(new String(exchange.getRequestBody().readAllBytes(),
+                StandardCharsets.UTF_8));
+        requestBodies.add(requestBody);
+        authorizationHeaders.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        if (Boolean.TRUE.equals(requestBody.get("stream"))) {
+            stream(exchange);
+            return;
+        }
+
+        int status = 200;
+        String response = "{\"choices\":[{\"text\":\"200)\",\"index\":0}]}";
+        if (failingRequests.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            status = 503;
+            response = "{\"error\":\"overloaded\"}";
+        }
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    /**
+     * Sends the completion as server-sent events (one event per token).
+     */
+    private void stream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try {
+            for (String token : List.of("is(", "200", "))", "; // generated until the end")) {
+                JSONObject choice = new JSONObject();
+                choice.put("text", token);
+                choice.put("index", 0);
+                JSONObject event = new JSONObject();
+                event.put("choices", List.of(choice));
+                exchange.getResponseBody().write(("data: " + event.toJSONString() + "\n\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                exchange.getResponseBody().flush();
+            }
+            for (int i = 0; i < slowTokens; i++) {
+                Thread.sleep(100);
+                exchange.getResponseBody().write("data: {\"choices\":[{\"text\":\" \",\"index\":0}]}\n\n"
+                        .getBytes(StandardCharsets.UTF_8));
+                exchange.getResponseBody().flush();
+            }
+            exchange.getResponseBody().write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // the client stopped the stream
+            streamClosedByClient.countDown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,240 @@
+package i5.las2peer.services.apiTestingBot.codex;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks the scheduling of {@link RateLimitedCompletionClient} with a manual clock: the requests are only sent when
+ * the clock is advanced far enough.
+ */
+public class RateLimitedCompletionClientTest {
+
+    private final ManualClock clock = new ManualClock();
+
+    /**
+     * Prompts of the sent requests (once per generated completion).
+     */
+    private final List<String> prompts = Collections.synchronizedList(new ArrayList<>());
+    private final InProcessCompletionClient model = new InProcessCompletionClient(request -> {
+        prompts.add(request.getPrompt());
+        return "";
+    });
+    private final List<Thread> threads = new ArrayList<>();
+
+    @After
+    public void stopThreads() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.interrupt();
+            thread.join(1000);
+        }
+    }
+
+    /**
+     * The budget allows a burst of {@link RateLimitedCompletionClient#BURST_SECONDS} seconds and is refilled
+     * continuously, but not beyond the burst.
+     */
+    @Test
+    public void testRefill() throws Exception {
+        // 1 request per second, bursts of 10 requests
+        RateLimitedCompletionClient client = new RateLimitedCompletionClient(model, 60, 0, 0, clock);
+        for (int i = 0; i < 10; i++) client.complete(request("burst-" + i, "s", CompletionRequest.Priority.BACKGROUND));
+
+        send(client, "a", "s", CompletionRequest.Priority.BACKGROUND);
+        awaitQueueLength(client, 1);
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(900));
+        assertStillQueued(client, 1);
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(200));
+        awaitSent(11);
+
+        // an idle hour only refills the burst
+        clock.advance(TimeUnit.HOURS.toNanos(1));
+        for (int i = 0; i < 10; i++) {
+            client.complete(request("refill-" + i, "s", CompletionRequest.Priority.BACKGROUND));
+        }
+        send(client, "b", "s", CompletionRequest.Priority.BACKGROUND);
+        assertStillQueued(client, 1);
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(1100));
+        awaitSent(22);
+    }
+
+    /**
+     * The tokens of a request are estimated from its prompt and suffix plus the maximum number of generated tokens.
+     * A request that exceeds the burst only needs a full budget, which becomes negative then.
+     */
+    @Test
+    public void testTokenBudget() throws Exception {
+        // 10 tokens per second, bursts of 100 tokens
+        RateLimitedCompletionClient client = new RateLimitedCompletionClient(model, 0, 600, 0, clock);
+        // 32 / 4 + 50 * 2 = 108 tokens
+        client.complete(new CompletionRequest("x".repeat(32), "", null, 0, 50, 2));
+
+        // 1 token, so 9 tokens are missing
+        send(client, "a", "s", CompletionRequest.Priority.BACKGROUND);
+        awaitQueueLength(client, 1);
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(800));
+        assertStillQueued(client, 1);
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(200));
+        awaitSent(2);
+    }
+
+    @Test
+    public void testInteractiveRequestsFirst() throws Exception {
+        RateLimitedCompletionClient client = new RateLimitedCompletionClient(model, 6, 0, 0, clock);
+        client.complete(request("first", "s1", CompletionRequest.Priority.BACKGROUND));
+
+        send(client, "background", "s1", CompletionRequest.Priority.BACKGROUND);
+        awaitQueueLength(client, 1);
+        send(client, "interactive", "s2", CompletionRequest.Priority.INTERACTIVE);
+        awaitQueueLength(client, 2);
+        Assert.assertEquals(1, client.getQueueLength(CompletionRequest.Priority.INTERACTIVE));
+
+        // one request per 10 seconds
+        clock.advance(TimeUnit.SECONDS.toNanos(11));
+        awaitSent(2);
+        assertStillQueued(client, 1);
+        clock.advance(TimeUnit.SECONDS.toNanos(11));
+        awaitSent(3);
+
+        Assert.assertEquals(List.of("first", "interactive", "background"), prompts());
+        Assert.assertEquals(1, client.getSentCount(CompletionRequest.Priority.INTERACTIVE));
+        Assert.assertEquals(11000, client.getMaxWaitMillis(CompletionRequest.Priority.INTERACTIVE), 0);
+        Assert.assertEquals(22000, client.getMaxWaitMillis(CompletionRequest.Priority.BACKGROUND), 0);
+    }
+
+    /**
+     * A session with many waiting requests takes turns with the other sessions.
+     */
+    @Test
+    public void testSessionsTakeTurns() throws Exception {
+        RateLimitedCompletionClient client = new RateLimitedCompletionClient(model, 6, 0, 0, clock);
+        client.complete(request("first", "busy", CompletionRequest.Priority.BACKGROUND));
+
+        send(client, "busy-1", "busy", CompletionRequest.Priority.BACKGROUND);
+        awaitQueueLength(client, 1);
+        send(client, "busy-2", "busy", CompletionRequest.Priority.BACKGROUND);
+        awaitQueueLength(client, 2);
+        send(client, "busy-3", "busy", CompletionRequest.Priority.BACKGROUND);
+        awaitQueueLength(client, 3);
+        send(client, "other-1", "other", CompletionRequest.Priority.BACKGROUND);
+        awaitQueueLength(client, 4);
+
+        for (int sent = 2; sent <= 5; sent++) {
+            clock.advance(TimeUnit.SECONDS.toNanos(11));
+            awaitSent(sent);
+        }
+        Assert.assertEquals(List.of("first", "busy-1", "other-1", "busy-2", "busy-3"), prompts());
+    }
+
+    /**
+     * A request that waits longer than the maximum wait time is rejected and leaves the queue.
+     */
+    @Test
+    public void testRejectAfterMaxWait() throws Exception {
+        RateLimitedCompletionClient client = new RateLimitedCompletionClient(model, 6, 0, 5, clock);
+        client.complete(request("first", "s", CompletionRequest.Priority.BACKGROUND));
+
+        List<Exception> errors = new ArrayList<>();
+        Thread thread = send(client, "late", "s", CompletionRequest.Priority.BACKGROUND, errors);
+        awaitQueueLength(client, 1);
+        clock.advance(TimeUnit.SECONDS.toNanos(5));
+        thread.join(5000);
+
+        Assert.assertFalse(thread.isAlive());
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0) instanceof CodexAPI.CodexAPIException);
+        Assert.assertEquals(1, client.getTimeoutCount());
+        Assert.assertEquals(0, client.getQueueLength());
+        Assert.assertEquals(List.of("first"), prompts());
+
+        // the budget of the rejected request is still available
+        clock.advance(TimeUnit.SECONDS.toNanos(6));
+        client.complete(request("next", "s", CompletionRequest.Priority.BACKGROUND));
+        Assert.assertEquals(List.of("first", "next"), prompts());
+    }
+
+    private Thread send(RateLimitedCompletionClient client, String prompt, String session,
+                        CompletionRequest.Priority priority) {
+        return send(client, prompt, session, priority, new ArrayList<>());
+    }
+
+    private Thread send(RateLimitedCompletionClient client, String prompt, String session,
+                        CompletionRequest.Priority priority, List<Exception> errors) {
+        Thread thread = new Thread(() -> {
+            try {
+                client.complete(request(prompt, session, priority));
+            } catch (Exception e) {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+            }
+        });
+        threads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    private static CompletionRequest request(String prompt, String session, CompletionRequest.Priority priority) {
+        return new CompletionRequest(prompt, "", null, 0, 1, 1).forSession(session, priority);
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        await(() -> model.getRequestCount() >= count);
+        Assert.assertEquals(count, model.getRequestCount());
+    }
+
+    private List<String> prompts() {
+        synchronized (prompts) {
+            return new ArrayList<>(prompts);
+        }
+    }
+
+    private static void awaitQueueLength(RateLimitedCompletionClient client, int length) throws InterruptedException {
+        await(() -> client.getQueueLength() == length);
+    }
+
+    /**
+     * Checks that the given number of requests keeps waiting while the clock is not advanced.
+     */
+    private static void assertStillQueued(RateLimitedCompletionClient client, int length) throws InterruptedException {
+        awaitQueueLength(client, length);
+        Thread.sleep(50);
+        Assert.assertEquals(length, client.getQueueLength());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) Assert.fail("Condition not reached in time.");
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Clock that only advances when the test advances it. Waiting requests check the clock every millisecond.
+     */
+    private static class ManualClock implements RateLimitedCompletionClient.Clock {
+        private final AtomicLong now = new AtomicLong();
+
+        private void advance(long nanos) {
+            now.addAndGet(nanos);
+        }
+
+        @Override
+        public long nanoTime() {
+            return now.get();
+        }
+
+        @Override
+        public void await(Object monitor, long nanos) throws InterruptedException {
+            monitor.wait(1);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package i5.las2peer.services.apiTestingBot.context;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the values stored in a {@link SessionJournal} are recovered after reopening it, also if the journal
+ * ends with a broken record or has been compacted.
+ */
+public class SessionJournalTest {
+
+    private static final String NAME = "test";
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("session-journal");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRecover() throws IOException {
+        try (SessionJournal journal = open(100)) {
+            Assert.assertTrue(journal.recover(0).isEmpty());
+            Assert.assertTrue(journal.put("a", bytes("1")));
+            Assert.assertTrue(journal.put("b", bytes("2")));
+            Assert.assertTrue(journal.put("a", bytes("3")));
+            journal.put("c", bytes("4"));
+            journal.remove("c");
+        }
+
+        try (SessionJournal journal = open(100)) {
+            Map<String, byte[]> values = journal.recover(0);
+            Assert.assertEquals(2, values.size());
+            Assert.assertEquals("3", string(values.get("a")));
+            Assert.assertEquals("2", string(values.get("b")));
+        }
+    }
+
+    /**
+     * A record that was only partially written is cut off, the records before it are recovered and new records are
+     * appended behind them.
+     */
+    @Test
+    public void testTruncatePartialRecord() throws IOException {
+        try (SessionJournal journal = open(100)) {
+            journal.put("a", bytes("1"));
+            journal.put("b", bytes("2"));
+        }
+        Path journalFile = directory.resolve(NAME + ".journal");
+        long validLength = Files.size(journalFile);
+        try (FileChannel file = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+            file.truncate(validLength - 1);
+        }
+
+        try (SessionJournal journal = open(100)) {
+            Map<String, byte[]> values = journal.recover(0);
+            Assert.assertEquals(1, values.size());
+            Assert.assertEquals("1", string(values.get("a")));
+            journal.put("c", bytes("3"));
+        }
+
+        try (SessionJournal journal = open(100)) {
+            Map<String, byte[]> values = journal.recover(0);
+            Assert.assertEquals(2, values.size());
+            Assert.assertEquals("3", string(values.get("c")));
+        }
+    }
+
+    /**
+     * A record with a wrong checksum ends the replay.
+     */
+    @Test
+    public void testTruncateCorruptRecord() throws IOException {
+        try (SessionJournal journal = open(100)) {
+            journal.put("a", bytes("1"));
+            journal.put("b", bytes("2"));
+        }
+        Path journalFile = directory.resolve(NAME + ".journal");
+        long length = Files.size(journalFile);
+        try (FileChannel file = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+            // change the last byte of the value of b
+            file.write(ByteBuffer.wrap(bytes("x")), file.size() - 1);
+        }
+
+        try (SessionJournal journal = open(100)) {
+            Map<String, byte[]> values = journal.recover(0);
+            Assert.assertEquals(1, values.size());
+            Assert.assertEquals("1", string(values.get("a")));
+        }
+        // both records have the same length
+        Assert.assertEquals(length / 2, Files.size(journalFile));
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        try (SessionJournal journal = open(3)) {
+            journal.put("a", bytes("1"));
+            journal.put("b", bytes("2"));
+            // compacted after this record
+            journal.put("a", bytes("3"));
+            journal.remove("b");
+            journal.put("c", bytes("4"));
+        }
+        Assert.assertTrue(Files.size(directory.resolve(NAME + ".snapshot")) > 0);
+
+        try (SessionJournal journal = open(3)) {
+            Map<String, byte[]> values = journal.recover(0);
+            Assert.assertEquals(2, values.size());
+            Assert.assertEquals("3", string(values.get("a")));
+            Assert.assertEquals("4", string(values.get("c")));
+        }
+    }
+
+    /**
+     * If the node crashes after the journal has been rotated, the rotated file is replayed and compacted later.
+     */
+    @Test
+    public void testRecoverInterruptedCompaction() throws IOException {
+        try (SessionJournal journal = open(100)) {
+            journal.put("a", bytes("1"));
+            journal.put("b", bytes("2"));
+        }
+        Path rotatedFile = directory.resolve(NAME + ".journal.rotated");
+        Files.move(directory.resolve(NAME + ".journal"), rotatedFile);
+
+        try (SessionJournal journal = open(100)) {
+            Map<String, byte[]> values = journal.recover(0);
+            Assert.assertEquals(2, values.size());
+            journal.put("a", bytes("3"));
+            journal.compact();
+            Assert.assertFalse(Files.exists(rotatedFile));
+            journal.compact();
+        }
+        Assert.assertFalse(Files.exists(rotatedFile));
+        Assert.assertEquals(0, Files.size(directory.resolve(NAME + ".journal")));
+
+        try (SessionJournal journal = open(100)) {
+            Map<String, byte[]> values = journal.recover(0);
+            Assert.assertEquals(2, values.size());
+            Assert.assertEquals("3", string(values.get("a")));
+            Assert.assertEquals("2", string(values.get("b")));
+        }
+    }
+
+    /**
+     * Values that are older than the maximum age passed to recover are dropped by the following compactions.
+     */
+    @Test
+    public void testCompactionDropsExpiredValues() throws Exception {
+        try (SessionJournal journal = open(100)) {
+            journal.recover(200);
+            journal.put("a", bytes("1"));
+            Thread.sleep(300);
+            journal.put("b", bytes("2"));
+            journal.compact();
+        }
+
+        try (SessionJournal journal = open(100)) {
+            Map<String, byte[]> values = journal.recover(0);
+            Assert.assertEquals(1, values.size());
+            Assert.assertEquals("2", string(values.get("b")));
+        }
+    }
+
+    /**
+     * A value that would be treated as broken by the replay is not stored, and the previous value is removed.
+     */
+    @Test
+    public void testRejectOversizedValue() throws IOException {
+        try (SessionJournal journal = open(100)) {
+            journal.put("a", bytes("1"));
+            journal.put("b", bytes("2"));
+            Assert.assertFalse(journal.put("a", new byte[SessionJournal.MAX_PAYLOAD_SIZE]));
+            Assert.assertTrue(journal.put("c", bytes("3")));
+        }
+
+        try (SessionJournal journal = open(100)) {
+            Map<String, byte[]> values = journal.recover(0);
+            Assert.assertEquals(2, values.size());
+            Assert.assertFalse(values.containsKey("a"));
+            Assert.assertEquals("3", string(values.get("c")));
+        }
+    }
+
+    private SessionJournal open(int compactionThreshold) throws IOException {
+        return new SessionJournal(directory, NAME, compactionThreshold);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
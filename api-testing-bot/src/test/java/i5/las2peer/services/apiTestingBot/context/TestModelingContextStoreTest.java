@@ -0,0 +1,177 @@
+package i5.las2peer.services.apiTestingBot.context;
+
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Checks the {@link TestModelingContextStore}, also while its contexts are persisted to journals.
+ */
+public class TestModelingContextStoreTest {
+
+    private Path directory;
+    private TestModelingContextStore store;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("modeling-contexts");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        if (store != null) store.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    /**
+     * Channels that are updated concurrently while persistence is enabled are recovered with their latest state.
+     */
+    @Test
+    public void testConcurrentUpdatesWithJournal() throws Exception {
+        int channels = 32;
+        int updates = 50;
+        store = new TestModelingContextStore(1000, 60);
+        store.enablePersistence(open("contexts"), open("documents"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < channels; c++) {
+                String channel = "channel-" + c;
+                // the messages of a channel are handled one after another, different channels in parallel
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < updates; i++) {
+                        TestModelingContext context = store.getOrCreate(channel);
+                        context.setTestCaseName(channel + "-" + i);
+                        context.setProject(project(i % 2));
+                        store.update(channel);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+        } finally {
+            executor.shutdown();
+        }
+        store.remove("channel-0");
+        store.shutdown();
+
+        // only the project that the remaining contexts reference is kept
+        try (SessionJournal documents = open("documents")) {
+            Assert.assertEquals(1, documents.recover(0).size());
+        }
+
+        store = new TestModelingContextStore(1000, 60);
+        store.enablePersistence(open("contexts"), open("documents"));
+        Assert.assertFalse(store.containsKey("channel-0"));
+        for (int c = 1; c < channels; c++) {
+            TestModelingContext context = store.get("channel-" + c);
+            Assert.assertNotNull(context);
+            Assert.assertEquals("channel-" + c + "-" + (updates - 1), context.getTestCaseName());
+            Assert.assertEquals(project((updates - 1) % 2), context.getProject());
+        }
+    }
+
+    /**
+     * Each stripe evicts its own least recently used context, but keeps pinned contexts.
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsedInStripe() {
+        // 2 contexts per stripe
+        store = new TestModelingContextStore(32, 60);
+        List<String> channels = channelsOfStripe(0, 4);
+        String a = channels.get(0), b = channels.get(1), c = channels.get(2), d = channels.get(3);
+        String other = channelsOfStripe(1, 1).get(0);
+
+        store.getOrCreate(a);
+        store.getOrCreate(b);
+        store.getOrCreate(other);
+        // a becomes the most recently used context, so b is evicted instead
+        store.get(a);
+        store.getOrCreate(c);
+        Assert.assertTrue(store.containsKey(a));
+        Assert.assertFalse(store.containsKey(b));
+        Assert.assertTrue(store.containsKey(c));
+        Assert.assertTrue(store.containsKey(other));
+        Assert.assertEquals(1, store.getEvictionCount());
+
+        // a is the least recently used context now, but it is in use
+        store.runPinned(a, () -> store.getOrCreate(d));
+        Assert.assertTrue(store.containsKey(a));
+        Assert.assertFalse(store.containsKey(c));
+        Assert.assertTrue(store.containsKey(d));
+        Assert.assertEquals(3, store.size());
+        Assert.assertEquals(2, store.getEvictionCount());
+    }
+
+    /**
+     * The sweeper evicts contexts once they have not been accessed for the idle timeout. Contexts that are accessed
+     * or in use when their deadline has passed are checked again later.
+     */
+    @Test
+    public void testEvictsIdleContexts() {
+        AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+        store = new TestModelingContextStore(1000, 1, now::get);
+        TestModelingContext a = store.getOrCreate("a");
+        store.getOrCreate("b");
+        store.getOrCreate("pinned");
+
+        now.addAndGet(TimeUnit.SECONDS.toMillis(30));
+        store.get("a");
+        now.addAndGet(TimeUnit.SECONDS.toMillis(40));
+        store.runPinned("pinned", () -> {
+            store.sweep();
+            return null;
+        });
+        Assert.assertFalse(store.containsKey("b"));
+        Assert.assertTrue(store.containsKey("a"));
+        Assert.assertTrue(store.containsKey("pinned"));
+
+        // accessed again after 70 seconds
+        Assert.assertSame(a, store.get("a"));
+        now.addAndGet(TimeUnit.SECONDS.toMillis(55));
+        store.sweep();
+        Assert.assertTrue(store.containsKey("a"));
+        Assert.assertFalse(store.containsKey("pinned"));
+        now.addAndGet(TimeUnit.SECONDS.toMillis(6));
+        store.sweep();
+        Assert.assertFalse(store.containsKey("a"));
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(3, store.getEvictionCount());
+    }
+
+    private static List<String> channelsOfStripe(int stripe, int count) {
+        List<String> channels = new ArrayList<>();
+        for (int i = 0; channels.size() < count; i++) {
+            if (TestModelingContextStore.stripeIndex("channel-" + i) == stripe) channels.add("channel-" + i);
+        }
+        return channels;
+    }
+
+    private SessionJournal open(String name) throws IOException {
+        return new SessionJournal(directory, name, 100);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject project(int id) {
+        JSONObject project = new JSONObject();
+        project.put("name", "project-" + id);
+        return project;
+    }
+}
@@ -0,0 +1,125 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Checks that {@link ChannelMailboxes} handles the tasks of one channel one after another and rejects tasks if the
+ * mailbox of their channel is full.
+ */
+public class ChannelMailboxesTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testTasksOfChannelInArrivalOrder() throws Exception {
+        ChannelMailboxes mailboxes = new ChannelMailboxes(10);
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = submit(mailboxes, "a", () -> {
+            await(release);
+            executed.add("a-1");
+            return "a-1";
+        });
+        awaitCondition(() -> mailboxes.getActiveChannelCount() == 1);
+        List<Future<String>> waiting = new ArrayList<>();
+        for (int i = 2; i <= 4; i++) {
+            String name = "a-" + i;
+            waiting.add(submit(mailboxes, "a", () -> {
+                executed.add(name);
+                return name;
+            }));
+            // the fair lock of the mailbox queues the tasks in this order
+            Thread.sleep(20);
+        }
+
+        // another channel is not blocked by channel a
+        Assert.assertEquals("b", mailboxes.execute("b", () -> "b", () -> "busy"));
+        Assert.assertTrue(executed.isEmpty());
+
+        release.countDown();
+        Assert.assertEquals("a-1", first.get(5, TimeUnit.SECONDS));
+        for (Future<String> future : waiting) future.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(List.of("a-1", "a-2", "a-3", "a-4"), executed);
+        Assert.assertEquals(0, mailboxes.getActiveChannelCount());
+        Assert.assertEquals(0, mailboxes.getRejectedCount());
+    }
+
+    @Test
+    public void testRejectsTasksIfMailboxIsFull() throws Exception {
+        ChannelMailboxes mailboxes = new ChannelMailboxes(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> running = submit(mailboxes, "a", () -> {
+            await(release);
+            return "running";
+        });
+        awaitCondition(() -> mailboxes.getActiveChannelCount() == 1);
+        Future<String> queued = submit(mailboxes, "a", () -> "queued");
+        Thread.sleep(20);
+
+        Assert.assertEquals("busy", mailboxes.execute("a", () -> "rejected", () -> "busy"));
+        Assert.assertEquals(1, mailboxes.getRejectedCount());
+
+        release.countDown();
+        Assert.assertEquals("running", running.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("accepted", mailboxes.execute("a", () -> "accepted", () -> "busy"));
+    }
+
+    /**
+     * A task that fails releases its slot, so that the mailbox is removed.
+     */
+    @Test
+    public void testFailingTaskReleasesSlot() {
+        ChannelMailboxes mailboxes = new ChannelMailboxes(1);
+        try {
+            mailboxes.execute("a", () -> {
+                throw new IllegalStateException();
+            }, () -> "busy");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(0, mailboxes.getActiveChannelCount());
+        Assert.assertEquals("ok", mailboxes.execute("a", () -> "ok", () -> "busy"));
+    }
+
+    private Future<String> submit(ChannelMailboxes mailboxes, String channel, Supplier<String> task) {
+        return executor.submit(() -> mailboxes.execute(channel, task, () -> "busy"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) Assert.fail("Condition not reached in time.");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Checks which values a {@link DiskLruStore} evicts and that expired values are no longer returned.
+ */
+public class DiskLruStoreTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("disk-lru-store");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        DiskLruStore store = DiskLruStore.open(directory, 3, 0);
+        store.write("a", "1");
+        store.write("b", "2");
+        store.write("c", "3");
+        // a becomes the most recently used key, so b is evicted instead
+        Assert.assertEquals("1", store.read("a"));
+        store.write("d", "4");
+
+        Assert.assertEquals(3, store.size());
+        Assert.assertNull(store.read("b"));
+        Assert.assertFalse(Files.exists(directory.resolve("b")));
+        Assert.assertEquals("1", store.read("a"));
+        Assert.assertEquals("3", store.read("c"));
+        Assert.assertEquals("4", store.read("d"));
+
+        // rewriting a key also makes it the most recently used one
+        store.write("a", "5");
+        store.write("e", "6");
+        Assert.assertNull(store.read("c"));
+        Assert.assertEquals("5", store.read("a"));
+    }
+
+    @Test
+    public void testRestoresKeysAfterReopening() throws Exception {
+        DiskLruStore store = DiskLruStore.open(directory, 2, 0);
+        store.write("a", "1");
+        // the keys are restored in the order in which their files were written
+        Thread.sleep(20);
+        store.write("b", "2");
+        Files.writeString(directory.resolve("c-123.tmp"), "partial");
+
+        DiskLruStore reopened = DiskLruStore.open(directory, 2, 0);
+        Assert.assertEquals(2, reopened.size());
+        Assert.assertFalse(Files.exists(directory.resolve("c-123.tmp")));
+        reopened.write("c", "3");
+        Assert.assertNull(reopened.read("a"));
+        Assert.assertEquals("2", reopened.read("b"));
+        Assert.assertEquals("3", reopened.read("c"));
+    }
+
+    @Test
+    public void testExpiresValuesOnRead() throws Exception {
+        DiskLruStore store = DiskLruStore.open(directory, 10, 200);
+        store.write("a", "1");
+        Assert.assertEquals("1", store.read("a"));
+        Thread.sleep(300);
+        store.write("b", "2");
+
+        // reading does not extend the age of a value
+        Assert.assertNull(store.read("a"));
+        Assert.assertFalse(Files.exists(directory.resolve("a")));
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals("2", store.read("b"));
+
+        // expired files are removed when the store is opened
+        Thread.sleep(300);
+        Assert.assertEquals(0, DiskLruStore.open(directory, 10, 200).size());
+        Assert.assertFalse(Files.exists(directory.resolve("b")));
+    }
+}
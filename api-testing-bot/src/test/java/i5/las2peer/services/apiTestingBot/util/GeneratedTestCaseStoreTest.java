@@ -0,0 +1,153 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import i5.las2peer.apiTestModel.TestCase;
+import i5.las2peer.services.apiTestingBot.context.SessionJournal;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Checks the histories of the {@link GeneratedTestCaseStore}, their eviction, and their recovery from the journal.
+ */
+public class GeneratedTestCaseStoreTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("generated-test-cases");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testHistoryOfPullRequest() {
+        GeneratedTestCaseStore store = new GeneratedTestCaseStore();
+        store.setLimits(10, 2);
+        Assert.assertEquals(1, store.add("owner/repo#1", testCase("a")));
+        Assert.assertEquals(2, store.add("owner/repo#1", testCase("b")));
+        Assert.assertEquals(3, store.add("owner/repo#1", testCase("c")));
+
+        // only the last two test cases are kept, the numbers are not reused
+        Assert.assertNull(store.get("owner/repo#1", 1));
+        Assert.assertEquals("b", store.get("owner/repo#1", 2).getName());
+        Assert.assertEquals("c", store.getLatest("owner/repo#1").getName());
+        Assert.assertEquals(2, store.getTestCaseCount());
+
+        store.remove("owner/repo#1");
+        Assert.assertNull(store.getLatest("owner/repo#1"));
+        Assert.assertEquals(0, store.getPullRequestCount());
+        Assert.assertEquals(0, store.getTestCaseCount());
+    }
+
+    /**
+     * The pull request of a repository whose test cases were generated least recently is evicted.
+     */
+    @Test
+    public void testEvictsLeastRecentlyUpdatedPullRequest() {
+        GeneratedTestCaseStore store = new GeneratedTestCaseStore();
+        store.setLimits(2, 5);
+        store.add("owner/repo#1", testCase("a"));
+        store.add("owner/repo#2", testCase("b"));
+        store.add("owner/other#1", testCase("c"));
+        store.add("owner/repo#1", testCase("d"));
+        store.add("owner/repo#3", testCase("e"));
+
+        Assert.assertNull(store.getLatest("owner/repo#2"));
+        Assert.assertEquals("d", store.getLatest("owner/repo#1").getName());
+        Assert.assertEquals("e", store.getLatest("owner/repo#3").getName());
+        // other repositories have their own limit
+        Assert.assertEquals("c", store.getLatest("owner/other#1").getName());
+        Assert.assertEquals(1, store.getEvictionCount());
+        Assert.assertEquals(3, store.getPullRequestCount());
+        Assert.assertEquals(4, store.getTestCaseCount());
+    }
+
+    @Test
+    public void testRecoversFromJournal() throws Exception {
+        try (SessionJournal journal = open()) {
+            GeneratedTestCaseStore store = new GeneratedTestCaseStore();
+            store.enablePersistence(journal);
+            store.add("owner/repo#1", testCase("a"));
+            Thread.sleep(5);
+            store.add("owner/repo#2", testCase("b"));
+            Thread.sleep(5);
+            store.add("owner/repo#1", testCase("c"));
+            store.add("owner/repo#4", testCase("removed"));
+            store.remove("owner/repo#4");
+            // record of a version that only kept the latest test case of a pull request
+            journal.put("owner/repo#3", SessionJournal.serialize(testCase("legacy")));
+        }
+
+        try (SessionJournal journal = open()) {
+            GeneratedTestCaseStore store = new GeneratedTestCaseStore();
+            store.enablePersistence(journal);
+            Assert.assertEquals(3, store.getPullRequestCount());
+            Assert.assertEquals(4, store.getTestCaseCount());
+            Assert.assertEquals("a", store.get("owner/repo#1", 1).getName());
+            Assert.assertEquals("c", store.get("owner/repo#1", 2).getName());
+            Assert.assertEquals("legacy", store.get("owner/repo#3", 1).getName());
+            Assert.assertNull(store.getLatest("owner/repo#4"));
+            Assert.assertEquals(3, store.add("owner/repo#1", testCase("d")));
+
+            // the order of the pull requests is restored: #3 (legacy) and #2 are the least recently updated ones
+            store.setLimits(2, 5);
+            store.add("owner/repo#5", testCase("e"));
+            Assert.assertNull(store.getLatest("owner/repo#3"));
+            Assert.assertNull(store.getLatest("owner/repo#2"));
+            Assert.assertNotNull(store.getLatest("owner/repo#1"));
+        }
+    }
+
+    /**
+     * A record that cannot be deserialized only loses the test cases of its pull request.
+     */
+    @Test
+    public void testSkipsCorruptRecords() throws Exception {
+        try (SessionJournal journal = open()) {
+            GeneratedTestCaseStore store = new GeneratedTestCaseStore();
+            store.enablePersistence(journal);
+            store.add("owner/repo#1", testCase("a"));
+            journal.put("owner/repo#2", "not serialized".getBytes(StandardCharsets.UTF_8));
+            journal.put("owner/repo#3", SessionJournal.serialize(new ArrayList<>()));
+            store.add("owner/repo#4", testCase("b"));
+        }
+
+        try (SessionJournal journal = open()) {
+            GeneratedTestCaseStore store = new GeneratedTestCaseStore();
+            store.enablePersistence(journal);
+            Assert.assertEquals(2, store.getPullRequestCount());
+            Assert.assertEquals("a", store.getLatest("owner/repo#1").getName());
+            Assert.assertEquals("b", store.getLatest("owner/repo#4").getName());
+
+            // the corrupt records are removed and the journal is still used
+            store.add("owner/repo#5", testCase("c"));
+        }
+
+        try (SessionJournal journal = open()) {
+            Assert.assertEquals(3, journal.recover(0).size());
+        }
+    }
+
+    private SessionJournal open() throws IOException {
+        return new SessionJournal(directory, "generated-test-cases", 100);
+    }
+
+    private static TestCase testCase(String name) {
+        return new TestCase(name, new ArrayList<>());
+    }
+}
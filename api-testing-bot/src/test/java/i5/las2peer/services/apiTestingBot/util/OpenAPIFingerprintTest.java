@@ -0,0 +1,116 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks which differences between documents change their fingerprint.
+ */
+public class OpenAPIFingerprintTest {
+
+    private static final String DOC = "{\"openapi\": \"3.0.0\", \"info\": {\"title\": \"Items\", \"version\": \"1.0\"}, "
+            + "\"paths\": {\"/items\": {\"get\": {\"responses\": {\"200\": {\"description\": \"OK\"}}}}}, "
+            + "\"tags\": [\"a\", \"b\"]}";
+
+    @Test
+    public void testKeyOrder() {
+        String reordered = "{\"tags\": [\"a\", \"b\"], "
+                + "\"paths\": {\"/items\": {\"get\": {\"responses\": {\"200\": {\"description\": \"OK\"}}}}}, "
+                + "\"info\": {\"version\": \"1.0\", \"title\": \"Items\"}, \"openapi\": \"3.0.0\"}";
+        Assert.assertEquals(OpenAPIFingerprint.fingerprint(DOC), OpenAPIFingerprint.fingerprint(reordered));
+        Assert.assertTrue(OpenAPIFingerprint.sameContent(DOC, reordered));
+
+        // moving a member into another object is not a reordering
+        String moved = "{\"openapi\": \"3.0.0\", \"info\": {\"title\": \"Items\"}, \"version\": \"1.0\", "
+                + "\"paths\": {\"/items\": {\"get\": {\"responses\": {\"200\": {\"description\": \"OK\"}}}}}, "
+                + "\"tags\": [\"a\", \"b\"]}";
+        Assert.assertNotEquals(OpenAPIFingerprint.fingerprint(DOC), OpenAPIFingerprint.fingerprint(moved));
+    }
+
+    /**
+     * Objects with many members (more than the initial capacity of a nesting level) that are reordered, also in
+     * nested objects that reuse the nesting level of a previous object.
+     */
+    @Test
+    public void testReorderedMembers() {
+        List<String> members = new ArrayList<>();
+        for (int i = 0; i < 100; i++) members.add("\"p" + i + "\": {\"k" + (i % 7) + "\": " + i + "}");
+        String doc = "{\"a\": {\"x\": 1}, \"b\": {" + String.join(", ", members) + "}}";
+        Collections.shuffle(members, new Random(1));
+        String shuffled = "{\"b\": {" + String.join(", ", members) + "}, \"a\": {\"x\": 1}}";
+        Assert.assertEquals(OpenAPIFingerprint.fingerprint(doc), OpenAPIFingerprint.fingerprint(shuffled));
+
+        // the same keys and values in other members
+        Assert.assertNotEquals(OpenAPIFingerprint.fingerprint("{\"a\": 1, \"b\": 2}"),
+                OpenAPIFingerprint.fingerprint("{\"a\": 2, \"b\": 1}"));
+        // a repeated member is not the same as a single one
+        Assert.assertNotEquals(OpenAPIFingerprint.fingerprint("{\"a\": 1}"),
+                OpenAPIFingerprint.fingerprint("{\"a\": 1, \"a\": 1}"));
+    }
+
+    @Test
+    public void testJsonAndYaml() {
+        String yaml = "openapi: 3.0.0\n"
+                + "info:\n"
+                + "  title: Items\n"
+                + "  version: \"1.0\"\n"
+                + "paths:\n"
+                + "  /items:\n"
+                + "    get:\n"
+                + "      responses:\n"
+                + "        \"200\":\n"
+                + "          description: OK\n"
+                + "tags:\n"
+                + "  - a\n"
+                + "  - b\n";
+        Assert.assertEquals(OpenAPIFingerprint.fingerprint(DOC), OpenAPIFingerprint.fingerprint(yaml));
+
+        // unquoted, the version is a number instead of a string
+        Assert.assertNotEquals(OpenAPIFingerprint.fingerprint(DOC),
+                OpenAPIFingerprint.fingerprint(yaml.replace("\"1.0\"", "1.0")));
+    }
+
+    @Test
+    public void testNumbers() {
+        Assert.assertEquals(OpenAPIFingerprint.fingerprint("{\"maximum\": 1}"),
+                OpenAPIFingerprint.fingerprint("{\"maximum\": 1.0}"));
+        Assert.assertEquals(OpenAPIFingerprint.fingerprint("{\"maximum\": 1.5}"),
+                OpenAPIFingerprint.fingerprint("{\"maximum\": 1.50}"));
+        Assert.assertNotEquals(OpenAPIFingerprint.fingerprint("{\"maximum\": 1}"),
+                OpenAPIFingerprint.fingerprint("{\"maximum\": 1.5}"));
+        Assert.assertNotEquals(OpenAPIFingerprint.fingerprint("{\"maximum\": 1}"),
+                OpenAPIFingerprint.fingerprint("{\"maximum\": \"1\"}"));
+    }
+
+    @Test
+    public void testArrayOrder() {
+        Assert.assertNotEquals(OpenAPIFingerprint.fingerprint(DOC),
+                OpenAPIFingerprint.fingerprint(DOC.replace("[\"a\", \"b\"]", "[\"b\", \"a\"]")));
+        Assert.assertNotEquals(OpenAPIFingerprint.fingerprint("[[1, 2], [3]]"),
+                OpenAPIFingerprint.fingerprint("[[1], [2, 3]]"));
+    }
+
+    /**
+     * Documents that cannot be parsed are fingerprinted by their raw content.
+     */
+    @Test
+    public void testUnparsableDocument() throws Exception {
+        String broken = "{\"openapi\": \"3.0.0\", \"paths\": {";
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(broken.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : expected) hex.append(String.format("%02x", b));
+
+        Assert.assertEquals(hex.toString(), OpenAPIFingerprint.fingerprint(broken));
+        Assert.assertEquals(hex.substring(0, 32), OpenAPIFingerprint.fingerprint128(broken));
+        // no normalization of the raw content
+        Assert.assertNotEquals(OpenAPIFingerprint.fingerprint(broken), OpenAPIFingerprint.fingerprint(broken + " "));
+        Assert.assertFalse(OpenAPIFingerprint.sameContent(broken, broken + " "));
+    }
+}
@@ -0,0 +1,76 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openapitools.openapidiff.core.OpenApiCompare;
+import org.openapitools.openapidiff.core.model.ChangedOpenApi;
+
+/**
+ * Checks that the operation-based diff finds the same differences as openapi-diff on the complete documents, for
+ * OpenAPI 3 and Swagger 2.0 documents (las2peer services publish the latter).
+ */
+public class OperationDiffEngineTest {
+
+    private static final String SWAGGER_OLD = "{\"swagger\":\"2.0\",\"info\":{\"title\":\"Service\",\"version\":\"1.0\"},"
+            + "\"basePath\":\"/service\",\"paths\":{"
+            + "\"/items\":{\"get\":{\"responses\":{\"200\":{\"description\":\"OK\"}}}},"
+            + "\"/users\":{\"get\":{\"responses\":{\"200\":{\"description\":\"OK\"}}}}}}";
+
+    private static final String SWAGGER_UPDATED = "{\"swagger\":\"2.0\",\"info\":{\"title\":\"Service\","
+            + "\"version\":\"1.0\"},\"basePath\":\"/service\",\"paths\":{"
+            + "\"/users\":{\"get\":{\"responses\":{\"200\":{\"description\":\"OK\"}}}},"
+            + "\"/groups\":{\"get\":{\"responses\":{\"200\":{\"description\":\"OK\"}}}}}}";
+
+    @Test
+    public void testSwagger2() {
+        ChangedOpenApi expected = OpenApiCompare.fromContents(SWAGGER_OLD, SWAGGER_UPDATED);
+        ChangedOpenApi diff = OperationDiffEngine.diff(SWAGGER_OLD, SWAGGER_UPDATED);
+
+        Assert.assertEquals(1, diff.getNewEndpoints().size());
+        Assert.assertEquals(1, diff.getMissingEndpoints().size());
+        Assert.assertEquals(expected.getNewEndpoints().size(), diff.getNewEndpoints().size());
+        Assert.assertEquals(expected.getMissingEndpoints().size(), diff.getMissingEndpoints().size());
+        Assert.assertEquals("/groups", diff.getNewEndpoints().get(0).getPathUrl());
+        Assert.assertEquals("/items", diff.getMissingEndpoints().get(0).getPathUrl());
+
+        Assert.assertTrue(OperationDiffEngine.operationsUnchanged(SWAGGER_OLD, SWAGGER_OLD));
+        Assert.assertFalse(OperationDiffEngine.operationsUnchanged(SWAGGER_OLD, SWAGGER_UPDATED));
+    }
+
+    @Test
+    public void testChangedOperation() {
+        String old = openAPIDoc("200");
+        String updated = openAPIDoc("201");
+        ChangedOpenApi expected = OpenApiCompare.fromContents(old, updated);
+        ChangedOpenApi diff = OperationDiffEngine.diff(old, updated);
+
+        Assert.assertEquals(expected.getChangedOperations().size(), diff.getChangedOperations().size());
+        Assert.assertEquals(1, diff.getChangedOperations().size());
+        Assert.assertTrue(diff.getNewEndpoints().isEmpty());
+        Assert.assertTrue(diff.getMissingEndpoints().isEmpty());
+        Assert.assertTrue(OperationDiffEngine.operationsUnchanged(old, old));
+    }
+
+    /**
+     * The document-wide servers and security requirements apply to every operation.
+     */
+    @Test
+    public void testDocumentWideChanges() {
+        String old = openAPIDoc("200");
+        String withServer = old.replace("\"paths\"", "\"servers\":[{\"url\":\"https://example.org/v2\"}],\"paths\"");
+        String withSecurity = old.replace("\"paths\"", "\"security\":[{\"oauth\":[]}],\"paths\"");
+
+        Assert.assertFalse(OperationDiffEngine.operationsUnchanged(old, withServer));
+        Assert.assertFalse(OperationDiffEngine.operationsUnchanged(old, withSecurity));
+        Assert.assertTrue(OperationDiffEngine.operationsUnchanged(withSecurity, withSecurity));
+    }
+
+    /**
+     * OpenAPI 3 document with two operations, the given response code belongs to the first one.
+     */
+    private static String openAPIDoc(String responseCode) {
+        return "{\"openapi\":\"3.0.1\",\"info\":{\"title\":\"Service\",\"version\":\"1.0\"},\"paths\":{"
+                + "\"/items\":{\"get\":{\"responses\":{\"" + responseCode + "\":{\"description\":\"OK\"}}}},"
+                + "\"/users\":{\"get\":{\"responses\":{\"200\":{\"description\":\"OK\"}}}}}}";
+    }
+}
@@ -0,0 +1,74 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks which workflow run events of a pull request the {@link PullRequestJobCoalescer} lets through.
+ */
+public class PullRequestJobCoalescerTest {
+
+    private static final String PR = "owner/repo#1";
+
+    private final PullRequestJobCoalescer coalescer = new PullRequestJobCoalescer();
+
+    @Test
+    public void testNewerCommitCancelsRunningJobs() {
+        PullRequestJobCoalescer.Job first = coalescer.register(PR, "sha-1", "sha-1", "2024-01-01T10:00:00Z");
+        Assert.assertNotNull(first);
+        Assert.assertTrue(coalescer.claim(first));
+
+        PullRequestJobCoalescer.Job second = coalescer.register(PR, "sha-2", "sha-2", "2024-01-01T10:05:00Z");
+        Assert.assertNotNull(second);
+        Assert.assertTrue(first.isCancelled());
+        Assert.assertFalse(second.isCancelled());
+        Assert.assertEquals(1, coalescer.getCancelledJobCount());
+        // the claim of the older commit does not block the newer one
+        Assert.assertTrue(coalescer.claim(second));
+        coalescer.finish(first, false);
+        coalescer.finish(second, true);
+
+        // other pull requests are independent
+        Assert.assertNotNull(coalescer.register("owner/repo#2", "sha-1", "sha-1", "2024-01-01T10:00:00Z"));
+        Assert.assertEquals(0, coalescer.getCoalescedEventCount());
+    }
+
+    @Test
+    public void testSkipsOutdatedEvents() {
+        // the pull request has already been updated when the event is delivered
+        Assert.assertNull(coalescer.register(PR, "sha-1", "sha-2", "2024-01-01T10:00:00Z"));
+
+        PullRequestJobCoalescer.Job job = coalescer.register(PR, "sha-2", "sha-2", "2024-01-01T10:05:00Z");
+        Assert.assertNotNull(job);
+        // the event of an older workflow run arrives late
+        Assert.assertNull(coalescer.register(PR, "sha-1", null, "2024-01-01T10:00:00Z"));
+        Assert.assertFalse(job.isCancelled());
+        Assert.assertEquals(2, coalescer.getCoalescedEventCount());
+    }
+
+    /**
+     * Only one workflow run of a commit is handled. If it fails, a later run of the same commit is handled.
+     */
+    @Test
+    public void testClaimPerCommit() {
+        PullRequestJobCoalescer.Job first = coalescer.register(PR, "sha-1", "sha-1", "2024-01-01T10:00:00Z");
+        PullRequestJobCoalescer.Job second = coalescer.register(PR, "sha-1", "sha-1", "2024-01-01T10:01:00Z");
+        Assert.assertNotNull(second);
+        Assert.assertTrue(coalescer.claim(first));
+        Assert.assertFalse(coalescer.claim(second));
+        coalescer.finish(second, false);
+
+        // a re-run while the commit is claimed
+        Assert.assertNull(coalescer.register(PR, "sha-1", "sha-1", "2024-01-01T10:02:00Z"));
+
+        coalescer.finish(first, false);
+        PullRequestJobCoalescer.Job rerun = coalescer.register(PR, "sha-1", "sha-1", "2024-01-01T10:03:00Z");
+        Assert.assertNotNull(rerun);
+        Assert.assertTrue(coalescer.claim(rerun));
+        coalescer.finish(rerun, true);
+
+        // the commit has been handled successfully
+        Assert.assertNull(coalescer.register(PR, "sha-1", "sha-1", "2024-01-01T10:04:00Z"));
+        Assert.assertEquals(0, coalescer.getCancelledJobCount());
+    }
+}
@@ -0,0 +1,38 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks which responses the {@link RetryPolicy} retries and that its backoff stays within its bounds.
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void testRetryableStatusCodes() {
+        Assert.assertTrue(RetryPolicy.isRetryable(500));
+        Assert.assertTrue(RetryPolicy.isRetryable(503));
+        Assert.assertTrue(RetryPolicy.isRetryable(408));
+        Assert.assertTrue(RetryPolicy.isRetryable(429));
+        Assert.assertFalse(RetryPolicy.isRetryable(400));
+        Assert.assertFalse(RetryPolicy.isRetryable(404));
+    }
+
+    @Test
+    public void testBackoffWithJitter() {
+        RetryPolicy policy = new RetryPolicy(500, 3000);
+        for (int i = 0; i < 100; i++) {
+            assertBetween(250, 500, policy.backoffMillis(1));
+            assertBetween(500, 1000, policy.backoffMillis(2));
+            assertBetween(1000, 2000, policy.backoffMillis(3));
+            // capped at the maximum backoff, also for attempts that would overflow the shift
+            assertBetween(1500, 3000, policy.backoffMillis(4));
+            assertBetween(1500, 3000, policy.backoffMillis(100));
+        }
+    }
+
+    private static void assertBetween(long min, long max, long value) {
+        Assert.assertTrue(value + " < " + min, value >= min);
+        Assert.assertTrue(value + " > " + max, value <= max);
+    }
+}
@@ -0,0 +1,155 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks the retries of the {@link SBFForwarder} and its dead-letter spool using a local mock of the SBF.
+ */
+public class SBFForwarderTest {
+
+    private HttpServer server;
+    private String url;
+    private Path spool;
+
+    /**
+     * Status codes that the mock server answers with (in this order), 200 once they are used up.
+     */
+    private final Queue<Integer> statusCodes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Bodies of the received requests, together with their event name ([EVENT] [BODY]).
+     */
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void startMockServer() throws IOException {
+        spool = Files.createTempDirectory("sbf-dead-letters");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/sbf/webhook", this::handle);
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/sbf/webhook";
+    }
+
+    @After
+    public void stopMockServer() throws IOException {
+        server.stop(0);
+        try (Stream<Path> files = Files.walk(spool)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRetriesRetryableResponses() throws Exception {
+        statusCodes.addAll(List.of(503, 429));
+        SBFForwarder forwarder = new SBFForwarder(0, 0, 3, spool.toString());
+        try {
+            Assert.assertTrue(forwarder.forward(url, "push", "{\"a\":1}").get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(List.of("push {\"a\":1}", "push {\"a\":1}", "push {\"a\":1}"), received);
+            Assert.assertEquals(2, forwarder.getRetryCount());
+            Assert.assertEquals(1, forwarder.getDeliveredCount());
+            Assert.assertTrue(spooled(spool).isEmpty());
+        } finally {
+            forwarder.shutdown();
+        }
+    }
+
+    /**
+     * An event that could not be delivered with the maximum number of attempts is spooled and delivered again when
+     * the next forwarder is created.
+     */
+    @Test
+    public void testRedeliversDeadLetters() throws Exception {
+        statusCodes.addAll(List.of(500, 500));
+        SBFForwarder forwarder = new SBFForwarder(0, 0, 2, spool.toString());
+        try {
+            Assert.assertFalse(forwarder.forward(url, "push", "{\"a\":1}").get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(2, received.size());
+            Assert.assertEquals(1, forwarder.getDeadLetterCount());
+        } finally {
+            forwarder.shutdown();
+        }
+        List<Path> files = spooled(spool);
+        Assert.assertEquals(1, files.size());
+        JSONObject entry = (JSONObject) JSONValue.parse(Files.readString(files.get(0), StandardCharsets.UTF_8));
+        Assert.assertEquals(url, entry.get("url"));
+        Assert.assertEquals("push", entry.get("eventName"));
+        Assert.assertEquals("{\"a\":1}", entry.get("body"));
+
+        forwarder = new SBFForwarder(0, 0, 2, spool.toString());
+        try {
+            Assert.assertTrue(spooled(spool).isEmpty());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (forwarder.getDeliveredCount() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+            Assert.assertEquals(1, forwarder.getDeliveredCount());
+            Assert.assertEquals(3, received.size());
+        } finally {
+            forwarder.shutdown();
+        }
+    }
+
+    /**
+     * Events that the SBF rejects with a 4xx response are neither retried nor delivered again.
+     */
+    @Test
+    public void testKeepsRejectedEvents() throws Exception {
+        statusCodes.add(400);
+        SBFForwarder forwarder = new SBFForwarder(0, 0, 3, spool.toString());
+        try {
+            Assert.assertFalse(forwarder.forward(url, "issues", "{}").get(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, received.size());
+            Assert.assertEquals(1, forwarder.getRejectedCount());
+            Assert.assertEquals(0, forwarder.getRetryCount());
+            Assert.assertEquals(0, forwarder.getDeadLetterCount());
+        } finally {
+            forwarder.shutdown();
+        }
+        Assert.assertTrue(spooled(spool).isEmpty());
+        Path rejected = spool.resolve(SBFForwarder.REJECTED_DIRECTORY);
+        Assert.assertEquals(1, spooled(rejected).size());
+
+        forwarder = new SBFForwarder(0, 0, 3, spool.toString());
+        try {
+            Thread.sleep(200);
+            Assert.assertEquals(1, received.size());
+            Assert.assertEquals(1, spooled(rejected).size());
+        } finally {
+            forwarder.shutdown();
+        }
+    }
+
+    private static List<Path> spooled(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".json")).collect(Collectors.toList());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        received.add(exchange.getRequestHeaders().getFirst("X-GitHub-Event") + " "
+                + new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        Integer status = statusCodes.poll();
+        exchange.sendResponseHeaders(status == null ? 200 : status, -1);
+        exchange.close();
+    }
+}
@@ -0,0 +1,150 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import i5.las2peer.services.apiTestingBot.context.SessionJournal;
+import i5.las2peer.services.apiTestingBot.util.WebhookIngestionQueue.Result;
+import i5.las2peer.services.apiTestingBot.util.WebhookIngestionQueue.WebhookEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the {@link WebhookIngestionQueue} detects redeliveries, rejects events if it is full, and handles the
+ * events that were pending before a restart.
+ */
+public class WebhookIngestionQueueTest {
+
+    /**
+     * Runs the workers on the calling thread.
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    private Path directory;
+    private final List<String> handled = new ArrayList<>();
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("webhook-events");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testIgnoresRedeliveries() {
+        WebhookIngestionQueue queue = new WebhookIngestionQueue(event -> handled.add(event.getDeliveryId()));
+        Assert.assertEquals(Result.ACCEPTED, queue.submit(event("1"), DIRECT));
+        Assert.assertEquals(Result.DUPLICATE, queue.submit(event("1"), DIRECT));
+        Assert.assertEquals(Result.ACCEPTED, queue.submit(event("2"), DIRECT));
+
+        Assert.assertEquals(List.of("1", "2"), handled);
+        Assert.assertEquals(2, queue.getAcceptedCount());
+        Assert.assertEquals(1, queue.getDuplicateCount());
+        Assert.assertEquals(2, queue.getHandledCount());
+    }
+
+    /**
+     * An event whose handling failed can be redelivered manually.
+     */
+    @Test
+    public void testAcceptsRedeliveryOfFailedEvent() {
+        WebhookIngestionQueue queue = new WebhookIngestionQueue(event -> {
+            handled.add(event.getDeliveryId());
+            if (handled.size() == 1) throw new IllegalStateException("first attempt fails");
+        });
+        Assert.assertEquals(Result.ACCEPTED, queue.submit(event("1"), DIRECT));
+        Assert.assertEquals(1, queue.getFailedCount());
+        Assert.assertEquals(Result.ACCEPTED, queue.submit(event("1"), DIRECT));
+        Assert.assertEquals(List.of("1", "1"), handled);
+        Assert.assertEquals(1, queue.getHandledCount());
+    }
+
+    @Test
+    public void testRejectsEventsIfFull() {
+        ManualExecutor executor = new ManualExecutor();
+        WebhookIngestionQueue queue = new WebhookIngestionQueue(event -> handled.add(event.getDeliveryId()));
+        queue.setLimits(2, 1);
+
+        Assert.assertEquals(Result.ACCEPTED, queue.submit(event("1"), executor));
+        Assert.assertEquals(Result.ACCEPTED, queue.submit(event("2"), executor));
+        Assert.assertEquals(Result.REJECTED, queue.submit(event("3"), executor));
+        Assert.assertEquals(1, queue.getRejectedCount());
+        // only one worker is started
+        Assert.assertEquals(1, executor.tasks.size());
+        Assert.assertFalse(queue.shutdown(10));
+
+        executor.runAll();
+        Assert.assertEquals(List.of("1", "2"), handled);
+        Assert.assertTrue(queue.shutdown(1000));
+        Assert.assertEquals(Result.REJECTED, queue.submit(event("4"), DIRECT));
+    }
+
+    @Test
+    public void testHandlesPendingEventsAfterRestart() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        try (SessionJournal journal = open()) {
+            WebhookIngestionQueue queue = new WebhookIngestionQueue(event -> handled.add(event.getDeliveryId()));
+            queue.enablePersistence(journal);
+            queue.submit(event("1"), executor);
+            Thread.sleep(5);
+            queue.submit(event("2"), executor);
+            // the workers are not executed before the restart
+        }
+
+        try (SessionJournal journal = open()) {
+            WebhookIngestionQueue queue = new WebhookIngestionQueue(event -> handled.add(event.getDeliveryId()));
+            queue.enablePersistence(journal);
+            Assert.assertEquals(2, queue.getQueueSize());
+            Assert.assertEquals(Result.DUPLICATE, queue.submit(event("2"), DIRECT));
+            Assert.assertTrue(handled.isEmpty());
+
+            // the pending events are handled (in the order of receipt) with the next event
+            Assert.assertEquals(Result.ACCEPTED, queue.submit(event("3"), DIRECT));
+            Assert.assertEquals(List.of("1", "2", "3"), handled);
+        }
+
+        try (SessionJournal journal = open()) {
+            Assert.assertTrue(journal.recover(0).isEmpty());
+        }
+    }
+
+    private SessionJournal open() throws IOException {
+        return new SessionJournal(directory, "webhook-events", 100);
+    }
+
+    private static WebhookEvent event(String deliveryId) {
+        return new WebhookEvent(deliveryId, "pull_request", "{}", 1);
+    }
+
+    /**
+     * Executor that only runs its tasks when the test asks it to.
+     */
+    private static class ManualExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) task.run();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package i5.las2peer.services.apiTestingBot.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.github.GHArtifact;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks the number of GitHub API calls that are needed to resolve the OpenAPI doc artifacts of a pull request
+ * workflow run event, using a local mock of the GitHub API.
+ */
+public class WorkflowArtifactResolverTest {
+
+    private static final String REPO = "owner/repo";
+    private static final long HEAD_RUN_ID = 1;
+    private static final long BASE_RUN_ID = 2;
+    private static final long OLD_RUN_ID = 3;
+    private static final String ARTIFACT_NAME = "swagger.json";
+
+    private HttpServer server;
+    private String apiUrl;
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private boolean headShaFilterSupported = true;
+
+    /**
+     * Whether the branch has more workflow runs than are scanned, none of them of a requested commit.
+     */
+    private boolean endlessWorkflowRuns = false;
+
+    @Before
+    public void startMockGitHub() throws IOException {
+        WorkflowArtifactResolver.clearWorkflowRunIds();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        apiUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopMockGitHub() {
+        server.stop(0);
+    }
+
+    /**
+     * The head run lists swagger.json on its first artifact page, the base run on its second one.
+     */
+    @Test
+    public void testApiCallsPerEvent() throws Exception {
+        GitHubAppHelper helper = new GitHubAppHelper(1, generatePrivateKey(), apiUrl);
+
+        // first event: authentication (app, installation lookup, installation, token), base run lookup, repository,
+        // head run + 1 artifact page (pagination stops at the match), base run + 2 artifact pages
+        resolveLikeWorkflowEvent(new WorkflowArtifactResolver(helper, REPO));
+        Assert.assertEquals(calls.toString(), 11, calls.size());
+        Assert.assertFalse(calls.toString(), calls.contains("GET /repos/owner/repo/actions/runs/1/artifacts?page=2"));
+
+        // second event: authentication and base run lookup are cached, listings are requested again (new resolver per
+        // event)
+        calls.clear();
+        resolveLikeWorkflowEvent(new WorkflowArtifactResolver(helper, REPO));
+        Assert.assertEquals(calls.toString(), 6, calls.size());
+        Assert.assertTrue(calls.toString(), calls.stream().noneMatch(call -> call.contains("/app")));
+        Assert.assertFalse(calls.toString(), calls.contains("GET /repos/owner/repo/actions/runs"));
+    }
+
+    @Test
+    public void testMissingArtifact() throws Exception {
+        GitHubAppHelper helper = new GitHubAppHelper(1, generatePrivateKey(), apiUrl);
+        WorkflowArtifactResolver resolver = new WorkflowArtifactResolver(helper, REPO);
+
+        Assert.assertNull(resolver.getArtifact(HEAD_RUN_ID, "coverage.xml"));
+        int callsAfterFirstLookup = calls.size();
+        // negative result is memoized as well
+        Assert.assertNull(resolver.getArtifact(HEAD_RUN_ID, "coverage.xml"));
+        Assert.assertEquals(callsAfterFirstLookup, calls.size());
+    }
+
+    @Test
+    public void testWorkflowRunLookupFiltersByHeadShaAndIsCached() throws Exception {
+        GitHubAppHelper helper = new GitHubAppHelper(1, generatePrivateKey(), apiUrl);
+
+        // authentication and one filtered request (no repository lookup, no pagination)
+        Assert.assertEquals(BASE_RUN_ID,
+                new WorkflowArtifactResolver(helper, REPO).findWorkflowRunId("main", "base-sha"));
+        Assert.assertEquals(calls.toString(), 5, calls.size());
+        Assert.assertTrue(calls.toString(), calls.contains("GET /repos/owner/repo/actions/runs"));
+        Assert.assertFalse(calls.toString(), calls.contains("GET /repos/owner/repo"));
+
+        // further events for the same base commit do not need any API call
+        calls.clear();
+        Assert.assertEquals(BASE_RUN_ID,
+                new WorkflowArtifactResolver(helper, REPO).findWorkflowRunId("main", "base-sha"));
+        Assert.assertEquals(calls.toString(), 0, calls.size());
+    }
+
+    /**
+     * A run older than the newest 500 runs of the branch is found as well.
+     */
+    @Test
+    public void testWorkflowRunLookupOfOldCommit() throws Exception {
+        GitHubAppHelper helper = new GitHubAppHelper(1, generatePrivateKey(), apiUrl);
+        Assert.assertEquals(OLD_RUN_ID,
+                new WorkflowArtifactResolver(helper, REPO).findWorkflowRunId("main", "old-sha"));
+        Assert.assertEquals(-1, new WorkflowArtifactResolver(helper, REPO).findWorkflowRunId("main", "unknown-sha"));
+    }
+
+    /**
+     * If the API ignores the head_sha filter, the runs of the branch are scanned until the first run of the commit.
+     */
+    @Test
+    public void testWorkflowRunLookupWithoutHeadShaFilter() throws Exception {
+        headShaFilterSupported = false;
+        GitHubAppHelper helper = new GitHubAppHelper(1, generatePrivateKey(), apiUrl);
+        Assert.assertEquals(BASE_RUN_ID,
+                new WorkflowArtifactResolver(helper, REPO).findWorkflowRunId("main", "base-sha"));
+        Assert.assertTrue(calls.toString(), calls.contains("GET /repos/owner/repo"));
+        Assert.assertFalse(calls.toString(), calls.contains("GET /repos/owner/repo/actions/runs?page=2"));
+    }
+
+    /**
+     * The scan stops after the newest 1000 runs of the branch.
+     */
+    @Test
+    public void testWorkflowRunScanIsCapped() throws Exception {
+        headShaFilterSupported = false;
+        endlessWorkflowRuns = true;
+        GitHubAppHelper helper = new GitHubAppHelper(1, generatePrivateKey(), apiUrl);
+        Assert.assertEquals(-1, new WorkflowArtifactResolver(helper, REPO).findWorkflowRunId("main", "missing-sha"));
+        // filtered request + 10 pages of 100 runs
+        Assert.assertEquals(calls.toString(), 11,
+                calls.stream().filter(call -> call.startsWith("GET /repos/owner/repo/actions/runs")).count());
+    }
+
+    /**
+     * Same sequence of lookups as in PRTestGenHelper.handleWorkflowEvent.
+     */
+    private void resolveLikeWorkflowEvent(WorkflowArtifactResolver resolver) throws IOException {
+        Assert.assertNotNull(resolver.getArtifact(HEAD_RUN_ID, ARTIFACT_NAME));
+        Assert.assertEquals(BASE_RUN_ID, resolver.findWorkflowRunId("main", "base-sha"));
+        Assert.assertNotNull(resolver.getArtifact(BASE_RUN_ID, ARTIFACT_NAME));
+        GHArtifact head = resolver.getArtifact(HEAD_RUN_ID, ARTIFACT_NAME);
+        GHArtifact base = resolver.getArtifact(BASE_RUN_ID, ARTIFACT_NAME);
+        Assert.assertEquals(11, head.getId());
+        Assert.assertEquals(22, base.getId());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getQuery();
+        boolean secondPage = query != null && query.contains("page=2");
+        calls.add(exchange.getRequestMethod() + " " + path + (secondPage ? "?page=2" : ""));
+
+        String body;
+        String nextPage = null;
+        if (path.equals("/app")) {
+            body = "{\"id\": 1, \"slug\": \"testing-bot\"}";
+        } else if (path.equals("/repos/owner/repo/installation") || path.equals("/app/installations/42")) {
+            body = "{\"id\": 42, \"app_id\": 1}";
+        } else if (path.equals("/app/installations/42/access_tokens")) {
+            body = "{\"token\": \"installation-token\", \"expires_at\": \"2099-01-01T00:00:00Z\"}";
+        } else if (path.equals("/repos/owner/repo")) {
+            body = "{\"id\": 7, \"name\": \"repo\", \"full_name\": \"owner/repo\", \"owner\": {\"login\": \"owner\"}}";
+        } else if (path.equals("/repos/owner/repo/actions/runs")) {
+            Assert.assertTrue(query, query.contains("branch=main") && query.contains("status=completed"));
+            if (headShaFilterSupported && query.contains("head_sha=")) {
+                String sha = query.replaceAll(".*head_sha=([^&]*).*", "$1");
+                long runId = sha.equals("base-sha") ? BASE_RUN_ID : sha.equals("old-sha") ? OLD_RUN_ID : -1;
+                body = "{\"total_count\": " + (runId == -1 ? 0 : 1) + ", \"workflow_runs\": ["
+                        + (runId == -1 ? "" : "{\"id\": " + runId + ", \"head_sha\": \"" + sha + "\"}") + "]}";
+            } else if (endlessWorkflowRuns) {
+                int page = query.matches(".*\\bpage=\\d+.*")
+                        ? Integer.parseInt(query.replaceAll(".*\\bpage=(\\d+).*", "$1")) : 1;
+                StringBuilder runs = new StringBuilder();
+                for (int i = 0; i < 100; i++) {
+                    if (i > 0) runs.append(", ");
+                    runs.append("{\"id\": ").append(1000 + page * 100 + i).append(", \"head_sha\": \"newer-sha\"}");
+                }
+                body = "{\"total_count\": 100000, \"workflow_runs\": [" + runs + "]}";
+                nextPage = path + "?branch=main&status=completed&per_page=100&page=" + (page + 1);
+            } else {
+                body = "{\"total_count\": 300, \"workflow_runs\": [{\"id\": 5, \"head_sha\": \"newer-sha\"}, "
+                        + "{\"id\": " + BASE_RUN_ID + ", \"head_sha\": \"base-sha\"}, "
+                        + "{\"id\": 6, \"head_sha\": \"older-sha\"}]}";
+                if (!secondPage) nextPage = path;
+            }
+        } else if (path.matches("/repos/owner/repo/actions/runs/\\d+")) {
+            body = "{\"id\": " + path.substring(path.lastIndexOf('/') + 1) + ", \"head_sha\": \"abc\"}";
+        } else if (path.equals("/repos/owner/repo/actions/runs/1/artifacts")) {
+            if (secondPage) {
+                body = artifacts(13, "logs");
+            } else {
+                body = "{\"total_count\": 3, \"artifacts\": [" + artifact(12, "coverage") + ", "
+                        + artifact(11, ARTIFACT_NAME) + "]}";
+                nextPage = path;
+            }
+        } else if (path.equals("/repos/owner/repo/actions/runs/2/artifacts")) {
+            if (secondPage) {
+                body = artifacts(22, ARTIFACT_NAME);
+            } else {
+                body = artifacts(21, "coverage");
+                nextPage = path;
+            }
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        if (nextPage != null) {
+            String next = nextPage.contains("?") ? nextPage : nextPage + "?page=2";
+            exchange.getResponseHeaders().add("Link", "<" + apiUrl + next + ">; rel=\"next\"");
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(path.endsWith("access_tokens") ? 201 : 200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static String artifacts(long id, String name) {
+        return "{\"total_count\": 2, \"artifacts\": [" + artifact(id, name) + "]}";
+    }
+
+    private static String artifact(long id, String name) {
+        return "{\"id\": " + id + ", \"name\": \"" + name + "\"}";
+    }
+
+    private static String generatePrivateKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return Base64.getEncoder().encodeToString(generator.generateKeyPair().getPrivate().getEncoded());
+    }
+}